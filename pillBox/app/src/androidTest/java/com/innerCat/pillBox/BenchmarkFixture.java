@@ -0,0 +1,145 @@
+package com.innerCat.pillBox;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.innerCat.pillBox.objects.ColorItem;
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.objects.Refill;
+import com.innerCat.pillBox.recyclerViews.ItemAdapter;
+import com.innerCat.pillBox.util.ColorPalette;
+import com.innerCat.pillBox.util.SettingsSnapshot;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * What the benchmarks share: the cards that they bind and the holders they bind them to,
+ * and how they run on the main thread and report their results.
+ */
+public final class BenchmarkFixture {
+    public static final int ITEM_COUNT = 2000;
+    //about as many holders as a RecyclerView keeps for a screen of cards
+    public static final int HOLDER_COUNT = 12;
+    public static final int COLOR = 0xFFE57373;
+
+    private BenchmarkFixture() {
+    }
+
+    /**
+     * Gets the instrumentation the benchmarks run with.
+     *
+     * @return the instrumentation
+     */
+    public static Instrumentation instrumentation() {
+        return InstrumentationRegistry.getInstrumentation();
+    }
+
+    /**
+     * Gets the target context with the theme of the app, that the cards are inflated with.
+     *
+     * @return the themed context
+     */
+    public static ContextThemeWrapper themedContext() {
+        return new ContextThemeWrapper(instrumentation().getTargetContext(), R.style.Theme_pillBox);
+    }
+
+    /**
+     * Makes ITEM_COUNT items, with ids from 1. The even ones are auto decremented and the odd ones aren't,
+     * every third one has a color, and every fourth one has an expiring refill.
+     *
+     * @return the items
+     */
+    public static List<Item> makeItems() {
+        List<Item> items = new ArrayList<>(ITEM_COUNT);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            int color = i % 3 == 0 ? COLOR : ColorItem.NO_COLOR;
+            Item item = i % 2 == 0
+                    ? new Item("Item " + i, 100 + i, color, false, today, 1, 1)
+                    : new Item("Item " + i, i % 20, color, false);
+            item.setId(i + 1);
+            item.setLastUsed(today.minusDays(i % 3));
+            item.setLastUsedTime(LocalTime.NOON);
+            if (i % 4 == 0) {
+                item.setExpiringRefill(new Refill(i + 1, 5, today.plusDays(i % 30)));
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * Creates an adapter of the items, with the settings and the palette of the context, as MainActivity does.
+     *
+     * @param items    the items
+     * @param settings the settings
+     * @param context  the themed context
+     * @return the adapter
+     */
+    public static ItemAdapter createAdapter( List<Item> items, SettingsSnapshot settings, Context context ) {
+        ItemAdapter adapter = new ItemAdapter(items);
+        adapter.setSettings(settings);
+        adapter.setPalette(ColorPalette.resolve(context));
+        return adapter;
+    }
+
+    /**
+     * Creates HOLDER_COUNT holders, that the cards are bound to in turn as they would be when scrolling.
+     *
+     * @param adapter the adapter
+     * @param context the themed context
+     * @return the holders
+     */
+    public static List<ItemAdapter.ViewHolder> createHolders( ItemAdapter adapter, Context context ) {
+        FrameLayout parent = new FrameLayout(context);
+        List<ItemAdapter.ViewHolder> holders = new ArrayList<>(HOLDER_COUNT);
+        for (int i = 0; i < HOLDER_COUNT; i++) {
+            holders.add(adapter.onCreateViewHolder(parent, 0));
+        }
+        return holders;
+    }
+
+    /**
+     * Binds every card once, in order, each to the next of the holders.
+     *
+     * @param adapter the adapter
+     * @param holders the holders
+     */
+    public static void bindAll( ItemAdapter adapter, List<ItemAdapter.ViewHolder> holders ) {
+        for (int position = 0; position < adapter.getItemCount(); position++) {
+            adapter.onBindViewHolder(holders.get(position % holders.size()), position);
+        }
+    }
+
+    /**
+     * Runs work on the main thread, as binding has to, and waits for its result.
+     *
+     * @param work the work
+     * @param <T>  the type of the result
+     * @return the result
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T onMainThread( Supplier<T> work ) {
+        Object[] result = new Object[1];
+        instrumentation().runOnMainSync(() -> result[0] = work.get());
+        return (T) result[0];
+    }
+
+    /**
+     * Reports the results of a benchmark as instrumentation status.
+     *
+     * @param results the results
+     */
+    public static void report( Bundle results ) {
+        instrumentation().sendStatus(0, results);
+    }
+}
@@ -0,0 +1,94 @@
+package com.innerCat.pillBox;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.ContextThemeWrapper;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.google.android.material.card.MaterialCardView;
+
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.recyclerViews.ItemAdapter;
+import com.innerCat.pillBox.util.ColorPalette;
+import com.innerCat.pillBox.util.SettingsSnapshot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Binds 2k cards, half of them auto decrementing, first resolving the theme colors on every bind
+ * as binding used to, then with the palette resolved once.
+ * The results are reported as instrumentation status.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ColorPaletteBenchmark {
+    private static final int ROUNDS = 5;
+
+    /**
+     * Binds every card, ROUNDS times.
+     *
+     * @param adapter the adapter
+     * @param holders the holders to bind the cards to
+     * @param perBind whether to resolve the palette on every bind
+     * @param context the themed context
+     * @return the nanoseconds taken
+     */
+    private static long bindAll( ItemAdapter adapter, List<ItemAdapter.ViewHolder> holders,
+                                 boolean perBind, ContextThemeWrapper context ) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int position = 0; position < BenchmarkFixture.ITEM_COUNT; position++) {
+                if (perBind) {
+                    adapter.setPalette(ColorPalette.resolve(context));
+                }
+                adapter.onBindViewHolder(holders.get(position % holders.size()), position);
+            }
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    @Test
+    public void bind_2k_cards_with_a_resolved_palette() {
+        ContextThemeWrapper context = BenchmarkFixture.themedContext();
+        List<Item> items = BenchmarkFixture.makeItems();
+        ColorPalette palette = ColorPalette.resolve(context);
+
+        //the nanoseconds of both paths, then the background colors of the last two cards bound
+        long[] measured = BenchmarkFixture.onMainThread(() -> {
+            ItemAdapter adapter = BenchmarkFixture.createAdapter(items, SettingsSnapshot.read(context), context);
+            List<ItemAdapter.ViewHolder> holders = BenchmarkFixture.createHolders(adapter, context);
+
+            //warm up both paths before measuring them
+            bindAll(adapter, holders, true, context);
+            bindAll(adapter, holders, false, context);
+
+            long perBindNanos = bindAll(adapter, holders, true, context);
+            adapter.setPalette(palette);
+            long paletteNanos = bindAll(adapter, holders, false, context);
+
+            //the last two cards bound are an auto decrementing one and a plain one
+            long[] results = {perBindNanos, paletteNanos, 0, 0};
+            for (int i = 0; i < 2; i++) {
+                int position = BenchmarkFixture.ITEM_COUNT - 2 + i;
+                MaterialCardView cardView = holders.get(position % holders.size()).itemView.findViewById(R.id.cardView);
+                results[2 + i] = cardView.getCardBackgroundColor().getDefaultColor();
+            }
+            return results;
+        });
+
+        Bundle results = new Bundle();
+        results.putLong("bindResolvingPerBindUsPerCard", measured[0] / 1_000 / (BenchmarkFixture.ITEM_COUNT * ROUNDS));
+        results.putLong("bindWithPaletteUsPerCard", measured[1] / 1_000 / (BenchmarkFixture.ITEM_COUNT * ROUNDS));
+        BenchmarkFixture.report(results);
+
+        assertEquals(palette.getAutoDecBgColor(), (int) measured[2]);
+        assertEquals(palette.getColorOnCard(), (int) measured[3]);
+    }
+}
@@ -8,11 +8,21 @@ import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.MediumTest;
 
+import com.innerCat.pillBox.factories.DatabaseFactory;
 import com.innerCat.pillBox.objects.ColorItem;
+import com.innerCat.pillBox.objects.DoseEvent;
+import com.innerCat.pillBox.objects.DoseSnapshot;
 import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.objects.ItemWithExpiringRefill;
 import com.innerCat.pillBox.objects.Refill;
+import com.innerCat.pillBox.objects.RefillSummary;
+import com.innerCat.pillBox.objects.WidgetItem;
 import com.innerCat.pillBox.room.Converters;
 import com.innerCat.pillBox.room.Database;
+import com.innerCat.pillBox.room.ItemChanges;
+import com.innerCat.pillBox.room.RunOutDays;
+import com.innerCat.pillBox.util.Ranks;
+import com.innerCat.pillBox.util.Today;
 
 import org.junit.After;
 import org.junit.Before;
@@ -20,10 +30,18 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 
 @MediumTest
@@ -109,7 +127,9 @@ public class DatabaseTests {
     @Before
     public void createDb() {
         context = ApplicationProvider.getApplicationContext();
-        database = Room.inMemoryDatabaseBuilder(context, Database.class).build();
+        database = Room.inMemoryDatabaseBuilder(context, Database.class)
+                .addCallback(DatabaseFactory.CALLBACK)
+                .build();
         sharedPreferences = getPreferences();
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.clear();
@@ -128,6 +148,7 @@ public class DatabaseTests {
     @After
     public void closeDb() throws IOException {
         database.close();
+        Today.resetClock();
     }
 
     /**
@@ -163,9 +184,440 @@ public class DatabaseTests {
         makeAndAddRefill(item.getId(), 15, earlier);
         makeAndAddRefill(item.getId(), 15, later);
         assertEquals(earlier, database.getDao()
-                .getSoonestExpiringRefillOfItemId(item.getId(), Converters.todayString())
+                .getSoonestExpiringRefillOfItemId(item.getId(), Converters.todayEpochDay())
                 .getExpiryDate());
 
     }
 
+    @Test
+    public void items_with_soonest_expiring_refill() {
+        Item withRefills = makeAndAddItem("With Refills", 1, false);
+        Item withoutRefills = makeAndAddItem("Without Refills", 1, false);
+        LocalDate earlier = LocalDate.now().plusDays(360);
+        LocalDate later = LocalDate.now().plusDays(370);
+        makeAndAddRefill(withRefills.getId(), 15, later);
+        makeAndAddRefill(withRefills.getId(), 10, earlier);
+        makeAndAddRefill(withRefills.getId(), 20, LocalDate.now().minusDays(1));
+        makeAndAddRefill(withRefills.getId(), 5);
+
+        List<Item> items = ItemWithExpiringRefill.toItems(database.getDao()
+                .getAllItemsWithExpiringRefill(Converters.todayEpochDay()));
+        assertEquals(2, items.size());
+        for (Item item : items) {
+            if (item.getId() == withRefills.getId()) {
+                assertEquals(earlier, item.getExpiringRefill().getExpiryDate());
+                assertEquals(10, item.getExpiringRefill().getAmount());
+            } else {
+                assertEquals(withoutRefills.getId(), item.getId());
+                assertNull(item.getExpiringRefill());
+            }
+        }
+    }
+
+    @Test
+    public void update_view_holder_positions_only() {
+        Item a = makeAndAddItem("A", 3);
+        Item b = makeAndAddItem("B", 4);
+        a.setViewHolderPosition(1);
+        b.setViewHolderPosition(0);
+        //stock changes that aren't part of the position update shouldn't be written
+        a.setRawStock(100);
+        database.getDao().updateViewHolderPositions(Arrays.asList(a, b));
+
+        List<Item> items = database.getDao().getAllItems();
+        assertEquals(b.getId(), items.get(0).getId());
+        assertEquals(a.getId(), items.get(1).getId());
+        assertEquals(3, items.get(1).getRawStock());
+    }
+
+    @Test
+    public void rebalance_ranks_puts_loaded_items_first() {
+        Item a = makeAndAddItem("A", 1);
+        Item b = makeAndAddItem("B", 1);
+        Item c = makeAndAddItem("C", 1);
+        Item d = makeAndAddItem("D", 1);
+        database.getDao().updateViewHolderPosition(a.getId(), 0);
+        database.getDao().updateViewHolderPosition(b.getId(), 1);
+        database.getDao().updateViewHolderPosition(c.getId(), 2);
+        database.getDao().updateViewHolderPosition(d.getId(), 3);
+
+        //only b and a are loaded, and b has been moved before a
+        database.getDao().rebalanceRanks(Arrays.asList(b.getId(), a.getId()));
+
+        List<Item> items = database.getDao().getAllItems();
+        assertEquals(b.getId(), items.get(0).getId());
+        assertEquals(a.getId(), items.get(1).getId());
+        assertEquals(c.getId(), items.get(2).getId());
+        assertEquals(d.getId(), items.get(3).getId());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(i * Ranks.GAP, items.get(i).getViewHolderPosition());
+        }
+    }
+
+    @Test
+    public void insert_first_rebalances_when_no_rank_is_left() {
+        Item a = makeAndAddItem("A", 1);
+        Item b = makeAndAddItem("B", 1);
+        database.getDao().updateViewHolderPosition(a.getId(), Integer.MIN_VALUE);
+        database.getDao().updateViewHolderPosition(b.getId(), 0);
+
+        Item c = new Item("C", 1, ColorItem.NO_COLOR, false);
+        c.setId((int) database.getDao().insertFirst(c));
+
+        List<Item> items = database.getDao().getAllItems();
+        assertEquals(c.getId(), items.get(0).getId());
+        assertEquals(a.getId(), items.get(1).getId());
+        assertEquals(b.getId(), items.get(2).getId());
+        assertTrue(items.get(0).getViewHolderPosition() < items.get(1).getViewHolderPosition());
+        assertEquals(0, items.get(1).getViewHolderPosition());
+    }
+
+    @Test
+    public void refill_summary_follows_refills() {
+        Item item = makeAndAddItem("Test", 1);
+        LocalDate earlier = LocalDate.now().plusDays(10);
+        LocalDate later = LocalDate.now().plusDays(20);
+        Refill soonest = makeAndAddRefill(item.getId(), 10, earlier);
+        makeAndAddRefill(item.getId(), 15, later);
+        makeAndAddRefill(item.getId(), 20, LocalDate.now().minusDays(1));
+        makeAndAddRefill(item.getId(), 5);
+
+        RefillSummary summary = database.getDao().getRefillSummary(item.getId());
+        assertEquals(Converters.todayEpochDay(), summary.getAsOfDay());
+        assertEquals(soonest.getId(), (int) summary.getSoonestRefillId());
+        assertEquals(earlier, summary.getSoonestExpiryDate());
+        assertEquals(10, summary.getSoonestAmount());
+        assertEquals(25, summary.getFutureTotal());
+        assertEquals(5, summary.getUndatedTotal());
+        assertEquals(20, summary.getExpiredTotal());
+
+        //updating and removing the soonest refill moves the soonest on to the next one
+        soonest.setAmount(12);
+        database.getDao().update(soonest);
+        assertEquals(12, database.getDao().getRefillSummary(item.getId()).getSoonestAmount());
+        database.getDao().removeRefillById(soonest.getId());
+        summary = database.getDao().getRefillSummary(item.getId());
+        assertEquals(later, summary.getSoonestExpiryDate());
+        assertEquals(15, summary.getFutureTotal());
+
+        //rolling past the last expiry moves everything into the expired total
+        database.rollRefillSummaries(later.plusDays(1).toEpochDay());
+        summary = database.getDao().getRefillSummary(item.getId());
+        assertNull(summary.getSoonestRefillId());
+        assertEquals(0, summary.getFutureTotal());
+        assertEquals(35, summary.getExpiredTotal());
+
+        database.getDao().removeItemById(item.getId());
+        assertNull(database.getDao().getRefillSummary(item.getId()));
+    }
+
+    @Test
+    public void upsert_merges_refills_with_the_same_expiry_date() {
+        Item item = makeAndAddItem("Test", 1);
+        LocalDate date = LocalDate.now().plusDays(10);
+        Refill first = new Refill(item.getId(), 10, date);
+        assertFalse(database.getDao().upsert(first));
+        Refill second = new Refill(item.getId(), 5, date);
+        assertTrue(database.getDao().upsert(second));
+        //refills without an expiry date are never merged
+        database.getDao().upsert(new Refill(item.getId(), 3, null));
+        database.getDao().upsert(new Refill(item.getId(), 4, null));
+
+        List<Refill> refills = database.getDao().getRefillsOfItemId(item.getId());
+        assertEquals(3, refills.size());
+        assertEquals(15, database.getDao().getSoonestExpiringRefillOfItemId(item.getId(),
+                Converters.todayEpochDay()).getAmount());
+
+        //moving a refill onto the date of another merges it too
+        Refill other = makeAndAddRefill(item.getId(), 2, date.plusDays(1));
+        other.setExpiryDate(date);
+        assertTrue(database.getDao().updateMerging(other));
+        assertEquals(17, database.getDao().getSoonestExpiringRefillOfItemId(item.getId(),
+                Converters.todayEpochDay()).getAmount());
+        assertEquals(3, database.getDao().getRefillsOfItemId(item.getId()).size());
+    }
+
+    @Test
+    public void remove_refills_in_chunks() {
+        Item item = makeAndAddItem("Test", 1);
+        List<Integer> ids = new ArrayList<>();
+        database.runInTransaction(() -> {
+            for (int i = 0; i < 2500; i++) {
+                ids.add(makeAndAddRefill(item.getId(), 2).getId());
+            }
+        });
+        Refill kept = makeAndAddRefill(item.getId(), 7);
+
+        assertEquals(5000, database.getDao().removeRefills(ids));
+        List<Refill> refills = database.getDao().getRefillsOfItemId(item.getId());
+        assertEquals(1, refills.size());
+        assertEquals(kept.getId(), refills.get(0).getId());
+        assertEquals(7, database.getDao().getRefillSummary(item.getId()).getUndatedTotal());
+    }
+
+    @Test
+    public void removing_an_item_removes_its_refills() {
+        Item removed = makeAndAddItem("Removed", 1);
+        Item kept = makeAndAddItem("Kept", 1);
+        makeAndAddRefill(removed.getId(), 5, LocalDate.now().plusDays(1));
+        makeAndAddRefill(removed.getId(), 5);
+        makeAndAddRefill(kept.getId(), 5);
+
+        database.getDao().removeItemById(removed.getId());
+        assertEquals(0, database.getDao().getRefillsOfItemId(removed.getId()).size());
+        assertNull(database.getDao().getRefillSummary(removed.getId()));
+        assertEquals(1, database.getDao().getRefillsOfItemId(kept.getId()).size());
+    }
+
+    @Test
+    public void stock_changes_are_made_in_sql() {
+        Item item = makeAndAddItem("Test", 2);
+        //a stale copy, like the one the form or refill screen holds
+        Item stale = database.getDao().getItem(item.getId());
+
+        assertEquals(1, database.getDao().takeStock(item.getId(), 1, LocalDate.now(), LocalTime.of(9, 30)));
+        assertEquals(1, database.getDao().takeStock(item.getId(), 1, LocalDate.now(), LocalTime.of(9, 30)));
+        //no stock left to take
+        assertEquals(0, database.getDao().takeStock(item.getId(), 1, LocalDate.now(), LocalTime.of(10, 0)));
+        Item taken = database.getDao().getItem(item.getId());
+        assertEquals(0, taken.getRawStock());
+        assertEquals(LocalDate.now(), taken.getLastUsed());
+        assertEquals(LocalTime.of(9, 30), taken.getLastUsedTime());
+
+        //the stale copy never overwrites the stock
+        database.getDao().addRefill(new Refill(item.getId(), 5, null), Converters.todayEpochDay());
+        database.getDao().decrementStockBy(item.getId(), 2);
+        assertEquals(3, database.getDao().getItem(item.getId()).getRawStock());
+        assertEquals(2, stale.getRawStock());
+    }
+
+    @Test
+    public void refill_stock_matches_item() {
+        Item item = new Item("Auto", 4, ColorItem.NO_COLOR, false, LocalDate.now().minusDays(10), 1, 1);
+        addItem(item);
+        //the calculated stock is below 0, so it is reset to 0 before the refill
+        item.refillByAmount(5);
+        database.getDao().refillStockBy(item.getId(), 5, Converters.todayEpochDay());
+        Item refilled = database.getDao().getItem(item.getId());
+        assertEquals(item.getRawStock(), refilled.getRawStock());
+        assertEquals(5, refilled.getCalculatedStock());
+    }
+
+    @Test
+    public void remove_refills_of_item_takes_their_stock() {
+        Item item = makeAndAddItem("Test", 20);
+        Refill a = makeAndAddRefill(item.getId(), 4);
+        Refill b = makeAndAddRefill(item.getId(), 6, LocalDate.now().plusDays(3));
+        assertEquals(10, database.getDao().removeRefillsOfItem(item.getId(), Arrays.asList(a.getId(), b.getId())));
+        assertEquals(10, database.getDao().getItem(item.getId()).getRawStock());
+    }
+
+    @Test
+    public void stock_changes_are_logged_as_applied() {
+        Item item = makeAndAddItem("Test", 3);
+        Refill refill = makeAndAddRefill(item.getId(), 10);
+        //only the 3 in stock can be taken away, not the 10 of the refill
+        database.getDao().removeRefillsOfItem(item.getId(), Arrays.asList(refill.getId()));
+        assertEquals(0, database.getDao().getItem(item.getId()).getRawStock());
+        assertEquals(-3, database.getDao().getDoseTotal(item.getId()));
+
+        //editing the stock in the form is logged too
+        Item edited = database.getDao().getItem(item.getId());
+        database.getDao().updateItem(edited, 7, Converters.todayEpochDay());
+        List<DoseEvent> events = database.getDao().getDoseEventsOfItemId(item.getId(), 0);
+        assertEquals(2, events.size());
+        assertEquals(4, database.getDao().getDoseTotal(item.getId()));
+
+        //the reset of a calculated stock below 0 is part of the refill that is logged
+        Item auto = new Item("Auto", 4, ColorItem.NO_COLOR, false, LocalDate.now().minusDays(10), 1, 1);
+        addItem(auto);
+        database.getDao().addRefill(new Refill(auto.getId(), 5, null), Converters.todayEpochDay());
+        int applied = database.getDao().getItem(auto.getId()).getRawStock() - 4;
+        assertEquals(applied, database.getDao().getDoseTotal(auto.getId()));
+        assertTrue(applied > 5);
+    }
+
+    @Test
+    public void form_edits_keep_changes_made_meanwhile() {
+        Item item = makeAndAddItem("Test", 5);
+        Item inForm = database.getDao().getItem(item.getId());
+        //a dose from the widget and a move while the form is open
+        assertTrue(database.getDao().takeOne(item.getId(), LocalDate.now(), LocalTime.NOON, DoseEvent.SOURCE_WIDGET));
+        database.getDao().updateViewHolderPosition(item.getId(), 42);
+
+        inForm.setName("Renamed");
+        database.getDao().updateItem(inForm, 0, Converters.todayEpochDay());
+        Item saved = database.getDao().getItem(item.getId());
+        assertEquals("Renamed", saved.getName());
+        assertEquals(4, saved.getRawStock());
+        assertEquals(42, saved.getViewHolderPosition());
+        assertEquals(LocalDate.now(), saved.getLastUsed());
+
+        //a stock edit is applied as the change the form made
+        database.getDao().updateItem(inForm, 2, Converters.todayEpochDay());
+        assertEquals(6, database.getDao().getItem(item.getId()).getRawStock());
+        assertEquals(1, database.getDao().getDoseTotal(item.getId()));
+    }
+
+    @Test
+    public void form_flattens_stock_when_auto_dec_changes() {
+        Item auto = new Item("Auto", 20, ColorItem.NO_COLOR, false, LocalDate.now().minusDays(10), 1, 1);
+        addItem(auto);
+        long today = Converters.todayEpochDay();
+
+        //unchanged auto decrement leaves the stock alone
+        database.getDao().updateItem(auto, 0, today);
+        assertEquals(20, database.getDao().getItem(auto.getId()).getRawStock());
+
+        auto.setAutoDecStartDate(null);
+        auto.setAutoDecPerDay(0);
+        auto.setAutoDecNDays(0);
+        database.getDao().updateItem(auto, 0, today);
+        Item saved = database.getDao().getItem(auto.getId());
+        assertEquals(10, saved.getRawStock());
+        assertFalse(saved.isAutoDec());
+    }
+
+    @Test
+    public void doses_are_logged_and_compacted() {
+        Item item = makeAndAddItem("Test", 3);
+        LocalDate day = LocalDate.now().minusDays(100);
+        assertTrue(database.getDao().takeOne(item.getId(), day, LocalTime.NOON, DoseEvent.SOURCE_WIDGET));
+        assertTrue(database.getDao().takeOne(item.getId(), LocalDate.now(), LocalTime.NOON, DoseEvent.SOURCE_APP));
+        database.getDao().addRefill(new Refill(item.getId(), 10, null), Converters.todayEpochDay());
+        assertEquals(8, database.getDao().getDoseTotal(item.getId()));
+        assertEquals(3, database.getDao().getDoseEventsOfItemId(item.getId(), 0).size());
+
+        //the old dose is folded into the snapshot, and the total stays the same
+        database.startNewDay(Converters.todayEpochDay());
+        DoseSnapshot snapshot = database.getDao().getDoseSnapshot(item.getId());
+        assertEquals(-1, snapshot.getTotal());
+        assertEquals(1, snapshot.getEventCount());
+        assertEquals(2, database.getDao().getDoseEventsOfItemId(item.getId(), 0).size());
+        assertEquals(8, database.getDao().getDoseTotal(item.getId()));
+    }
+
+    @Test
+    public void auto_dec_doses_are_logged_once_a_day() {
+        Item item = new Item("Auto", 10, ColorItem.NO_COLOR, false, LocalDate.now().minusDays(4), 2, 2);
+        addItem(item);
+        long today = Converters.todayEpochDay();
+        assertTrue(database.startNewDay(today));
+        //starting the same day again, as a recreated activity does, finds it already started
+        assertFalse(database.startNewDay(today));
+        List<DoseEvent> events = database.getDao().getDoseEventsOfItemId(item.getId(), 0);
+        assertEquals(1, events.size());
+        assertEquals(-2, events.get(0).getDelta());
+        assertEquals(DoseEvent.SOURCE_AUTODEC, events.get(0).getSource());
+
+        //not a day that the auto decrement falls on
+        database.startNewDay(today + 1);
+        assertEquals(1, database.getDao().getDoseEventsOfItemId(item.getId(), 0).size());
+    }
+
+    @Test
+    public void auto_dec_doses_of_missed_days_are_logged() {
+        ZoneId zone = ZoneId.systemDefault();
+        Today.setClock(Clock.fixed(LocalDate.now().atTime(LocalTime.NOON).atZone(zone).toInstant(), zone));
+        long today = Converters.todayEpochDay();
+        Item item = new Item("Auto", 20, ColorItem.NO_COLOR, false, Today.date().minusDays(10), 2, 3);
+        addItem(item);
+        assertTrue(database.startNewDay(today - 10));
+
+        //the app wasn't opened for the nine days in between, which fall due on three of the days
+        assertTrue(database.startNewDay(today));
+        assertEquals(3, database.getDao().getDoseEventsOfItemId(item.getId(), 0).size());
+
+        //the total includes the auto decrement, so it follows the calculated stock and not the rawStock
+        assertEquals(14, item.getCalculatedStock());
+        assertEquals(item.getCalculatedStock() - 20, database.getDao().getDoseTotal(item.getId()));
+        assertEquals(20, database.getDao().getRawStock(item.getId()));
+    }
+
+    @Test
+    public void item_changes_are_logged_until_taken() {
+        Item taken = makeAndAddItem("Taken", 3);
+        Item refilled = makeAndAddItem("Refilled", 3);
+        Item removed = makeAndAddItem("Removed", 3);
+        makeAndAddItem("Unchanged", 3);
+        assertEquals(4, database.takeItemChanges().size());
+        assertTrue(database.takeItemChanges().isEmpty());
+
+        database.getDao().takeOne(taken.getId(), LocalDate.now(), LocalTime.NOON, DoseEvent.SOURCE_APP);
+        database.getDao().addRefill(new Refill(refilled.getId(), 10, LocalDate.now().plusDays(5)), Converters.todayEpochDay());
+        database.getDao().removeItemById(removed.getId());
+        List<ItemChanges.Change> changes = database.takeItemChanges();
+        assertEquals(3, changes.size());
+        for (ItemChanges.Change change : changes) {
+            if (change.getId() == removed.getId()) {
+                assertFalse(change.isPresent());
+            } else {
+                //the keys are the ones the item has now
+                assertTrue(change.isPresent());
+                assertEquals(database.getDao().getRunOutDay(change.getId()), change.getRunOutDay());
+            }
+        }
+        assertTrue(database.takeItemChanges().isEmpty());
+    }
+
+    @Test
+    public void widget_items_are_projected_with_calculated_stock() {
+        Item auto = new Item("Auto", 10, ColorItem.NO_COLOR, true, LocalDate.now().minusDays(3), 2, 1);
+        addItem(auto);
+        Item manual = makeAndAddItem("Manual", 5, true);
+        makeAndAddItem("Hidden", 5, false);
+        database.getDao().takeOne(manual.getId(), LocalDate.now(), LocalTime.NOON, DoseEvent.SOURCE_WIDGET);
+
+        List<WidgetItem> widgetItems = database.getDao().getWidgetItems(Converters.todayEpochDay());
+        assertEquals(2, widgetItems.size());
+        WidgetItem first = widgetItems.get(0);
+        WidgetItem second = widgetItems.get(1);
+        if (first.getId() != auto.getId()) {
+            first = widgetItems.get(1);
+            second = widgetItems.get(0);
+        }
+        assertEquals("Auto", first.getName());
+        assertEquals(auto.getCalculatedStock(), first.getStock());
+        assertTrue(first.isAutoDec());
+        assertEquals(4, second.getStock());
+        assertFalse(second.isAutoDec());
+        assertEquals(LocalDate.now(), second.getLastUsed());
+        assertEquals(LocalTime.NOON, second.getLastUsedTime());
+    }
+
+    @Test
+    public void run_out_days_follow_stock_and_doses() {
+        //noon of a fixed day, so that midnight can't pass between the day of the test and the day the triggers read
+        ZoneId zone = ZoneId.systemDefault();
+        Today.setClock(Clock.fixed(LocalDate.now().atTime(LocalTime.NOON).atZone(zone).toInstant(), zone));
+        long today = Converters.todayEpochDay();
+        database.startNewDay(today);
+        Item auto = new Item("Auto", 10, ColorItem.NO_COLOR, false, Today.date().minusDays(2), 2, 3);
+        addItem(auto);
+        Item manual = makeAndAddItem("Manual", 10);
+        Item empty = makeAndAddItem("Empty", 0);
+        assertEquals(auto.getAutoDecRunOutDay(), database.getDao().getRunOutDay(auto.getId()));
+        assertEquals(Item.RUN_OUT_NEVER, database.getDao().getRunOutDay(manual.getId()));
+        assertEquals(today, database.getDao().getRunOutDay(empty.getId()));
+
+        //two taken over the usage window leaves 8, which lasts 8 * USAGE_DAYS / 2 days
+        database.getDao().takeOne(manual.getId(), Today.date(), LocalTime.NOON, DoseEvent.SOURCE_APP);
+        database.getDao().takeOne(manual.getId(), Today.date(), LocalTime.NOON, DoseEvent.SOURCE_WIDGET);
+        assertEquals(today + 8 * RunOutDays.USAGE_DAYS / 2, database.getDao().getRunOutDay(manual.getId()));
+
+        //a refill isn't usage, but adds to the stock
+        database.getDao().addRefill(new Refill(manual.getId(), 12, null), today);
+        assertEquals(today + 20 * RunOutDays.USAGE_DAYS / 2, database.getDao().getRunOutDay(manual.getId()));
+
+        //the auto decrement schedule changing moves its day
+        auto.setRawStock(4);
+        database.getDao().update(auto);
+        assertEquals(auto.getAutoDecRunOutDay(), database.getDao().getRunOutDay(auto.getId()));
+
+        //the doses fall out of the usage window as the days go by
+        database.startNewDay(today + RunOutDays.USAGE_DAYS + 1);
+        assertEquals(Item.RUN_OUT_NEVER, database.getDao().getRunOutDay(manual.getId()));
+        assertEquals(auto.getAutoDecRunOutDay(), database.getDao().getRunOutDay(auto.getId()));
+    }
+
 }
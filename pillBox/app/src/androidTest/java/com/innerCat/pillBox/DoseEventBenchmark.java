@@ -0,0 +1,102 @@
+package com.innerCat.pillBox;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.innerCat.pillBox.factories.DatabaseFactory;
+import com.innerCat.pillBox.objects.ColorItem;
+import com.innerCat.pillBox.objects.DoseEvent;
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.room.Database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Inserts 1M DoseEvents in batches, compacts them, and reports how long each step took and how long
+ * it takes to read the total of an Item before and after compaction.
+ * The results are reported as instrumentation status.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class DoseEventBenchmark {
+    private static final String TEST_DB = "dose-event-benchmark";
+    private static final int ITEM_COUNT = 100;
+    private static final int EVENT_COUNT = 1_000_000;
+    private static final int BATCH_SIZE = 10_000;
+    private static final long START_SECOND = 1_600_000_000L;
+
+    private Context context;
+    private Database database;
+
+    @Before
+    public void createDb() {
+        context = BenchmarkFixture.instrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        database = Room.databaseBuilder(context, Database.class, TEST_DB)
+                .addCallback(DatabaseFactory.CALLBACK)
+                .build();
+    }
+
+    @After
+    public void closeDb() {
+        database.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void insert_and_compact_1m_events() {
+        int[] itemIds = new int[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            itemIds[i] = (int) database.getDao().insert(new Item("Item " + i, 0, ColorItem.NO_COLOR, false));
+        }
+
+        //a dose a minute, spread over the items
+        long insertStart = SystemClock.elapsedRealtimeNanos();
+        List<DoseEvent> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            batch.add(new DoseEvent(itemIds[i % ITEM_COUNT], START_SECOND + i * 60L, -1, DoseEvent.SOURCE_APP));
+            if (batch.size() == BATCH_SIZE) {
+                database.getDao().insertAll(batch);
+                batch.clear();
+            }
+        }
+        long insertNanos = SystemClock.elapsedRealtimeNanos() - insertStart;
+
+        int expectedTotal = -EVENT_COUNT / ITEM_COUNT;
+        long readStart = SystemClock.elapsedRealtimeNanos();
+        assertEquals(expectedTotal, database.getDao().getDoseTotal(itemIds[0]));
+        long readBeforeNanos = SystemClock.elapsedRealtimeNanos() - readStart;
+
+        //keep the last 1% of the events as the tail
+        long keepFrom = START_SECOND + (EVENT_COUNT - EVENT_COUNT / 100) * 60L;
+        long compactStart = SystemClock.elapsedRealtimeNanos();
+        database.getDao().compactDoseEvents(keepFrom);
+        long compactNanos = SystemClock.elapsedRealtimeNanos() - compactStart;
+
+        readStart = SystemClock.elapsedRealtimeNanos();
+        assertEquals(expectedTotal, database.getDao().getDoseTotal(itemIds[0]));
+        long readAfterNanos = SystemClock.elapsedRealtimeNanos() - readStart;
+        assertEquals(EVENT_COUNT / 100 / ITEM_COUNT, database.getDao().getDoseEventsOfItemId(itemIds[0], 0).size());
+
+        Bundle results = new Bundle();
+        results.putLong("insertMs", insertNanos / 1_000_000);
+        results.putLong("insertEventsPerSecond", EVENT_COUNT * 1_000_000_000L / Math.max(1, insertNanos));
+        results.putLong("compactMs", compactNanos / 1_000_000);
+        results.putLong("totalBeforeCompactUs", readBeforeNanos / 1_000);
+        results.putLong("totalAfterCompactUs", readAfterNanos / 1_000);
+        BenchmarkFixture.report(results);
+    }
+}
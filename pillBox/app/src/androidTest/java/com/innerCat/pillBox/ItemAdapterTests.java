@@ -0,0 +1,124 @@
+package com.innerCat.pillBox;
+
+import android.app.Instrumentation;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.MediumTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.innerCat.pillBox.objects.ColorItem;
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.objects.Refill;
+import com.innerCat.pillBox.recyclerViews.ItemAdapter;
+import com.innerCat.pillBox.recyclerViews.ItemChange;
+import com.innerCat.pillBox.util.ColorPalette;
+import com.innerCat.pillBox.util.SettingsSnapshot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.LocalDate;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class ItemAdapterTests {
+
+    @Test
+    public void last_taken_payload_only_rebinds_the_last_taken_text() {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        ContextThemeWrapper context = new ContextThemeWrapper(instrumentation.getTargetContext(), R.style.Theme_pillBox);
+        Item item = new Item("Item", 10, ColorItem.NO_COLOR, false);
+        item.setId(1);
+        item.setLastUsed(LocalDate.now().minusDays(3));
+
+        instrumentation.runOnMainSync(() -> {
+            ItemAdapter adapter = new ItemAdapter(Collections.singletonList(item));
+            adapter.setSettings(new SettingsSnapshot(5, 28, 7, 14, false));
+            adapter.setPalette(ColorPalette.resolve(context));
+            ItemAdapter.ViewHolder holder = adapter.onCreateViewHolder(new FrameLayout(context), 0);
+            adapter.onBindViewHolder(holder, 0);
+
+            TextView nameTV = holder.itemView.findViewById(R.id.nameTV);
+            TextView lastTakenTV = holder.itemView.findViewById(R.id.lastTakenTV);
+            assertEquals("Last taken 3 days ago", lastTakenTV.getText().toString());
+
+            //the item is shown a day later, only the last taken text follows
+            item.setLastUsed(LocalDate.now().minusDays(4));
+            nameTV.setText("Not rebound");
+            adapter.onBindViewHolder(holder, 0, Collections.singletonList(ItemAdapter.PAYLOAD_LAST_TAKEN));
+            assertEquals("Last taken 4 days ago", lastTakenTV.getText().toString());
+            assertEquals("Not rebound", nameTV.getText().toString());
+
+            //without a payload the whole card is bound
+            adapter.onBindViewHolder(holder, 0, Collections.emptyList());
+            assertEquals("Item", nameTV.getText().toString());
+        });
+    }
+
+    @Test
+    public void change_payload_has_the_changed_parts() {
+        Item item = new Item("Item", 10, ColorItem.NO_COLOR, false);
+        item.setId(1);
+
+        Item taken = new Item(item);
+        taken.setRawStock(9);
+        taken.setLastUsed(LocalDate.now());
+        assertEquals(new ItemChange(ItemChange.STOCK | ItemChange.LAST_TAKEN),
+                ItemAdapter.DIFF_CALLBACK.getChangePayload(item, taken));
+
+        Item refilled = new Item(item);
+        refilled.setRawStock(40);
+        refilled.setExpiringRefill(new Refill(1, 30, LocalDate.now().plusDays(3)));
+        assertEquals(new ItemChange(ItemChange.STOCK | ItemChange.EXPIRY),
+                ItemAdapter.DIFF_CALLBACK.getChangePayload(item, refilled));
+
+        Item autoDec = new Item("Item", 10, 0xFF000000, false, LocalDate.now(), 1, 1);
+        autoDec.setId(1);
+        assertEquals(new ItemChange(ItemChange.COLOR | ItemChange.AUTODEC | ItemChange.LAST_TAKEN | ItemChange.STOCK),
+                ItemAdapter.DIFF_CALLBACK.getChangePayload(item, autoDec));
+
+        Item renamed = new Item(item);
+        renamed.setName("Renamed");
+        assertNull(ItemAdapter.DIFF_CALLBACK.getChangePayload(item, renamed));
+    }
+
+    @Test
+    public void stock_payload_only_rebinds_the_stock() {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        ContextThemeWrapper context = new ContextThemeWrapper(instrumentation.getTargetContext(), R.style.Theme_pillBox);
+        Item item = new Item("Item", 10, ColorItem.NO_COLOR, false);
+        item.setId(1);
+        Item taken = new Item(item);
+        taken.setRawStock(9);
+        SettingsSnapshot settings = new SettingsSnapshot(5, 28, 7, 14, false);
+
+        instrumentation.runOnMainSync(() -> {
+            ItemAdapter adapter = new ItemAdapter(Collections.singletonList(item));
+            adapter.setSettings(settings);
+            adapter.setPalette(ColorPalette.resolve(context));
+            ItemAdapter.ViewHolder holder = adapter.onCreateViewHolder(new FrameLayout(context), 0);
+            adapter.onBindViewHolder(holder, 0);
+
+            TextView nameTV = holder.itemView.findViewById(R.id.nameTV);
+            TextView stockTV = holder.itemView.findViewById(R.id.stockTV);
+            assertEquals("10", stockTV.getText().toString());
+            nameTV.setText("Not rebound");
+
+            //an adapter with the taken item rebinds the holder, as the diff of the two lists would
+            ItemAdapter takenAdapter = new ItemAdapter(Collections.singletonList(taken));
+            takenAdapter.setSettings(settings);
+            takenAdapter.setPalette(ColorPalette.resolve(context));
+            Object payload = ItemAdapter.DIFF_CALLBACK.getChangePayload(item, taken);
+            takenAdapter.onBindViewHolder(holder, 0, Collections.singletonList(payload));
+            assertEquals("9", stockTV.getText().toString());
+            assertEquals("Not rebound", nameTV.getText().toString());
+        });
+    }
+}
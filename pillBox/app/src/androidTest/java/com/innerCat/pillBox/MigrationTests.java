@@ -0,0 +1,287 @@
+package com.innerCat.pillBox;
+
+import android.database.Cursor;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.MediumTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.innerCat.pillBox.factories.DatabaseFactory;
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.room.Database;
+import com.innerCat.pillBox.util.Today;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class MigrationTests {
+    private static final String TEST_DB = "migration-test";
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(),
+            Database.class.getCanonicalName(),
+            new FrameworkSQLiteOpenHelperFactory());
+
+    @Test
+    public void migrate_4_to_5_dates_to_epoch_days() throws IOException {
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 4);
+        database.execSQL("INSERT INTO items (id, name, lastUsed, lastUsedTime, rawStock, viewHolderPosition, "
+                + "showInWidget, color, autoDecStartDate, autoDecPerDay, autoDecNDays) "
+                + "VALUES (1, 'A', '2021-06-01', '13:45:12.123', 5, 0, 1, -1, '2021-05-30', 1, 1)");
+        database.execSQL("INSERT INTO items (id, name, lastUsed, lastUsedTime, rawStock, viewHolderPosition, "
+                + "showInWidget, color, autoDecStartDate, autoDecPerDay, autoDecNDays) "
+                + "VALUES (2, 'B', NULL, NULL, 5, 1, 0, -1, NULL, 0, 0)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (1, 1, 10, '2022-01-31', 1)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (2, 1, 10, NULL, 0)");
+        database.close();
+
+        database = helper.runMigrationsAndValidate(TEST_DB, 5, true, DatabaseFactory.MIGRATION_4_5);
+
+        try (Cursor cursor = database.query("SELECT lastUsed, lastUsedTime, autoDecStartDate FROM items ORDER BY id")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(LocalDate.of(2021, 6, 1).toEpochDay(), cursor.getLong(0));
+            assertEquals(LocalTime.of(13, 45, 12).toSecondOfDay(), cursor.getInt(1));
+            assertEquals(LocalDate.of(2021, 5, 30).toEpochDay(), cursor.getLong(2));
+            assertTrue(cursor.moveToNext());
+            assertTrue(cursor.isNull(0));
+            assertTrue(cursor.isNull(1));
+            assertTrue(cursor.isNull(2));
+        }
+        try (Cursor cursor = database.query("SELECT expiryDate FROM refills ORDER BY id")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(LocalDate.of(2022, 1, 31).toEpochDay(), cursor.getLong(0));
+            assertTrue(cursor.moveToNext());
+            assertTrue(cursor.isNull(0));
+        }
+    }
+
+    @Test
+    public void migrate_5_to_6_adds_indexes() throws IOException {
+        helper.createDatabase(TEST_DB, 5).close();
+        helper.runMigrationsAndValidate(TEST_DB, 6, true, DatabaseFactory.MIGRATION_5_6);
+    }
+
+    @Test
+    public void migrate_6_to_7_indexes_color_with_position() throws IOException {
+        helper.createDatabase(TEST_DB, 6).close();
+        SupportSQLiteDatabase database = helper.runMigrationsAndValidate(TEST_DB, 7, true, DatabaseFactory.MIGRATION_6_7);
+        try (Cursor cursor = database.query("SELECT name FROM sqlite_master WHERE type = 'index' AND name = 'index_items_color'")) {
+            assertFalse(cursor.moveToNext());
+        }
+    }
+
+    @Test
+    public void migrate_7_to_8_fills_refill_summary() throws IOException {
+        long today = LocalDate.now().toEpochDay();
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 7);
+        database.execSQL("INSERT INTO items (id, name, rawStock, viewHolderPosition, showInWidget, color, "
+                + "autoDecPerDay, autoDecNDays) VALUES (1, 'A', 5, 0, 0, -1, 0, 0)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (1, 1, 10, " + (today + 5) + ", 1)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (2, 1, 4, NULL, 0)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (3, 1, 3, " + (today - 5) + ", 1)");
+        database.close();
+
+        database = helper.runMigrationsAndValidate(TEST_DB, 8, true, DatabaseFactory.MIGRATION_7_8);
+        try (Cursor cursor = database.query("SELECT soonestRefillId, soonestAmount, futureTotal, undatedTotal, "
+                + "expiredTotal FROM refill_summary WHERE itemId = 1")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(1, cursor.getInt(0));
+            assertEquals(10, cursor.getInt(1));
+            assertEquals(10, cursor.getInt(2));
+            assertEquals(4, cursor.getInt(3));
+            assertEquals(3, cursor.getInt(4));
+        }
+
+        //the triggers keep the summary up to date from now on
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (4, 1, 6, " + (today + 1) + ", 1)");
+        try (Cursor cursor = database.query("SELECT soonestRefillId, futureTotal FROM refill_summary WHERE itemId = 1")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(4, cursor.getInt(0));
+            assertEquals(16, cursor.getInt(1));
+        }
+    }
+
+    @Test
+    public void migrate_8_to_9_merges_refills_with_the_same_expiry_date() throws IOException {
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 8);
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (1, 1, 10, 20000, 1)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (2, 1, 5, 20000, 1)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (3, 1, 3, NULL, 0)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (4, 1, 4, NULL, 0)");
+        database.close();
+
+        database = helper.runMigrationsAndValidate(TEST_DB, 9, true, DatabaseFactory.MIGRATION_8_9);
+        try (Cursor cursor = database.query("SELECT id, amount FROM refills ORDER BY id")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(1, cursor.getInt(0));
+            assertEquals(15, cursor.getInt(1));
+            assertTrue(cursor.moveToNext());
+            assertEquals(3, cursor.getInt(0));
+            assertTrue(cursor.moveToNext());
+            assertEquals(4, cursor.getInt(0));
+            assertFalse(cursor.moveToNext());
+        }
+    }
+
+    @Test
+    public void migrate_9_to_10_drops_orphans_and_cascades() throws IOException {
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 9);
+        database.execSQL("INSERT INTO items (id, name, rawStock, viewHolderPosition, showInWidget, color, "
+                + "autoDecPerDay, autoDecNDays) VALUES (1, 'A', 5, 0, 0, -1, 0, 0)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (1, 1, 10, NULL, 0)");
+        //refills of an item that was deleted before the foreign key existed
+        for (int id = 2; id < 1200; id++) {
+            database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (" + id + ", 2, 1, NULL, 0)");
+        }
+        database.close();
+
+        database = helper.runMigrationsAndValidate(TEST_DB, 10, true, DatabaseFactory.MIGRATION_9_10);
+        try (Cursor cursor = database.query("SELECT id FROM refills")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(1, cursor.getInt(0));
+            assertFalse(cursor.moveToNext());
+        }
+
+        database.execSQL("PRAGMA foreign_keys = ON");
+        database.execSQL("DELETE FROM items WHERE id = 1");
+        try (Cursor cursor = database.query("SELECT COUNT(*) FROM refills")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(0, cursor.getInt(0));
+        }
+    }
+
+    @Test
+    public void migrate_10_to_11_adds_dose_log() throws IOException {
+        helper.createDatabase(TEST_DB, 10).close();
+        helper.runMigrationsAndValidate(TEST_DB, 11, true, DatabaseFactory.MIGRATION_10_11);
+    }
+
+    @Test
+    public void migrate_11_to_12_projects_run_out_days() throws IOException {
+        long today = LocalDate.now().toEpochDay();
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 11);
+        database.execSQL("INSERT INTO items (id, name, rawStock, viewHolderPosition, showInWidget, color, "
+                + "autoDecStartDate, autoDecPerDay, autoDecNDays) VALUES (1, 'A', 10, 0, 0, -1, " + today + ", 2, 3)");
+        database.execSQL("INSERT INTO items (id, name, rawStock, viewHolderPosition, showInWidget, color, "
+                + "autoDecPerDay, autoDecNDays) VALUES (2, 'B', 5, 1, 0, -1, 0, 0)");
+        database.close();
+
+        database = helper.runMigrationsAndValidate(TEST_DB, 12, true, DatabaseFactory.MIGRATION_11_12);
+        try (Cursor cursor = database.query("SELECT runOutDay FROM items ORDER BY id")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(today + 15, cursor.getLong(0));
+            assertTrue(cursor.moveToNext());
+            assertEquals(Item.RUN_OUT_NEVER, cursor.getLong(0));
+        }
+    }
+
+    @Test
+    public void migrate_12_to_13_applies_refill_changes_to_summaries() throws IOException {
+        long today = LocalDate.now().toEpochDay();
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 12);
+        database.execSQL("INSERT INTO items (id, name, rawStock, viewHolderPosition, showInWidget, color, "
+                + "autoDecPerDay, autoDecNDays, runOutDay) VALUES (1, 'A', 5, 0, 0, -1, 0, 0, " + Item.RUN_OUT_NEVER + ")");
+        database.execSQL("INSERT INTO items (id, name, rawStock, viewHolderPosition, showInWidget, color, "
+                + "autoDecPerDay, autoDecNDays, runOutDay) VALUES (2, 'B', 5, 1, 0, -1, 0, 0, " + Item.RUN_OUT_NEVER + ")");
+        database.close();
+
+        database = helper.runMigrationsAndValidate(TEST_DB, 13, true, DatabaseFactory.MIGRATION_12_13);
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (1, 1, 10, " + (today + 2) + ", 1)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (2, 1, 6, " + (today + 1) + ", 1)");
+        database.execSQL("INSERT INTO refills (id, itemId, amount, expiryDate, expires) VALUES (3, 1, 4, NULL, 0)");
+        //moving the soonest refill to another item moves the soonest of both
+        database.execSQL("UPDATE refills SET itemId = 2 WHERE id = 2");
+        try (Cursor cursor = database.query("SELECT itemId, soonestRefillId, futureTotal, undatedTotal "
+                + "FROM refill_summary ORDER BY itemId")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(1, cursor.getInt(1));
+            assertEquals(10, cursor.getInt(2));
+            assertEquals(4, cursor.getInt(3));
+            assertTrue(cursor.moveToNext());
+            assertEquals(2, cursor.getInt(1));
+            assertEquals(6, cursor.getInt(2));
+            assertFalse(cursor.moveToNext());
+        }
+
+        database.execSQL("DELETE FROM refills WHERE itemId = 1");
+        try (Cursor cursor = database.query("SELECT soonestRefillId, futureTotal, undatedTotal "
+                + "FROM refill_summary WHERE itemId = 1")) {
+            assertTrue(cursor.moveToNext());
+            assertTrue(cursor.isNull(0));
+            assertEquals(0, cursor.getInt(1));
+            assertEquals(0, cursor.getInt(2));
+        }
+    }
+
+    @Test
+    public void migrate_12_to_13_reads_the_day_from_today() throws IOException {
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 12);
+        database.execSQL("INSERT INTO items (id, name, rawStock, viewHolderPosition, showInWidget, color, "
+                + "autoDecPerDay, autoDecNDays, runOutDay) VALUES (1, 'A', 0, 0, 0, -1, 0, 0, " + Item.RUN_OUT_NEVER + ")");
+        database.close();
+
+        database = helper.runMigrationsAndValidate(TEST_DB, 13, true, DatabaseFactory.MIGRATION_12_13);
+        try (Cursor cursor = database.query("SELECT epochDay FROM current_day")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(Today.epochDay(), cursor.getLong(0));
+            assertFalse(cursor.moveToNext());
+        }
+
+        //an item without stock runs out on the day in current_day, whatever the wall clock of SQLite says
+        database.execSQL("UPDATE current_day SET epochDay = 1000");
+        database.execSQL("UPDATE items SET rawStock = -1 WHERE id = 1");
+        try (Cursor cursor = database.query("SELECT runOutDay FROM items WHERE id = 1")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(1000, cursor.getLong(0));
+        }
+    }
+
+    @Test
+    public void migrate_13_to_14_adds_running_dose_totals() throws IOException {
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 13);
+        database.execSQL("INSERT INTO items (id, name, rawStock, viewHolderPosition, showInWidget, color, "
+                + "autoDecPerDay, autoDecNDays, runOutDay) VALUES (1, 'A', 5, 0, 0, -1, 0, 0, " + Item.RUN_OUT_NEVER + ")");
+        database.execSQL("INSERT INTO dose_snapshots (itemId, upToSecond, total, eventCount) VALUES (1, 100, -2, 2)");
+        database.execSQL("INSERT INTO dose_events (itemId, epochSecond, delta, source) VALUES (1, 200, -1, 0)");
+        database.close();
+
+        database = helper.runMigrationsAndValidate(TEST_DB, 14, true, DatabaseFactory.MIGRATION_13_14);
+        database.execSQL("INSERT INTO dose_events (itemId, epochSecond, delta, source) VALUES (1, 300, 10, 3)");
+        try (Cursor cursor = database.query("SELECT total, runningTotal FROM dose_snapshots WHERE itemId = 1")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(-2, cursor.getInt(0));
+            assertEquals(7, cursor.getInt(1));
+        }
+    }
+
+    @Test
+    public void migrate_13_to_14_has_no_day_started() throws IOException {
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 13);
+        database.execSQL("INSERT INTO current_day (id, epochDay, usageSinceSecond) VALUES (0, 1000, 0)");
+        database.close();
+
+        database = helper.runMigrationsAndValidate(TEST_DB, 14, true, DatabaseFactory.MIGRATION_13_14);
+        try (Cursor cursor = database.query("SELECT epochDay, lastStartedDay FROM current_day")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(1000, cursor.getLong(0));
+            assertEquals(0, cursor.getLong(1));
+        }
+    }
+
+}
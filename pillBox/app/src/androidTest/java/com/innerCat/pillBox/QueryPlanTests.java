@@ -0,0 +1,246 @@
+package com.innerCat.pillBox;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.MediumTest;
+
+import com.innerCat.pillBox.factories.DatabaseFactory;
+import com.innerCat.pillBox.room.Database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on the DataDao queries (with their named parameters replaced by ?)
+ * and on the statements of the triggers in the schema (with the columns of NEW and OLD replaced by ?),
+ * and fails if any of them scans a table without an index or sorts with a temporary b-tree.
+ * When a query is added or changed in DataDao, it should be added or changed here as well.
+ * The triggers are read from the schema, so they never need to be.
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTests {
+    private Database database;
+
+    private static final String ITEMS_WITH_EXPIRING_REFILL = "SELECT items.*, " +
+            "refills.id AS refill_id, " +
+            "refills.itemId AS refill_itemId, " +
+            "refills.amount AS refill_amount, " +
+            "refills.expiryDate AS refill_expiryDate, " +
+            "refills.expires AS refill_expires " +
+            "FROM items " +
+            "LEFT JOIN refills ON refills.id = (" +
+            "SELECT r.id FROM refills r " +
+            "WHERE r.itemId = items.id " +
+            "AND r.expires is 1 " +
+            "AND r.expiryDate >= ? " +
+            "ORDER BY r.expiryDate " +
+            "ASC LIMIT 1) ";
+
+    private static final String ITEMS_WITH_REFILL_SUMMARY = "SELECT items.*, " +
+            "s.soonestRefillId AS refill_id, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE s.itemId END AS refill_itemId, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE s.soonestAmount END AS refill_amount, " +
+            "s.soonestExpiryDate AS refill_expiryDate, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE 1 END AS refill_expires " +
+            "FROM items " +
+            "LEFT JOIN refill_summary s ON s.itemId = items.id " +
+            "AND s.soonestExpiryDate >= ? ";
+
+    /**
+     * The DataDao queries, paired with the number of parameters they take
+     */
+    private static final Object[][] QUERIES = {
+            { "UPDATE items SET viewHolderPosition = ? WHERE id = ?", 2 },
+            { "UPDATE items SET rawStock = max(rawStock - ?, 0), lastUsed = ?, lastUsedTime = ? " +
+                    "WHERE id = ? AND rawStock > 0", 4 },
+            { "UPDATE items SET rawStock = max(rawStock - ?, 0) WHERE id = ?", 2 },
+            { "UPDATE items SET name = ?, color = ?, showInWidget = ? WHERE id = ?", 4 },
+            { "UPDATE items SET rawStock = (CASE WHEN autoDecStartDate IS NULL THEN rawStock " +
+                    "ELSE rawStock - autoDecPerDay * ((? - autoDecStartDate) / autoDecNDays) END), " +
+                    "autoDecStartDate = CASE WHEN ? THEN ? ELSE NULL END, " +
+                    "autoDecPerDay = ?, autoDecNDays = ? " +
+                    "WHERE id = ? " +
+                    "AND ((autoDecStartDate IS NOT NULL) != ? OR autoDecPerDay != ? OR autoDecNDays != ?)", 9 },
+            { "UPDATE items SET rawStock = rawStock + ? - min(0, (CASE WHEN autoDecStartDate IS NULL " +
+                    "THEN rawStock " +
+                    "ELSE rawStock - autoDecPerDay * ((? - autoDecStartDate) / autoDecNDays) END)) " +
+                    "WHERE id = ?", 3 },
+            { "SELECT (CASE WHEN autoDecStartDate IS NULL THEN rawStock " +
+                    "ELSE rawStock - autoDecPerDay * ((? - autoDecStartDate) / autoDecNDays) END) " +
+                    "FROM items WHERE id = ?", 2 },
+            { "SELECT rawStock FROM items WHERE id = ?", 1 },
+            { "DELETE FROM items WHERE id = ?", 1 },
+            { "SELECT * FROM items WHERE id = ?", 1 },
+            { "SELECT * FROM items ORDER BY viewHolderPosition", 0 },
+            { ITEMS_WITH_EXPIRING_REFILL + "ORDER BY items.viewHolderPosition", 1 },
+            { ITEMS_WITH_REFILL_SUMMARY + "WHERE (items.viewHolderPosition, items.id) > (?, ?) " +
+                    "AND (items.viewHolderPosition, items.id) <= (?, ?) " +
+                    "ORDER BY items.viewHolderPosition, items.id LIMIT ?", 6 },
+            { ITEMS_WITH_REFILL_SUMMARY + "WHERE items.color = ? " +
+                    "AND (items.viewHolderPosition, items.id) > (?, ?) " +
+                    "AND (items.viewHolderPosition, items.id) <= (?, ?) " +
+                    "ORDER BY items.viewHolderPosition, items.id LIMIT ?", 7 },
+            { "SELECT COUNT(*) FROM items", 0 },
+            { "SELECT COUNT(*) FROM items WHERE color = ?", 1 },
+            { ITEMS_WITH_REFILL_SUMMARY + "WHERE items.runOutDay <= ? " +
+                    "AND (items.runOutDay, items.viewHolderPosition, items.id) > (?, ?, ?) " +
+                    "AND (items.runOutDay, items.viewHolderPosition, items.id) <= (?, ?, ?) " +
+                    "ORDER BY items.runOutDay, items.viewHolderPosition, items.id LIMIT ?", 9 },
+            { ITEMS_WITH_REFILL_SUMMARY + "WHERE items.color = ? AND items.runOutDay <= ? " +
+                    "AND (items.runOutDay, items.viewHolderPosition, items.id) > (?, ?, ?) " +
+                    "AND (items.runOutDay, items.viewHolderPosition, items.id) <= (?, ?, ?) " +
+                    "ORDER BY items.runOutDay, items.viewHolderPosition, items.id LIMIT ?", 10 },
+            { "SELECT COUNT(*) FROM items WHERE runOutDay <= ?", 1 },
+            { "SELECT COUNT(*) FROM items WHERE color = ? AND runOutDay <= ?", 2 },
+            { "SELECT runOutDay FROM items WHERE id = ?", 1 },
+            { "SELECT MIN(viewHolderPosition) FROM items", 0 },
+            { "SELECT id FROM items ORDER BY viewHolderPosition", 0 },
+            { ITEMS_WITH_EXPIRING_REFILL + "WHERE items.id = ?", 2 },
+            { "SELECT id, name, (CASE WHEN autoDecStartDate IS NULL THEN rawStock " +
+                    "ELSE rawStock - autoDecPerDay * ((? - autoDecStartDate) / autoDecNDays) END) AS stock, " +
+                    "lastUsed, lastUsedTime, autoDecStartDate IS NOT NULL AS autoDec " +
+                    "FROM items WHERE showInWidget is 1 ORDER BY viewHolderPosition", 1 },
+            { "SELECT * FROM refills WHERE itemId = ?", 1 },
+            { "SELECT * FROM refill_summary WHERE itemId = ?", 1 },
+            { "SELECT * FROM refills WHERE itemId = ? AND expires is 1 AND expiryDate >= ?", 2 },
+            { "SELECT * FROM refills WHERE itemId = ? AND expires is 0", 1 },
+            { "SELECT * FROM refills WHERE itemId = ? AND expires is 1 AND expiryDate < ?", 2 },
+            { "SELECT * FROM refills " +
+                    "WHERE itemId = ? " +
+                    "AND expires is 1 " +
+                    "AND expiryDate >= ? " +
+                    "ORDER BY expiryDate " +
+                    "ASC LIMIT 1", 2 },
+            { "UPDATE refills SET amount = amount + ? WHERE itemId = ? AND expiryDate = ? AND id != ?", 4 },
+            { "DELETE FROM refills WHERE id = ?", 1 },
+            { "INSERT INTO dose_events (itemId, epochSecond, delta, source) " +
+                    "SELECT id, ?, -autoDecPerDay, 2 FROM items " +
+                    "WHERE autoDecStartDate IS NOT NULL " +
+                    "AND autoDecStartDate < ? " +
+                    "AND (? - autoDecStartDate) % autoDecNDays = 0 " +
+                    "AND NOT EXISTS (SELECT 1 FROM dose_events e " +
+                    "WHERE e.itemId = items.id " +
+                    "AND e.epochSecond >= ? " +
+                    "AND e.epochSecond < ? " +
+                    "AND e.source = 2)", 5 },
+            { "INSERT OR REPLACE INTO dose_snapshots (itemId, upToSecond, total, eventCount, runningTotal) " +
+                    "SELECT e.itemId, ?, " +
+                    "IFNULL((SELECT s.total FROM dose_snapshots s WHERE s.itemId = e.itemId), 0) + SUM(e.delta), " +
+                    "IFNULL((SELECT s.eventCount FROM dose_snapshots s WHERE s.itemId = e.itemId), 0) + COUNT(*), " +
+                    "IFNULL((SELECT s.runningTotal FROM dose_snapshots s WHERE s.itemId = e.itemId), 0) " +
+                    "FROM dose_events e " +
+                    "WHERE e.epochSecond < ? " +
+                    "GROUP BY e.itemId", 2 },
+            { "DELETE FROM dose_events WHERE epochSecond < ?", 1 },
+            { "SELECT * FROM dose_snapshots WHERE itemId = ?", 1 },
+            { "SELECT * FROM dose_events WHERE itemId = ? AND epochSecond >= ? ORDER BY epochSecond DESC", 2 },
+            { "SELECT IFNULL((SELECT runningTotal FROM dose_snapshots WHERE itemId = ?), 0)", 1 },
+            { "SELECT lastStartedDay FROM current_day WHERE id = 0", 0 },
+            { "UPDATE current_day SET lastStartedDay = ? WHERE id = 0", 1 },
+            { "SELECT IFNULL(SUM(amount), 0) FROM refills WHERE id IN (?, ?)", 2 },
+            { "DELETE FROM refills WHERE id IN (?, ?)", 2 },
+    };
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = Room.inMemoryDatabaseBuilder(context, Database.class)
+                .addCallback(DatabaseFactory.CALLBACK)
+                .build();
+    }
+
+    @After
+    public void closeDb() {
+        database.close();
+    }
+
+    /**
+     * Gets the details of the query plan of a query.
+     *
+     * @param sql        the sql of the query
+     * @param paramCount the number of parameters the query takes
+     * @return the details of each step of the query plan
+     */
+    private List<String> getQueryPlan( String sql, int paramCount ) {
+        Object[] args = new Object[paramCount];
+        for (int i = 0; i < paramCount; i++) {
+            args[i] = 1;
+        }
+        List<String> details = new ArrayList<>();
+        try (Cursor cursor = database.query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + sql, args))) {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(detailIndex));
+            }
+        }
+        return details;
+    }
+
+    /**
+     * Gets the statements of the triggers in the schema, with the columns of NEW and OLD replaced by ?
+     *
+     * @return the sql of each statement
+     */
+    private List<String> getTriggerStatements() {
+        List<String> statements = new ArrayList<>();
+        try (Cursor cursor = database.query(new SimpleSQLiteQuery("SELECT sql FROM sqlite_master WHERE type = 'trigger'"))) {
+            while (cursor.moveToNext()) {
+                String sql = cursor.getString(0);
+                String body = sql.substring(sql.indexOf(" BEGIN ") + " BEGIN ".length(), sql.lastIndexOf("END"));
+                for (String statement : body.split(";")) {
+                    if (statement.trim().isEmpty() == false) {
+                        statements.add(statement.trim().replaceAll("\\b(NEW|OLD)\\.\\w+", "?"));
+                    }
+                }
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Fails if the query plan of a query scans a table without an index or sorts with a temporary b-tree.
+     *
+     * @param sql        the sql of the query
+     * @param paramCount the number of parameters the query takes
+     */
+    private void assertNoScans( String sql, int paramCount ) {
+        for (String detail : getQueryPlan(sql, paramCount)) {
+            //a select without a from clause scans a constant row, which reads no table
+            boolean unindexedScan = detail.startsWith("SCAN") && detail.contains("INDEX") == false
+                    && detail.contains("CONSTANT ROW") == false;
+            boolean tempSort = detail.contains("TEMP B-TREE");
+            assertTrue(sql + "\n" + detail, unindexedScan == false && tempSort == false);
+        }
+    }
+
+    @Test
+    public void no_query_scans() {
+        for (Object[] query : QUERIES) {
+            assertNoScans((String) query[0], (int) query[1]);
+        }
+    }
+
+    @Test
+    public void no_trigger_statement_scans() {
+        List<String> statements = getTriggerStatements();
+        assertFalse(statements.isEmpty());
+        for (String statement : statements) {
+            assertNoScans(statement, statement.length() - statement.replace("?", "").length());
+        }
+    }
+
+}
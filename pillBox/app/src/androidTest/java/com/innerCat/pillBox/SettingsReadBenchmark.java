@@ -0,0 +1,172 @@
+package com.innerCat.pillBox;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.ContextThemeWrapper;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.recyclerViews.ItemAdapter;
+import com.innerCat.pillBox.util.SettingsSnapshot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Binds 2k cards, as a full scroll through them would, through a context whose shared preferences
+ * count every read, and fails if binding read any of them.
+ * The results are reported as instrumentation status.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class SettingsReadBenchmark {
+
+    /**
+     * Shared preferences that count how many times they are read
+     */
+    private static class CountingSharedPreferences implements SharedPreferences {
+        private final SharedPreferences preferences;
+        private int reads = 0;
+
+        CountingSharedPreferences( SharedPreferences preferences ) {
+            this.preferences = preferences;
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            reads++;
+            return preferences.getAll();
+        }
+
+        @Nullable
+        @Override
+        public String getString( String key, @Nullable String defValue ) {
+            reads++;
+            return preferences.getString(key, defValue);
+        }
+
+        @Nullable
+        @Override
+        public Set<String> getStringSet( String key, @Nullable Set<String> defValues ) {
+            reads++;
+            return preferences.getStringSet(key, defValues);
+        }
+
+        @Override
+        public int getInt( String key, int defValue ) {
+            reads++;
+            return preferences.getInt(key, defValue);
+        }
+
+        @Override
+        public long getLong( String key, long defValue ) {
+            reads++;
+            return preferences.getLong(key, defValue);
+        }
+
+        @Override
+        public float getFloat( String key, float defValue ) {
+            reads++;
+            return preferences.getFloat(key, defValue);
+        }
+
+        @Override
+        public boolean getBoolean( String key, boolean defValue ) {
+            reads++;
+            return preferences.getBoolean(key, defValue);
+        }
+
+        @Override
+        public boolean contains( String key ) {
+            reads++;
+            return preferences.contains(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return preferences.edit();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener( OnSharedPreferenceChangeListener listener ) {
+            preferences.registerOnSharedPreferenceChangeListener(listener);
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener( OnSharedPreferenceChangeListener listener ) {
+            preferences.unregisterOnSharedPreferenceChangeListener(listener);
+        }
+    }
+
+    /**
+     * A themed context that hands out the counting shared preferences
+     */
+    private static class CountingContext extends ContextThemeWrapper {
+        private final List<CountingSharedPreferences> handedOut = new ArrayList<>();
+
+        CountingContext( Context base ) {
+            super(base, R.style.Theme_pillBox);
+        }
+
+        @Override
+        public SharedPreferences getSharedPreferences( String name, int mode ) {
+            CountingSharedPreferences preferences = new CountingSharedPreferences(super.getSharedPreferences(name, mode));
+            handedOut.add(preferences);
+            return preferences;
+        }
+
+        int reads() {
+            int reads = 0;
+            for (CountingSharedPreferences preferences : handedOut) {
+                reads += preferences.reads;
+            }
+            return reads;
+        }
+
+        void reset() {
+            handedOut.clear();
+        }
+    }
+
+    @Test
+    public void bind_2k_cards_without_reading_preferences() {
+        CountingContext context = new CountingContext(BenchmarkFixture.instrumentation().getTargetContext());
+        List<Item> items = BenchmarkFixture.makeItems();
+
+        //the preference reads of a snapshot and of binding every card, and how long binding took
+        long[] measured = BenchmarkFixture.onMainThread(() -> {
+            //what a single snapshot costs, which binding used to cost per card
+            SettingsSnapshot settings = SettingsSnapshot.read(context);
+            int snapshotReads = context.reads();
+            context.reset();
+
+            ItemAdapter adapter = BenchmarkFixture.createAdapter(items, settings, context);
+            List<ItemAdapter.ViewHolder> holders = BenchmarkFixture.createHolders(adapter, context);
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            BenchmarkFixture.bindAll(adapter, holders);
+            long bindNanos = SystemClock.elapsedRealtimeNanos() - start;
+            return new long[]{snapshotReads, context.reads(), bindNanos};
+        });
+
+        Bundle results = new Bundle();
+        results.putInt("snapshotPreferenceReads", (int) measured[0]);
+        results.putInt("bindPreferenceReads", (int) measured[1]);
+        results.putLong("bindUsPerCard", measured[2] / 1_000 / BenchmarkFixture.ITEM_COUNT);
+        BenchmarkFixture.report(results);
+
+        assertEquals(0, measured[1]);
+    }
+}
@@ -0,0 +1,109 @@
+package com.innerCat.pillBox;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.innerCat.pillBox.objects.ColorItem;
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.recyclerViews.ItemAdapter;
+import com.innerCat.pillBox.recyclerViews.ItemChange;
+import com.innerCat.pillBox.util.SettingsSnapshot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Rebinds a card once per tap, for many rapid taps, first binding the whole card and then
+ * binding only the stock and last taken text that a tap changes.
+ * The timings are reported as instrumentation status, as they depend on the device. The test fails
+ * if a tap does not have the payload of a stock change, or if its partial rebind binds more than
+ * the stock and last taken text, or misses the new stock.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class TapRebindBenchmark {
+    private static final int TAP_COUNT = 2000;
+    private static final String NOT_REBOUND = "Not rebound";
+
+    /**
+     * Gets a percentile of some samples.
+     *
+     * @param sorted     the samples, sorted
+     * @param percentile the percentile, from 0 to 100
+     * @return the sample at the percentile
+     */
+    private static long percentile( long[] sorted, int percentile ) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    @Test
+    public void rebind_only_the_stock_of_a_tapped_card() {
+        ContextThemeWrapper context = BenchmarkFixture.themedContext();
+        Item item = new Item("Item", TAP_COUNT, ColorItem.NO_COLOR, false);
+        item.setId(1);
+        item.setLastUsed(LocalDate.now().minusDays(1));
+
+        //a tap as the diff of the lists before and after it sees it
+        Item tapped = new Item(item);
+        tapped.setRawStock(TAP_COUNT - 1);
+        tapped.setLastUsed(LocalDate.now());
+        Object payload = ItemAdapter.DIFF_CALLBACK.getChangePayload(item, tapped);
+        assertEquals(new ItemChange(ItemChange.STOCK | ItemChange.LAST_TAKEN), payload);
+        List<Object> payloads = Collections.singletonList(payload);
+        item.setLastUsed(LocalDate.now());
+
+        //the time of every tap, of the full and of the partial rebinds
+        long[][] tapNanos = BenchmarkFixture.onMainThread(() -> {
+            long[][] nanos = new long[2][TAP_COUNT];
+            ItemAdapter adapter = BenchmarkFixture.createAdapter(Collections.singletonList(item),
+                    new SettingsSnapshot(5, 28, 7, 14, true), context);
+            ItemAdapter.ViewHolder holder = adapter.onCreateViewHolder(new FrameLayout(context), 0);
+            adapter.onBindViewHolder(holder, 0);
+            TextView nameTV = holder.itemView.findViewById(R.id.nameTV);
+            TextView stockTV = holder.itemView.findViewById(R.id.stockTV);
+
+            for (int pass = 0; pass < 2; pass++) {
+                boolean partial = pass == 1;
+                //only a full rebind sets the name again
+                nameTV.setText(NOT_REBOUND);
+                for (int tap = 0; tap < TAP_COUNT; tap++) {
+                    long tapStart = SystemClock.elapsedRealtimeNanos();
+                    item.setRawStock(item.getRawStock() - 1);
+                    if (partial) {
+                        adapter.onBindViewHolder(holder, 0, payloads);
+                    } else {
+                        adapter.onBindViewHolder(holder, 0);
+                    }
+                    nanos[pass][tap] = SystemClock.elapsedRealtimeNanos() - tapStart;
+                    assertEquals(String.valueOf(item.getRawStock()), stockTV.getText().toString());
+                }
+                assertEquals(partial ? NOT_REBOUND : item.getName(), nameTV.getText().toString());
+                item.setRawStock(TAP_COUNT);
+            }
+            return nanos;
+        });
+
+        Bundle results = new Bundle();
+        String[] passes = {"fullRebind", "stockRebind"};
+        for (int pass = 0; pass < 2; pass++) {
+            Arrays.sort(tapNanos[pass]);
+            results.putLong(passes[pass] + "MedianUs", percentile(tapNanos[pass], 50) / 1_000);
+            results.putLong(passes[pass] + "P95Us", percentile(tapNanos[pass], 95) / 1_000);
+            results.putLong(passes[pass] + "WorstUs", tapNanos[pass][TAP_COUNT - 1] / 1_000);
+        }
+        BenchmarkFixture.report(results);
+    }
+}
@@ -0,0 +1,120 @@
+package com.innerCat.pillBox.activities;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.rule.ActivityTestRule;
+
+import com.innerCat.pillBox.BenchmarkFixture;
+import com.innerCat.pillBox.factories.DatabaseFactory;
+import com.innerCat.pillBox.objects.ColorItem;
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.room.DataDao;
+import com.innerCat.pillBox.room.Database;
+import com.innerCat.pillBox.util.Ranks;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Toggles the color focus on and off over 5k items and records how long each frame took.
+ * The results are reported as instrumentation status, and the test fails on a frozen frame.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ColorFocusJankBenchmark {
+    private static final int ITEM_COUNT = 5000;
+    private static final int TOGGLES = 20;
+    private static final long JANK_NANOS = 16_666_667L;
+    private static final long FROZEN_NANOS = 700_000_000L;
+
+    @Rule
+    public ActivityTestRule<MainActivity> activityRule = new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private final List<Long> frameNanos = new ArrayList<>();
+    private long lastFrameTime = 0;
+    private boolean recording = false;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame( long frameTimeNanos ) {
+            if (lastFrameTime != 0) {
+                frameNanos.add(frameTimeNanos - lastFrameTime);
+            }
+            lastFrameTime = frameTimeNanos;
+            if (recording) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    };
+
+    /**
+     * Inserts the items, every other one of the focus color.
+     */
+    private void insertItems( Context context ) {
+        Database database = DatabaseFactory.getInstance(context);
+        DataDao dao = database.getDao();
+        database.runInTransaction(() -> {
+            for (int i = 0; i < ITEM_COUNT; i++) {
+                Item item = new Item("Item " + i, 10, i % 2 == 0 ? BenchmarkFixture.COLOR : ColorItem.NO_COLOR, false);
+                item.setViewHolderPosition(i * Ranks.GAP);
+                dao.insert(item);
+            }
+        });
+    }
+
+    @Test
+    public void toggle_color_focus_on_5k_items() {
+        Instrumentation instrumentation = BenchmarkFixture.instrumentation();
+        insertItems(instrumentation.getTargetContext());
+        MainActivity activity = activityRule.launchActivity(null);
+
+        //wait for the loaded items to be shown
+        long deadline = SystemClock.uptimeMillis() + 10_000;
+        while (activity.adapter.getItemCount() < ITEM_COUNT && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(50);
+        }
+        assertEquals(ITEM_COUNT, activity.adapter.getItemCount());
+
+        instrumentation.runOnMainSync(() -> {
+            recording = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        });
+        for (int i = 0; i < TOGGLES; i++) {
+            instrumentation.runOnMainSync(() -> activity.focusOnColor(BenchmarkFixture.COLOR));
+            SystemClock.sleep(250);
+            instrumentation.runOnMainSync(activity::resetColorFocus);
+            SystemClock.sleep(250);
+        }
+        instrumentation.runOnMainSync(() -> recording = false);
+        instrumentation.waitForIdleSync();
+
+        int janky = 0;
+        long worst = 0;
+        for (long nanos : frameNanos) {
+            if (nanos > JANK_NANOS) {
+                janky++;
+            }
+            worst = Math.max(worst, nanos);
+        }
+        Bundle results = new Bundle();
+        results.putInt("frames", frameNanos.size());
+        results.putInt("jankyFrames", janky);
+        results.putLong("worstFrameMs", worst / 1_000_000);
+        BenchmarkFixture.report(results);
+
+        assertTrue("frozen frame of " + worst / 1_000_000 + "ms", worst < FROZEN_NANOS);
+    }
+}
@@ -27,8 +27,7 @@ import com.innerCat.pillBox.factories.ColorFactory;
 import com.innerCat.pillBox.factories.TextWatcherFactory;
 import com.innerCat.pillBox.objects.Item;
 import com.innerCat.pillBox.recyclerViews.ColorAdapter;
-
-import java.time.LocalDate;
+import com.innerCat.pillBox.util.Today;
 
 import static android.view.View.GONE;
 import static android.view.View.VISIBLE;
@@ -174,12 +173,23 @@ public class FormActivity extends AppCompatActivity {
             }
         }
         if (requestCode == MainActivity.EDIT_ITEM_REQUEST) {
+            //the stock is sent back as the change made to it, so that doses taken meanwhile are kept
+            returnIntent.putExtra("stockChange", stock - itemToEdit.getRawStock());
             itemToEdit.setName(name);
             itemToEdit.setColor(color);
-            itemToEdit.setRawStock(stock);
             itemToEdit.setShowInWidget(showInWidget);
-            //flatten if autodec has changed
-            itemToEdit.flattenAndSetAutoDecIf(autodec, g.autoDecPerDayPicker.getValue(), g.autoDecNDaysPicker.getValue());
+            //the database flattens the stock if autodec has changed
+            if (autodec) {
+                if (itemToEdit.isAutoDec() == false) {
+                    itemToEdit.setAutoDecStartDate(Today.date());
+                }
+                itemToEdit.setAutoDecPerDay(g.autoDecPerDayPicker.getValue());
+                itemToEdit.setAutoDecNDays(g.autoDecNDaysPicker.getValue());
+            } else {
+                itemToEdit.setAutoDecStartDate(null);
+                itemToEdit.setAutoDecPerDay(0);
+                itemToEdit.setAutoDecNDays(0);
+            }
 
             returnIntent.putExtra("item", itemToEdit);
         } else {
@@ -189,7 +199,7 @@ public class FormActivity extends AppCompatActivity {
                         stock,
                         color,
                         showInWidget,
-                        LocalDate.now(),
+                        Today.date(),
                         g.autoDecNDaysPicker.getValue(),
                         g.autoDecPerDayPicker.getValue());
             } else {
@@ -197,7 +207,6 @@ public class FormActivity extends AppCompatActivity {
             }
             returnIntent.putExtra("item", item);
         }
-        returnIntent.putExtra("position", getIntent().getIntExtra("position", -1));
         setResult(RESULT_OK, returnIntent);
         System.out.println("FINISHED");
         finish();
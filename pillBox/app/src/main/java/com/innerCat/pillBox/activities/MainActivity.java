@@ -25,9 +25,11 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.cardview.widget.CardView;
+import androidx.lifecycle.Lifecycle;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.StaggeredGridLayoutManager;
+import androidx.room.InvalidationTracker;
 
 import com.google.android.material.datepicker.CalendarConstraints;
 import com.google.android.material.datepicker.DateValidatorPointForward;
@@ -45,24 +47,34 @@ import com.innerCat.pillBox.factories.TapTargetFactory;
 import com.innerCat.pillBox.factories.TextWatcherFactory;
 import com.innerCat.pillBox.factories.ToolbarAnimatorFactory;
 import com.innerCat.pillBox.objects.ColorItem;
+import com.innerCat.pillBox.objects.DoseEvent;
 import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.objects.ItemWithExpiringRefill;
 import com.innerCat.pillBox.objects.Refill;
 import com.innerCat.pillBox.recyclerViews.ItemAdapter;
 import com.innerCat.pillBox.room.Converters;
 import com.innerCat.pillBox.room.DataDao;
+import com.innerCat.pillBox.room.DatabaseScheduler;
 import com.innerCat.pillBox.room.Database;
+import com.innerCat.pillBox.room.ItemChanges;
+import com.innerCat.pillBox.util.ColorPalette;
+import com.innerCat.pillBox.util.SettingsSnapshot;
 import com.innerCat.pillBox.util.StringFormatter;
+import com.innerCat.pillBox.util.Today;
 import com.innerCat.pillBox.util.Updates;
 import com.innerCat.pillBox.widgets.HomeWidgetProvider;
 
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -78,9 +90,46 @@ public class MainActivity extends AppCompatActivity {
     //private fields for the Dao and the Database
     public Database database;
     DataDao dao;
+    DatabaseScheduler scheduler;
     ItemAdapter adapter;
     public SharedPreferences sharedPreferences;
 
+    //tells when the items or their refill summaries change, including changes made from the widget
+    private final InvalidationTracker.Observer itemsObserver = new InvalidationTracker.Observer("items", "refill_summary") {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            scheduler.write(() -> {
+                List<ItemChanges.Change> changes = database.takeItemChanges();
+                runOnUiThread(() -> onItemChanges(changes));
+            });
+        }
+    };
+    //the day that the expiring refills of the pages were queried for
+    private long loadedDay;
+    //the items of each page, null until the page has arrived since it was last loaded
+    private final List<List<Item>> loadedPages = new ArrayList<>();
+    //the latest request of each page and of the count, so that a query that finishes after a later one is ignored
+    private final List<Long> pageRequests = new ArrayList<>();
+    private long countRequest;
+    private long lastRequest = 0;
+    //the sort key (runOutDay, viewHolderPosition, id) of the last item of each page but the last, which
+    //is open and holds at most PAGE_SIZE items. A new page is added as the user scrolls.
+    //the id breaks ties between equal ranks, which migrated data can have
+    private final List<long[]> pageEnds = new ArrayList<>();
+    //whether the count has arrived since it was last loaded
+    private boolean countLoaded = false;
+    //whether items changed while the activity was stopped, loaded again when it is resumed
+    private boolean itemsChangedWhileStopped = false;
+    private List<Item> loadedItems = new ArrayList<>();
+    private int itemCount = 0;
+    //whether items arrived while an item was being dragged, applied when the drag ends
+    private boolean itemsChangedWhileDragging = false;
+    private boolean dragging = false;
+    private boolean scrollToTopOnNextItems = false;
+    //whether the items are sorted by the day they run out, and whether only the items running out soon are shown
+    private boolean sortByRunOut = false;
+    private boolean runningOutOnly = false;
+
     //modes
     boolean editMode = false;
     private TapTargetFactory tapTargetSequence;
@@ -92,6 +141,10 @@ public class MainActivity extends AppCompatActivity {
     public static final int RESULT_DELETE = 123;
     public static final int RESULT_REFILL_CHANGED = 124;
 
+    //how many items are loaded at a time, and how close to the last loaded item the next page is loaded
+    public static final int PAGE_SIZE = 60;
+    public static final int PREFETCH_DISTANCE = 20;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -105,6 +158,7 @@ public class MainActivity extends AppCompatActivity {
 
         //shared preferences
         sharedPreferences = SharedPreferencesFactory.getSP(this);
+        sortByRunOut = sharedPreferences.getBoolean(getString(R.string.sp_sort_by_run_out), false);
 
         //Add offset listener for when the view is collapsing or expanded
         g.appBar.addOnOffsetChangedListener(OnOffsetChangedListenerFactory.create(this));
@@ -121,13 +175,18 @@ public class MainActivity extends AppCompatActivity {
             showUpdateDialog();
         }
 
-        //empty adapter
+        //empty adapter, filled when the loaded items arrive
         adapter = ItemAdapter.empty();
+        adapter.setSettings(SettingsSnapshot.get(this));
+        //the activity is recreated on a configuration change, so the colors follow the theme
+        adapter.setPalette(ColorPalette.resolve(this));
         g.rvItems.setAdapter(adapter);
+        g.rvItems.setLayoutManager(new StaggeredGridLayoutManager(2, VERTICAL));
 
         //initialise the database
-        database = DatabaseFactory.create(this);
+        database = DatabaseFactory.getInstance(this);
         dao = database.getDao();
+        scheduler = DatabaseScheduler.getInstance();
 
 
         // Add the itemTouchHelper for drag and drop
@@ -138,34 +197,21 @@ public class MainActivity extends AppCompatActivity {
         ith.attachToRecyclerView(g.rvItems);
 
 
-        //ROOM Threads
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Handler handler = new Handler(Looper.getMainLooper());
-        executor.execute(() -> {
-            //Background work here
-            //NB: This is the new thread in which the database stuff happens
-            //today rvItem
-            List<Item> items = dao.getAllItems();
-            for (Item item : items) {
-                Refill expiringRefill = dao.getSoonestExpiringRefillOfItemId(item.getId(), Converters.todayString());
-                item.setExpiringRefill(expiringRefill);
+        //load the next page as the user scrolls close to the last loaded item
+        g.rvItems.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                loadMoreIfNeeded();
             }
-
-
-            handler.post(() -> {
-                // Create adapter passing in the sample user data
-                adapter = new ItemAdapter(items);
-                // Attach the adapter to the recyclerview to populate items
-                g.rvItems.setAdapter(adapter);
-                adapter.notifyDataSetChanged();
-                // Set layout manager to position the items
-                //g.rvItems.setLayoutManager(new GridLayoutManager(this, 2));
-                g.rvItems.setLayoutManager(new StaggeredGridLayoutManager(2, VERTICAL));
-                // Set the initial padding
-                updateRVPadding();
-            });
         });
 
+        database.getInvalidationTracker().addObserver(itemsObserver);
+        loadItems();
+        //catch up on the start of today, if neither the app nor the widget was running at midnight.
+        //once today has been started, this only reads the last started day
+        long today = Converters.todayEpochDay();
+        scheduler.write(() -> database.startNewDay(today));
+
         //set timer to refresh at 12:00
         Handler timerHandler = new Handler();
         // Execute items on main thread
@@ -174,25 +220,277 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Refresh rv items.
+     * Whether the items are shown in the order they run out, rather than in the user's order.
+     * Only the items running out soon are shown in that order too, soonest first.
+     *
+     * @return whether the items are in run out order
      */
-    private void refreshRVItems() {
-        Handler handler = new Handler(Looper.getMainLooper());
-        Executors.newSingleThreadExecutor().execute(() -> {
-            //Background work here
-            List<Item> items = dao.getAllItems();
-            for (Item item : items) {
-                Refill expiringRefill = dao.getSoonestExpiringRefillOfItemId(item.getId(), Converters.todayString());
-                item.setExpiringRefill(expiringRefill);
+    private boolean isRunOutOrder() {
+        return sortByRunOut || runningOutOnly;
+    }
+
+    /**
+     * Gets the last run out day of the items that are shown.
+     *
+     * @return the epoch day the running out limit is from today, if only the items running out soon
+     * are shown, otherwise Item.RUN_OUT_NEVER
+     */
+    private long getLastRunOutDay() {
+        if (runningOutOnly == false) {
+            return Item.RUN_OUT_NEVER;
+        }
+        return Converters.todayEpochDay() + SettingsSnapshot.get(this).getRunningOutDayThreshold();
+    }
+
+    /**
+     * Loads the items, or only the items of the focus color, and their count, replacing any previous load.
+     * Afterwards, only the pages that a changed Item was or now is in are loaded again (see onItemChanges).
+     */
+    private void loadItems() {
+        loadedDay = Converters.todayEpochDay();
+        countLoaded = false;
+        loadCount();
+        loadedPages.clear();
+        pageRequests.clear();
+        for (int index = 0; index <= pageEnds.size(); index++) {
+            loadPage(index);
+        }
+    }
+
+    /**
+     * Loads the number of items that are shown, with the focus color and the running out filter.
+     */
+    private void loadCount() {
+        int focusColor = adapter.getFocusColor();
+        boolean runningOut = runningOutOnly;
+        long lastDay = getLastRunOutDay();
+        long request = ++lastRequest;
+        countRequest = request;
+        scheduler.read(DatabaseScheduler.Priority.UI_VISIBLE, () -> {
+            int count;
+            if (runningOut) {
+                count = focusColor == ColorItem.NO_COLOR
+                        ? dao.countItemsByRunOutDay(lastDay)
+                        : dao.countItemsByRunOutDayOfColor(focusColor, lastDay);
+            } else {
+                count = focusColor == ColorItem.NO_COLOR
+                        ? dao.countItems()
+                        : dao.countItemsOfColor(focusColor);
             }
-            adapter.setItems(items);
+            runOnUiThread(() -> {
+                if (countRequest != request) {
+                    return;
+                }
+                itemCount = count;
+                countLoaded = true;
+                onItemsChanged();
+            });
+        });
+    }
 
-            handler.post(() -> {
-                adapter.notifyDataSetChanged();
+    /**
+     * Loads a page of the items with their expiring refills as of loadedDay, in the user's order or in
+     * run out order. The page starts after the end of the page before it, and runs up to its own end,
+     * or for PAGE_SIZE items if it is the last page, so each query seeks to where its page starts rather
+     * than reading the pages before it. A page that is loaded again keeps its items until the new ones arrive.
+     *
+     * @param index the index of the page
+     */
+    private void loadPage(int index) {
+        long[] after = index == 0 ? new long[]{Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE} : pageEnds.get(index - 1);
+        boolean last = index == pageEnds.size();
+        long[] until = last ? new long[]{Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE} : pageEnds.get(index);
+        int limit = last ? PAGE_SIZE : -1;
+        int focusColor = adapter.getFocusColor();
+        boolean runOutOrder = isRunOutOrder();
+        long lastDay = getLastRunOutDay();
+        long day = loadedDay;
+        long request = ++lastRequest;
+        if (index < pageRequests.size()) {
+            pageRequests.set(index, request);
+        } else {
+            pageRequests.add(request);
+            loadedPages.add(null);
+        }
+        scheduler.read(DatabaseScheduler.Priority.UI_VISIBLE, () -> {
+            List<ItemWithExpiringRefill> rows;
+            if (runOutOrder) {
+                rows = focusColor == ColorItem.NO_COLOR
+                        ? dao.getItemsByRunOutDay(day, lastDay,
+                                after[0], after[1], after[2], until[0], until[1], until[2], limit)
+                        : dao.getItemsByRunOutDayOfColor(day, focusColor, lastDay,
+                                after[0], after[1], after[2], until[0], until[1], until[2], limit);
+            } else {
+                rows = focusColor == ColorItem.NO_COLOR
+                        ? dao.getItemsWithExpiringRefill(day, after[1], after[2], until[1], until[2], limit)
+                        : dao.getItemsWithExpiringRefillOfColor(day, focusColor,
+                                after[1], after[2], until[1], until[2], limit);
+            }
+            List<Item> items = ItemWithExpiringRefill.toItems(rows);
+            runOnUiThread(() -> {
+                if (index >= pageRequests.size() || pageRequests.get(index) != request) {
+                    return;
+                }
+                loadedPages.set(index, items);
+                onItemsChanged();
             });
         });
     }
 
+    /**
+     * Loads again the pages that the changed Items were in, or are in now, and the count if it may have
+     * changed. The pages that haven't arrived yet are loaded again as well, as they may have been
+     * read before the change.
+     *
+     * @param changes the changes
+     */
+    private void onItemChanges(List<ItemChanges.Change> changes) {
+        if (changes.isEmpty() || loadedPages.isEmpty()) {
+            return;
+        }
+        if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED) == false) {
+            itemsChangedWhileStopped = true;
+            return;
+        }
+        Map<Integer, Integer> pageById = new HashMap<>();
+        boolean[] changedPages = new boolean[loadedPages.size()];
+        for (int index = 0; index < loadedPages.size(); index++) {
+            List<Item> page = loadedPages.get(index);
+            if (page == null) {
+                changedPages[index] = true;
+                continue;
+            }
+            for (Item item : page) {
+                pageById.put(item.getId(), index);
+            }
+        }
+        boolean countChanged = false;
+        for (ItemChanges.Change change : changes) {
+            Integer loadedIn = pageById.get(change.getId());
+            if (loadedIn != null) {
+                changedPages[loadedIn] = true;
+            }
+            boolean shown = change.isPresent() && isShown(change);
+            if (shown) {
+                changedPages[pageOf(change)] = true;
+            }
+            //the count only stays the same for sure when a loaded item is still shown
+            if (loadedIn == null || shown == false) {
+                countChanged = true;
+            }
+        }
+        for (int index = 0; index < changedPages.length; index++) {
+            if (changedPages[index]) {
+                loadPage(index);
+            }
+        }
+        if (countChanged) {
+            loadCount();
+        }
+    }
+
+    /**
+     * Whether a changed Item is shown, with the focus color and the running out filter.
+     *
+     * @param change the change
+     * @return whether it is shown
+     */
+    private boolean isShown(ItemChanges.Change change) {
+        int focusColor = adapter.getFocusColor();
+        if (focusColor != ColorItem.NO_COLOR && change.getColor() != focusColor) {
+            return false;
+        }
+        return runningOutOnly == false || change.getRunOutDay() <= getLastRunOutDay();
+    }
+
+    /**
+     * Gets the page that the sort key of a changed Item falls in.
+     *
+     * @param change the change
+     * @return the index of the page
+     */
+    private int pageOf(ItemChanges.Change change) {
+        long[] key = {change.getRunOutDay(), change.getViewHolderPosition(), change.getId()};
+        //the user's order doesn't sort by the run out day
+        int from = isRunOutOrder() ? 0 : 1;
+        for (int index = 0; index < pageEnds.size(); index++) {
+            long[] end = pageEnds.get(index);
+            int compare = 0;
+            for (int i = from; i < key.length && compare == 0; i++) {
+                compare = Long.compare(key[i], end[i]);
+            }
+            if (compare <= 0) {
+                return index;
+            }
+        }
+        return pageEnds.size();
+    }
+
+    /**
+     * Whether every page has arrived since it was last loaded.
+     *
+     * @return whether the pages have loaded
+     */
+    private boolean pagesLoaded() {
+        return loadedPages.contains(null) == false;
+    }
+
+    /**
+     * Adds the next page if the user has scrolled close to the last loaded item,
+     * and the last page has finished loading full.
+     */
+    private void loadMoreIfNeeded() {
+        if (pagesLoaded() == false || dragging) {
+            return;
+        }
+        List<Item> lastPage = loadedPages.get(loadedPages.size() - 1);
+        if (lastPage.size() < PAGE_SIZE) {
+            return;
+        }
+        int[] lastPositions = ((StaggeredGridLayoutManager) g.rvItems.getLayoutManager())
+                .findLastVisibleItemPositions(null);
+        int lastVisiblePosition = RecyclerView.NO_POSITION;
+        for (int position : lastPositions) {
+            lastVisiblePosition = Math.max(lastVisiblePosition, position);
+        }
+        if (adapter.needsMoreItems(lastVisiblePosition, PREFETCH_DISTANCE)) {
+            //close the last page at its last item, which it keeps however many items later move into
+            //its range, and open the next page after it. The closed page already holds its items
+            Item lastItem = lastPage.get(lastPage.size() - 1);
+            pageEnds.add(new long[]{lastItem.getRunOutDay(), lastItem.getViewHolderPosition(), lastItem.getId()});
+            loadPage(pageEnds.size());
+        }
+    }
+
+    /**
+     * Shows the latest loaded items from the database, with placeholders for the rest.
+     * While an item is being dragged the items are held back until the drag ends,
+     * so that the list doesn't change under the user's finger.
+     */
+    private void onItemsChanged() {
+        //wait for both the pages and the count, so that a new color focus isn't shown with the old count
+        if (pagesLoaded() == false || countLoaded == false) {
+            return;
+        }
+        loadedItems = new ArrayList<>();
+        for (List<Item> page : loadedPages) {
+            loadedItems.addAll(page);
+        }
+        if (dragging) {
+            itemsChangedWhileDragging = true;
+            return;
+        }
+        adapter.setItems(loadedItems, itemCount, () -> {
+            updateRVPadding();
+            if (scrollToTopOnNextItems) {
+                scrollToTopOnNextItems = false;
+                g.rvItems.scrollToPosition(0);
+            }
+            //the first page may not fill the screen
+            loadMoreIfNeeded();
+        });
+    }
+
     /**
      * When the view is resumed
      */
@@ -200,30 +498,30 @@ public class MainActivity extends AppCompatActivity {
     public void onResume() {
         super.onResume();
         if (adapter != null) {
-            //ROOM Threads
             updateHomeWidget();
-
-            //only update rv if widget asked for an update
-            boolean widgetUpdate = sharedPreferences.getBoolean("widgetUpdate", false);
-            long todayEpoch = LocalDate.now().toEpochDay();
-            boolean dateUpdate = todayEpoch != sharedPreferences.getLong("dateUpdate", todayEpoch);
-            if (widgetUpdate || dateUpdate) {
-                SharedPreferences.Editor editor = sharedPreferences.edit();
-                editor.putBoolean("widgetUpdate", false);
-                editor.apply();
-                refreshRVItems();
+            //the expiring refills are queried for a given day, so catch up if the day has changed
+            if (loadedDay != Converters.todayEpochDay()) {
+                itemsChangedWhileStopped = false;
+                newDay();
+            } else if (itemsChangedWhileStopped) {
+                itemsChangedWhileStopped = false;
+                loadItems();
             }
-            SharedPreferences.Editor editor = sharedPreferences.edit();
-            editor.putLong("dateUpdate", LocalDate.now().toEpochDay());
-            editor.apply();
-
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        database.getInvalidationTracker().removeObserver(itemsObserver);
+        super.onDestroy();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.home_menu, menu);
+        menu.findItem(R.id.action_sort_run_out).setChecked(sortByRunOut);
+        menu.findItem(R.id.action_running_out).setChecked(runningOutOnly);
         new Handler().post(() -> editButtonView = findViewById(R.id.action_edit));
         return true;
     }
@@ -236,6 +534,17 @@ public class MainActivity extends AppCompatActivity {
                     g.toolbar.getMenu().getItem(0), g.toolbarLayout);
             colorAnimator.start();
             return true;
+        } else if (item.getItemId() == R.id.action_sort_run_out) {
+            sortByRunOut = !sortByRunOut;
+            item.setChecked(sortByRunOut);
+            sharedPreferences.edit().putBoolean(getString(R.string.sp_sort_by_run_out), sortByRunOut).apply();
+            reorderItems();
+            return true;
+        } else if (item.getItemId() == R.id.action_running_out) {
+            runningOutOnly = !runningOutOnly;
+            item.setChecked(runningOutOnly);
+            reorderItems();
+            return true;
         } else if (item.getItemId() == R.id.action_settings) {
             toSettings();
             return true;
@@ -244,6 +553,15 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
+    /**
+     * Observes the items again from the top, after the order or the filter has changed
+     */
+    private void reorderItems() {
+        pageEnds.clear();
+        scrollToTopOnNextItems = true;
+        loadItems();
+    }
+
     /**
      * Focus on color.
      *
@@ -252,6 +570,8 @@ public class MainActivity extends AppCompatActivity {
     public void focusOnColor(int color) {
         g.appBar.setExpanded(true, true);
         adapter.setFocusColor(color);
+        pageEnds.clear();
+        loadItems();
     }
 
     /**
@@ -259,6 +579,8 @@ public class MainActivity extends AppCompatActivity {
      */
     public void resetColorFocus() {
         adapter.reset();
+        pageEnds.clear();
+        loadItems();
     }
 
     /**
@@ -272,8 +594,12 @@ public class MainActivity extends AppCompatActivity {
      * Called at 00:00, updates the RVItems and updates the lastTakenTV for the widget
      */
     public void newDay() {
-        refreshRVItems();
-        adapter.checkLastTaken();
+        //roll the refill summaries, log the auto decrement doses and compact the dose log, the changed items are loaded again
+        long today = Converters.todayEpochDay();
+        scheduler.write(() -> database.startNewDay(today));
+        loadItems();
+        //the calculated stock, expiry and last taken text depend on the day
+        adapter.rebindAll();
     }
 
     /**
@@ -292,66 +618,83 @@ public class MainActivity extends AppCompatActivity {
 
 
     /**
-     * Update an existing item in the database
+     * Take one of an item, if it has any stock left, and log the dose. The stock is decremented in the
+     * database rather than written from this copy, so it can't undo a change made by the widget. The list
+     * is updated by the loaded items.
      *
-     * @param item     the item to change
-     * @param position its position in the RecyclerView
+     * @param item the item to take one of
      */
-    public void updateItem(Item item, int position) {
+    public void takeOne(Item item) {
+        LocalDate day = Today.date();
+        LocalTime time = Today.time();
         //ROOM Threads
-        ExecutorService executor = Executors.newSingleThreadExecutor();
         Handler handler = new Handler(Looper.getMainLooper());
-        executor.execute(() -> {
+        scheduler.write(() -> {
             //Background work here
-            dao.update(item);
-            handler.post(() -> {
-                //UI Thread work here
-                // Notify the adapter that an item was changed at position
-                adapter.setItem(item, position);
-                adapter.notifyChanged(this, position);
-                updateHomeWidget();
-            });
+            dao.takeOne(item.getId(), day, time, DoseEvent.SOURCE_APP);
+            handler.post(this::updateHomeWidget);
+        });
+    }
+
+    /**
+     * Update an existing item in the database, after it has been edited in the form.
+     * The list is updated by the loaded items.
+     *
+     * @param item        the item to change
+     * @param stockChange how much the form changed the stock by
+     */
+    public void updateItem(Item item, int stockChange) {
+        //ROOM Threads
+        Handler handler = new Handler(Looper.getMainLooper());
+        long today = Converters.todayEpochDay();
+        scheduler.write(() -> {
+            //Background work here
+            dao.updateItem(item, stockChange, today);
+            handler.post(this::updateHomeWidget);
         });
     }
 
     /**
-     * Update multiple items in the background, without notifying UI
+     * Update the positions of multiple items in the background, in a single transaction,
+     * without notifying UI
      *
      * @param updated the updated
      */
-    public void updateMultipleInBackground(List<Item> updated) {
+    public void updatePositionsInBackground(List<Item> updated) {
         //ROOM Threads
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
+        scheduler.write(() -> {
             //Background work here
-            System.out.println("UPDATED IN DAO");
-            for (Item item : updated) {
-                dao.update(item);
-            }
+            dao.updateViewHolderPositions(updated);
         });
     }
 
     /**
-     * Remove an existing item in the database
+     * Rank the items again in the background, in a single transaction, without notifying UI.
+     * The items with the given ids come first, in that order, and the rest keep their order after them.
      *
-     * @param item     the item to remove
-     * @param position its position in the RecyclerView
+     * @param orderedIds the ids of the loaded items, in order
      */
-    public void removeItem(Item item, int position) {
+    public void rebalanceRanksInBackground(List<Integer> orderedIds) {
+        //ROOM Threads
+        scheduler.write(() -> {
+            //Background work here
+            dao.rebalanceRanks(orderedIds);
+        });
+    }
+
+    /**
+     * Remove an existing item in the database, along with its refills which are deleted by
+     * the foreign key. The list is updated by the loaded items.
+     *
+     * @param item the item to remove
+     */
+    public void removeItem(Item item) {
         //ROOM Threads
-        ExecutorService executor = Executors.newSingleThreadExecutor();
         Handler handler = new Handler(Looper.getMainLooper());
-        executor.execute(() -> {
+        scheduler.write(() -> {
             //Background work here
             dao.removeItemById(item.getId());
-            dao.removeRefillsOfItemId(item.getId());
-            handler.post(() -> {
-                //UI Thread work here
-                // Notify the adapter that an item was removed at position
-                adapter.removeItem(this, item, position);
-                updateHomeWidget();
-                updateRVPadding();
-            });
+            handler.post(this::updateHomeWidget);
         });
     }
 
@@ -373,10 +716,9 @@ public class MainActivity extends AppCompatActivity {
     /**
      * Refill item.
      *
-     * @param item     the item
-     * @param position the position
+     * @param item the item
      */
-    public void refillItem(Item item, int position) {
+    public void refillItem(Item item) {
         //get the UI elements
         g.fab.setVisibility(View.INVISIBLE);
         RefillInputBinding refillG = RefillInputBinding.inflate(getLayoutInflater());
@@ -410,27 +752,8 @@ public class MainActivity extends AppCompatActivity {
                     int refillAmount = Integer.parseInt(refillG.editRefill.getText().toString().trim());
                     Refill refill = new Refill(item.getId(), refillAmount, date[0]);
 
-                    //if there is an expiry date
-                    if (date[0] != null) {
-                        Refill itemRefill = item.getExpiringRefill();
-                        if (itemRefill == null || refill.getExpiryDate().isBefore(itemRefill.getExpiryDate())) {
-                            item.setExpiringRefill(refill);
-                        }
-                        if (itemRefill != null && itemRefill.getExpiryDate().isEqual(refill.getExpiryDate())) {
-                            //merge if it's the same date as another refill
-                            itemRefill.mergeWith(refill);
-                            updateRefillInBackground(itemRefill);
-                            adapter.notifyItemChanged(position);
-                        } else {
-                            //add the refill
-                            addRefillInBackground(refill);
-                        }
-                    } else {
-                        //add the refill
-                        addRefillInBackground(refill);
-                    }
-                    item.refillByAmount(refillAmount);
-                    updateItem(item, position);
+                    //merged with any refill of the item with the same expiry date
+                    addRefillInBackground(refill);
 
                     //set the visibility of the fab
                     g.fab.setVisibility(View.VISIBLE);
@@ -453,70 +776,42 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Add a addRefill to the database
+     * Add a addRefill to the database and refill the stock of its item. If there is another refill of
+     * this item with the same expiry date, its amount is added to that refill instead.
      *
      * @param addRefill the addRefill
      */
     private void addRefillInBackground(Refill addRefill) {
+        long today = Converters.todayEpochDay();
         //ROOM Threads
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
-            //Background work here
-
-            //If there is another refill of this item with the same expiry date, merge them together
-            //so that their amounts are added into a single refill
-            Refill refillToUpdate = null;
-            List<Refill> refillsOfSameItem = dao.getFutureRefillsOfItemId(addRefill.getItemId(),
-                    Converters.todayString());
-            for (Refill refill : refillsOfSameItem) {
-                if (refill.getExpiryDate().equals(addRefill.getExpiryDate())) {
-                    refillToUpdate = refill;
-                }
-            }
-            if (refillToUpdate != null) {
-                refillToUpdate.mergeWith(addRefill);
-                dao.update(refillToUpdate);
-            } else {
-                addRefill.setId((int) dao.insert(addRefill));
-            }
-        });
-    }
-
-    /**
-     * Update refill in background.
-     *
-     * @param updateRefill the update refill
-     */
-    private void updateRefillInBackground(Refill updateRefill) {
-        //ROOM Threads
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
+        Handler handler = new Handler(Looper.getMainLooper());
+        scheduler.write(() -> {
             //Background work here
-            dao.update(updateRefill);
+            dao.addRefill(addRefill, today);
+            handler.post(this::updateHomeWidget);
         });
     }
 
     /**
-     * Add an item to the database
+     * Add an item to the database, at the top of the list. The list is updated by the loaded items.
      *
      * @param item the item
      */
     private void addItem(Item item) {
+        //if it's color selection mode and we're focused on the wrong color, reset the color focus so it shows
+        int focusColor = adapter.getFocusColor();
+        if (focusColor != ColorItem.NO_COLOR && item.getColor() != focusColor) {
+            resetColorFocus();
+        }
+        scrollToTopOnNextItems = true;
         //ROOM Threads
-        ExecutorService executor = Executors.newSingleThreadExecutor();
         Handler handler = new Handler(Looper.getMainLooper());
-        executor.execute(() -> {
+        scheduler.write(() -> {
             //Background work here
-            long id = dao.insert(item);
+            //ranked before every item, including any that aren't loaded or are hidden by the color focus
+            long id = dao.insertFirst(item);
             item.setId((int) id);
-            handler.post(() -> {
-                //UI Thread work here
-                // Add a new item
-                adapter.addItem(this, item);
-                g.rvItems.scrollToPosition(0);
-                updateHomeWidget();
-                updateRVPadding();
-            });
+            handler.post(this::updateHomeWidget);
         });
     }
 
@@ -612,20 +907,39 @@ public class MainActivity extends AppCompatActivity {
              */
             public boolean onMove(@NonNull RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder, RecyclerView.ViewHolder target) {
                 // get the viewHolder's and target's positions in your adapter data, swap them
-                int fromPosition = viewHolder.getAdapterPosition();
-                int toPosition = target.getAdapterPosition();
-                List<Item> items = adapter.getItems();
-                if (fromPosition == toPosition) {
-                    return true;
-                } else {
-                    Item thisItem = items.get(fromPosition);
-                    items.remove(fromPosition);
-                    items.add(toPosition, thisItem);
+                Item moving = ((ItemAdapter.ViewHolder) viewHolder).item;
+                Item onto = ((ItemAdapter.ViewHolder) target).item;
+                // items can't be dropped onto placeholders for items that aren't loaded yet
+                if (moving == null || onto == null) {
+                    return false;
+                }
+                // move the item and persist its new rank
+                boolean moved = adapter.moveItem(context, moving, onto);
+                if (moved) {
+                    updateHomeWidget();
+                }
+                return moved;
+            }
+
+            @Override
+            public void onSelectedChanged(RecyclerView.ViewHolder viewHolder, int actionState) {
+                super.onSelectedChanged(viewHolder, actionState);
+                if (actionState == ItemTouchHelper.ACTION_STATE_DRAG) {
+                    dragging = true;
                 }
-                // and notify the adapter that its dataset has changed
-                adapter.notifyMoved(context, viewHolder.getAdapterPosition(), target.getAdapterPosition());
-                updateHomeWidget();
-                return true;
+            }
+
+            @Override
+            public void clearView(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder) {
+                super.clearView(recyclerView, viewHolder);
+                //the items that arrived during the drag are only set once the dropped order is committed
+                adapter.endDrag(() -> {
+                    dragging = false;
+                    if (itemsChangedWhileDragging) {
+                        itemsChangedWhileDragging = false;
+                        onItemsChanged();
+                    }
+                });
             }
 
             @Override
@@ -636,13 +950,16 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public int getMovementFlags(@NonNull RecyclerView recyclerView,
                                         @NonNull RecyclerView.ViewHolder viewHolder) {
+                if (((ItemAdapter.ViewHolder) viewHolder).item == null) {
+                    return 0;
+                }
                 return makeFlag(ItemTouchHelper.ACTION_STATE_DRAG,
                         ItemTouchHelper.DOWN | ItemTouchHelper.UP | ItemTouchHelper.START | ItemTouchHelper.END);
             }
 
             @Override
             public boolean isLongPressDragEnabled() {
-                return getEditMode() && (adapter.getFocusColor() == ColorItem.NO_COLOR);
+                return getEditMode() && (adapter.getFocusColor() == ColorItem.NO_COLOR) && isRunOutOrder() == false;
             }
 
             @Override
@@ -681,7 +998,6 @@ public class MainActivity extends AppCompatActivity {
             case RESULT_OK: {
                 if (requestCode == ADD_ITEM_REQUEST || requestCode == EDIT_ITEM_REQUEST) {
                     Item item = (Item) data.getSerializableExtra("item");
-                    int position = data.getIntExtra("position", -1);
                     if (item.getColor() != adapter.getFocusColor() && adapter.getFocusColor() != ColorItem.NO_COLOR) {
                         resetColorFocus();
                     }
@@ -693,45 +1009,31 @@ public class MainActivity extends AppCompatActivity {
                             addItem(item);
                             break;
                         case EDIT_ITEM_REQUEST:
-                            updateItem(item, position);
+                            updateItem(item, data.getIntExtra("stockChange", 0));
                             break;
                     }
                 } else if (requestCode == SETTINGS_EDIT_REQUEST) {
-                    refreshRVItems();
+                    //the thresholds may have changed, so rebind the items with the settings as they are now
+                    adapter.setSettings(SettingsSnapshot.get(this));
+                    adapter.rebindAll();
+                    if (runningOutOnly) {
+                        loadItems();
+                    }
                 }
                 break;
             }
             case RESULT_DELETE: {
                 Item item = (Item) data.getSerializableExtra("item");
-                int pos = item.getViewHolderPosition();
-                removeItem(item, pos);
+                removeItem(item);
                 break;
             }
             case RESULT_REFILL_CHANGED:
                 if (requestCode == REFILL_EDIT_REQUEST) {
                     Item item = (Item) data.getSerializableExtra("item");
-                    int pos = data.getIntExtra("position", -1);
-                    //ROOM Threads
-                    ExecutorService executor = Executors.newSingleThreadExecutor();
-                    Handler handler = new Handler(Looper.getMainLooper());
-                    executor.execute(() -> {
-                        //Background work here
-                        if (item.getId() == -1 || pos == -1) {
-                            return;
-                        }
-                        Refill expiringRefill = dao.getSoonestExpiringRefillOfItemId(item.getId(),
-                                Converters.todayString());
-                        item.setExpiringRefill(expiringRefill);
-                        adapter.setItem(item, pos);
-                        //update the item in the database
-                        dao.update(item);
-                        handler.post(() -> {
-                            //UI Thread work here
-                            // Add a new item
-                            adapter.notifyItemChanged(pos);
-                            updateHomeWidget();
-                        });
-                    });
+                    if (item.getId() != -1) {
+                        //the stock was changed in the database along with the refills, so only the widget needs updating
+                        updateHomeWidget();
+                    }
                 }
                 break;
         }
@@ -743,6 +1045,10 @@ public class MainActivity extends AppCompatActivity {
     public void onBackPressed() {
         if (adapter.getFocusColor() != ColorItem.NO_COLOR) {
             resetColorFocus();
+        } else if (runningOutOnly) {
+            runningOutOnly = false;
+            invalidateOptionsMenu();
+            reorderItems();
         } else {
             super.onBackPressed();
         }
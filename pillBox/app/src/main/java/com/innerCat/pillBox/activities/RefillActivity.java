@@ -37,7 +37,9 @@ import com.innerCat.pillBox.objects.Refill;
 import com.innerCat.pillBox.recyclerViews.RefillAdapter;
 import com.innerCat.pillBox.room.Converters;
 import com.innerCat.pillBox.room.DataDao;
+import com.innerCat.pillBox.room.DatabaseScheduler;
 import com.innerCat.pillBox.room.Database;
+import com.innerCat.pillBox.util.ColorPalette;
 import com.innerCat.pillBox.util.StringFormatter;
 
 import java.time.Instant;
@@ -46,10 +48,10 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
 
 /**
  * The type Refill activity.
@@ -74,26 +76,30 @@ public class RefillActivity extends AppCompatActivity {
      * The Dao.
      */
     DataDao dao;
+    /**
+     * The Scheduler for database work.
+     */
+    DatabaseScheduler scheduler;
     /**
      * The Adapter.
      */
     RefillAdapter adapter;
     /**
-     * The Edit mode.
+     * The colors of the theme, resolved once as the activity is recreated on a configuration change.
      */
-    boolean editMode;
+    ColorPalette palette;
     /**
-     * The Select all mode.
+     * The Edit mode.
      */
-    boolean selectAllMode = false;
+    boolean editMode;
     /**
      * The Changed.
      */
     boolean changed = false;
     /**
-     * The Delete refills.
+     * The Delete refills, by identity, as the adapter removes them.
      */
-    ArrayList<Refill> deleteRefills = new ArrayList<>();
+    Set<Refill> deleteRefills = newDeleteRefills();
 
     private MenuItem editButton = null;
 
@@ -117,34 +123,49 @@ public class RefillActivity extends AppCompatActivity {
 
         g.toolbarLayout.setTitle(name);
 
+        palette = ColorPalette.resolve(this);
+
         //empty adapter
         adapter = RefillAdapter.empty();
         g.rvRefills.setAdapter(adapter);
 
         //initialise the database
-        database = DatabaseFactory.create(this);
+        database = DatabaseFactory.getInstance(this);
         dao = database.getDao();
+        scheduler = DatabaseScheduler.getInstance();
 
 
         //ROOM Threads
-        ExecutorService executor = Executors.newSingleThreadExecutor();
         Handler handler = new Handler(Looper.getMainLooper());
-        executor.execute(() -> {
+        scheduler.read(DatabaseScheduler.Priority.UI_VISIBLE, () -> {
             //Background work here
             //NB: This is the new thread in which the database stuff happens
             //today rvItem
-            List<Refill> nonExpiringRefills = dao.getNonExpiringRefillsOfItemId(itemId);
+            //read the refills once and split them, rather than querying each group
+            long today = Converters.todayEpochDay();
+            List<Refill> nonExpiringRefills = new ArrayList<>();
+            List<Refill> futureRefills = new ArrayList<>();
+            List<Refill> expiredRefills = new ArrayList<>();
+            for (Refill refill : dao.getRefillsOfItemId(itemId)) {
+                if (refill.getExpires() == false) {
+                    nonExpiringRefills.add(refill);
+                } else if (refill.getExpiryDate() == null) {
+                    continue;
+                } else if (refill.getExpiryDate().toEpochDay() >= today) {
+                    futureRefills.add(refill);
+                } else {
+                    expiredRefills.add(refill);
+                }
+            }
             nonExpiringRefills.sort(( a, b ) -> a.getAmount() - b.getAmount());
-            List<Refill> futureRefills = dao.getFutureRefillsOfItemId(itemId, Converters.todayString());
             //soonest first
             Collections.sort(futureRefills);
-            List<Refill> expiredRefills = dao.getExpiredRefillsOfItemId(itemId, Converters.todayString());
             //least expired first
             expiredRefills.sort(reverseOrder());
 
             handler.post(() -> {
                 // Create adapter passing in the sample user data
-                adapter = new RefillAdapter(this, expiredRefills, nonExpiringRefills, futureRefills);
+                adapter = new RefillAdapter(palette, expiredRefills, nonExpiringRefills, futureRefills);
                 // Attach the adapter to the recyclerview to populate items
                 g.rvRefills.setAdapter(adapter);
                 adapter.notifyDataSetChanged();
@@ -171,7 +192,7 @@ public class RefillActivity extends AppCompatActivity {
                     g.toolbar.getMenu().getItem(0), g.toolbarLayout);
             colorAnimator.start();
 
-            deleteRefills = new ArrayList<>();
+            deleteRefills = newDeleteRefills();
             checkDelete();
             checkFAB(false);
             return true;
@@ -224,15 +245,13 @@ public class RefillActivity extends AppCompatActivity {
      */
     private void updateRefillInBackground( Refill updateRefill, int initialAmount ) {
         changed = true;
-        refillItem.decrementStockBy(initialAmount - updateRefill.getAmount());
         //ROOM Threads
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
+        scheduler.write(() -> {
             //Background work here
 
             //If there is another refill of this item with the same expiry date, merge them together
-            //so that their amounts are added into a single refill
-            dao.update(updateRefill);
+            //so that their amounts are added into a single refill. The stock changes by the difference
+            dao.editRefill(updateRefill, initialAmount);
         });
     }
 
@@ -282,7 +301,10 @@ public class RefillActivity extends AppCompatActivity {
                     refill.setExpiryDate(date[0]);
 
 //                    System.out.println("WINNOW: POS: " + position);
-                    adapter.editRefill(this, refill, position);
+                    //show it merged into any other refill with the same expiry date, as it will be saved
+                    if (adapter.mergeRefill(this, refill, position) == false) {
+                        adapter.editRefill(this, refill, position);
+                    }
 
                     updateRefillInBackground(refill, initialAmount);
 
@@ -304,7 +326,6 @@ public class RefillActivity extends AppCompatActivity {
      */
     public void onDeleteFAB( View view ) {
         if (deleteRefills.size() == 0) { //if there are no items in the deleteTasks list then the deleteFAB acts as a 'select all' button
-            selectAllMode = true;
             adapter.selectAll(this);
         } else { //otherwise, delete all the items in the deleteTasks list
             // Use the Builder class for convenient dialog construction
@@ -315,7 +336,6 @@ public class RefillActivity extends AppCompatActivity {
                     .setPositiveButton("Delete", ( DialogInterface dialog, int id ) -> {
                         changed = true;
                         editMode = false;
-                        selectAllMode = false;
 
                         int defHorizPadding = Converters.fromDpToPixels(16, getResources());
                         int defTopPadding = Converters.fromDpToPixels(10, getResources());
@@ -324,19 +344,17 @@ public class RefillActivity extends AppCompatActivity {
                         checkDelete();
 
                         //ROOM Threads
-                        ExecutorService executor = Executors.newSingleThreadExecutor();
                         Handler handler = new Handler(Looper.getMainLooper());
-                        executor.execute(() -> {
+                        List<Refill> removed = new ArrayList<>(deleteRefills);
+                        List<Integer> removedIds = new ArrayList<>(removed.size());
+                        for (Refill refill : removed) {
+                            removedIds.add(refill.getId());
+                        }
+                        scheduler.write(() -> {
                             //Background work here
-                            for (Refill refill : deleteRefills) {
-                                refillItem.decrementStockBy(refill.getAmount());
-                                dao.removeRefillById(refill.getId());
-                            }
+                            dao.removeRefillsOfItem(refillItem.getId(), removedIds);
                             handler.post(() -> {
-                                for (Refill refill : deleteRefills) {
-                                    adapter.notifyItemRemoved(adapter.getRefillListObjects().indexOf(refill));
-                                    adapter.getRefillListObjects().remove(refill);
-                                }
+                                adapter.removeRefills(removed);
                                 deleteRefills.clear();
                                 updateRVVisibility();
                             });
@@ -356,7 +374,7 @@ public class RefillActivity extends AppCompatActivity {
      * Check the status of the UI items with respect to the editMode
      */
     private void checkDelete() {
-        adapter.checkDelete(getResources(), editMode);
+        adapter.checkDelete();
         int defHorizPadding = Converters.fromDpToPixels(16, getResources());
         int defTopPadding = Converters.fromDpToPixels(10, getResources());
         if (editMode) {
@@ -368,7 +386,6 @@ public class RefillActivity extends AppCompatActivity {
         } else {
             g.rvRefills.setPadding(defHorizPadding, defTopPadding, defHorizPadding, defHorizPadding);
             g.deleteFAB.setVisibility(View.INVISIBLE);
-            selectAllMode = false;
             editButton.setIcon(R.drawable.ic_baseline_edit_24);
         }
     }
@@ -404,12 +421,13 @@ public class RefillActivity extends AppCompatActivity {
     }
 
     /**
-     * Gets select all mode.
+     * Creates an empty set of refills to delete. Refills are compared by identity, so a refill
+     * is only selected once however many times it is checked.
      *
-     * @return the select all mode
+     * @return the set
      */
-    public boolean getSelectAllMode() {
-        return selectAllMode;
+    private static Set<Refill> newDeleteRefills() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
     }
 
     /**
@@ -432,6 +450,16 @@ public class RefillActivity extends AppCompatActivity {
         checkFAB(true);
     }
 
+    /**
+     * Is delete refill boolean.
+     *
+     * @param refill the refill
+     * @return whether the refill is selected to be deleted
+     */
+    public boolean isDeleteRefill(Refill refill) {
+        return deleteRefills.contains(refill);
+    }
+
     @Override
     public void finish() {
         Intent intent = new Intent();
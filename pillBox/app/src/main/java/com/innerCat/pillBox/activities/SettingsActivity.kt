@@ -34,6 +34,7 @@ class SettingsActivity : AppCompatActivity() {
             setOnBindEditTextListener(getString(R.string.sp_warning_day_threshold))
             setOnBindEditTextListener(getString(R.string.sp_red_day_threshold))
             setOnBindEditTextListener(getString(R.string.sp_red_stock_threshold))
+            setOnBindEditTextListener(getString(R.string.sp_running_out_day_threshold))
         }
 
         private fun setOnBindEditTextListener(preference: String) {
@@ -19,19 +19,24 @@ public class ColorFactory {
     public static int getDefaultTextColor( Context context ) {
         int[] attribute = new int[]{ android.R.attr.textColor };
         TypedArray array = context.getTheme().obtainStyledAttributes(attribute);
-        return array.getColor(0, ContextCompat.getColor(context, R.color.transparent));
+        int color = array.getColor(0, ContextCompat.getColor(context, R.color.transparent));
+        array.recycle();
+        return color;
     }
 
     /**
      * Gets attr color.
      *
      * @param context the context
+     * @param colorId the attribute of the color
      * @return the attr color
      */
     public static int getAttrColor( Context context, int colorId ) {
         int[] attribute = new int[]{ colorId };
         TypedArray array = context.obtainStyledAttributes(attribute);
-        return array.getColor(0, Color.TRANSPARENT);
+        int color = array.getColor(0, Color.TRANSPARENT);
+        array.recycle();
+        return color;
     }
 }
 
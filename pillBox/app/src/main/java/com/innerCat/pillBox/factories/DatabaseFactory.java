@@ -3,20 +3,84 @@ package com.innerCat.pillBox.factories;
 import android.content.Context;
 
 import androidx.room.Room;
+import androidx.room.RoomDatabase;
 import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.room.CurrentDays;
 import com.innerCat.pillBox.room.Database;
+import com.innerCat.pillBox.room.DatabaseScheduler;
+import com.innerCat.pillBox.room.DoseSnapshots;
+import com.innerCat.pillBox.room.ItemChanges;
+import com.innerCat.pillBox.room.RefillSummaries;
+import com.innerCat.pillBox.room.RunOutDays;
+import com.innerCat.pillBox.util.Today;
 
 public class DatabaseFactory {
-    public static Database create( Context context ) {
+
+    /**
+     * The process-wide Database, shared by the activities and the widget
+     */
+    private static volatile Database instance = null;
+
+    /**
+     * Gets the process-wide Database, creating it the first time it is needed.
+     * The Database is bound to the application context and is never closed.
+     *
+     * @param context the context
+     * @return the database
+     */
+    public static Database getInstance( Context context ) {
+        if (instance == null) {
+            synchronized (DatabaseFactory.class) {
+                if (instance == null) {
+                    instance = create(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static Database create( Context context ) {
         return Room.databaseBuilder(context.getApplicationContext(),
                 Database.class, "items")
 //                .fallbackToDestructiveMigration()
-                .addMigrations(MIGRATION_3_4)
+                .addMigrations(MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8,
+                        MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12,
+                        MIGRATION_12_13, MIGRATION_13_14)
+                .addCallback(CALLBACK)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .setQueryExecutor(DatabaseScheduler.getInstance().getQueryExecutor())
+                .enableMultiInstanceInvalidation()
                 .build();
     }
 
+    /**
+     * Creates the current_day row and the refill_summary, runOutDay and dose_snapshots triggers along with
+     * a new database, and moves the day on and rolls the summaries forward to today whenever the database
+     * is opened, in case midnight passed while it was closed. The log of the changed Items is created on
+     * every open, as it only lasts as long as the connection.
+     * It must be added to every builder of the Database, including the in-memory ones used by the tests.
+     */
+    public static final RoomDatabase.Callback CALLBACK = new RoomDatabase.Callback() {
+        @Override
+        public void onCreate( SupportSQLiteDatabase database ) {
+            CurrentDays.create(database);
+            RefillSummaries.createTriggers(database);
+            RunOutDays.createTriggers(database);
+            DoseSnapshots.createTriggers(database);
+        }
+
+        @Override
+        public void onOpen( SupportSQLiteDatabase database ) {
+            long today = Today.epochDay();
+            CurrentDays.moveTo(database, today, CurrentDays.usageSinceSecond(today, Today.getClock().getZone()));
+            RefillSummaries.rollForward(database, today);
+            ItemChanges.createTriggers(database);
+        }
+    };
+
     public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
         @Override
         public void migrate(SupportSQLiteDatabase database) {
@@ -24,4 +88,216 @@ public class DatabaseFactory {
                     + " ADD COLUMN lastUsedTime VARCHAR");
         }
     };
+
+    /**
+     * Converts the TEXT dates (yyyy-MM-dd) to INTEGER epoch days and the TEXT times (ISO_LOCAL_TIME)
+     * to INTEGER seconds of the day. SQLite can't change the type of a column, so the tables are rebuilt.
+     */
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `items_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`name` TEXT, `lastUsed` INTEGER, `lastUsedTime` INTEGER, `rawStock` INTEGER NOT NULL DEFAULT 0, "
+                    + "`viewHolderPosition` INTEGER NOT NULL, `showInWidget` INTEGER NOT NULL, `color` INTEGER NOT NULL, "
+                    + "`autoDecStartDate` INTEGER, `autoDecPerDay` INTEGER NOT NULL, `autoDecNDays` INTEGER NOT NULL)");
+            database.execSQL("INSERT INTO items_new (id, name, lastUsed, lastUsedTime, rawStock, viewHolderPosition, "
+                    + "showInWidget, color, autoDecStartDate, autoDecPerDay, autoDecNDays) "
+                    + "SELECT id, name, " + toEpochDay("lastUsed") + ", " + toSecondOfDay("lastUsedTime") + ", "
+                    + "rawStock, viewHolderPosition, showInWidget, color, " + toEpochDay("autoDecStartDate") + ", "
+                    + "autoDecPerDay, autoDecNDays FROM items");
+            database.execSQL("DROP TABLE items");
+            database.execSQL("ALTER TABLE items_new RENAME TO items");
+
+            database.execSQL("CREATE TABLE IF NOT EXISTS `refills_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`itemId` INTEGER NOT NULL, `amount` INTEGER NOT NULL, `expiryDate` INTEGER, `expires` INTEGER NOT NULL)");
+            database.execSQL("INSERT INTO refills_new (id, itemId, amount, expiryDate, expires) "
+                    + "SELECT id, itemId, amount, " + toEpochDay("expiryDate") + ", expires FROM refills");
+            database.execSQL("DROP TABLE refills");
+            database.execSQL("ALTER TABLE refills_new RENAME TO refills");
+        }
+
+        /**
+         * @param column a TEXT date column (yyyy-MM-dd)
+         * @return the SQL expression for the column as an epoch day, or NULL if the column is NULL
+         */
+        private String toEpochDay(String column) {
+            // julianday('1970-01-01') is 2440587.5
+            return "CAST(julianday(" + column + ") - 2440587.5 AS INTEGER)";
+        }
+
+        /**
+         * @param column a TEXT time column (HH:mm[:ss[.nnn]])
+         * @return the SQL expression for the column as seconds of the day, or NULL if the column is NULL
+         */
+        private String toSecondOfDay(String column) {
+            return "CAST(strftime('%s', '1970-01-01 ' || " + column + ") AS INTEGER)";
+        }
+    };
+
+    /**
+     * Adds the indexes used by the DataDao queries
+     */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_items_viewHolderPosition` "
+                    + "ON `items` (`viewHolderPosition`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_items_showInWidget_viewHolderPosition` "
+                    + "ON `items` (`showInWidget`, `viewHolderPosition`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_items_color` "
+                    + "ON `items` (`color`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_refills_itemId_expires_expiryDate` "
+                    + "ON `refills` (`itemId`, `expires`, `expiryDate`)");
+        }
+    };
+
+    /**
+     * Replaces the index on color with one on (color, viewHolderPosition), so that the items
+     * of a color can be read in order straight from the index when focusing on that color.
+     */
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("DROP INDEX IF EXISTS `index_items_color`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_items_color_viewHolderPosition` "
+                    + "ON `items` (`color`, `viewHolderPosition`)");
+        }
+    };
+
+    /**
+     * Adds the refill_summary table, the triggers that keep it up to date, and the summaries
+     * of the existing refills.
+     */
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `refill_summary` (`itemId` INTEGER NOT NULL, "
+                    + "`asOfDay` INTEGER NOT NULL, `soonestRefillId` INTEGER, `soonestExpiryDate` INTEGER, "
+                    + "`soonestAmount` INTEGER NOT NULL, `futureTotal` INTEGER NOT NULL, "
+                    + "`undatedTotal` INTEGER NOT NULL, `expiredTotal` INTEGER NOT NULL, PRIMARY KEY(`itemId`))");
+            RefillSummaries.createClockTriggers(database);
+            RefillSummaries.fill(database, Today.epochDay());
+        }
+    };
+
+    /**
+     * Merges the refills of an item that expire on the same day into one, and then makes
+     * (itemId, expiryDate) unique so that new refills are merged by DataDao.upsert.
+     */
+    public static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            String sameKey = "FROM refills r WHERE r.itemId = refills.itemId AND r.expiryDate = refills.expiryDate";
+            database.execSQL("UPDATE refills SET amount = (SELECT SUM(r.amount) " + sameKey + ") "
+                    + "WHERE expiryDate IS NOT NULL AND id = (SELECT MIN(r.id) " + sameKey + ")");
+            database.execSQL("DELETE FROM refills "
+                    + "WHERE expiryDate IS NOT NULL AND id != (SELECT MIN(r.id) " + sameKey + ")");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_refills_itemId_expiryDate` "
+                    + "ON `refills` (`itemId`, `expiryDate`)");
+        }
+    };
+
+    /**
+     * Adds the foreign key from refills.itemId to items.id, so that the refills of an item are deleted
+     * with it. SQLite can't add a foreign key to a table, so refills is rebuilt, which drops its
+     * indexes and triggers, and they are created again. Refills of items that no longer exist would
+     * break the foreign key, so they are deleted first.
+     */
+    public static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("DELETE FROM refills WHERE itemId NOT IN (SELECT id FROM items)");
+            database.execSQL("DELETE FROM refill_summary WHERE itemId NOT IN (SELECT id FROM items)");
+
+            database.execSQL("CREATE TABLE IF NOT EXISTS `refills_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`itemId` INTEGER NOT NULL, `amount` INTEGER NOT NULL, `expiryDate` INTEGER, `expires` INTEGER NOT NULL, "
+                    + "FOREIGN KEY(`itemId`) REFERENCES `items`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("INSERT INTO refills_new (id, itemId, amount, expiryDate, expires) "
+                    + "SELECT id, itemId, amount, expiryDate, expires FROM refills");
+            database.execSQL("DROP TABLE refills");
+            database.execSQL("ALTER TABLE refills_new RENAME TO refills");
+
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_refills_itemId_expires_expiryDate` "
+                    + "ON `refills` (`itemId`, `expires`, `expiryDate`)");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_refills_itemId_expiryDate` "
+                    + "ON `refills` (`itemId`, `expiryDate`)");
+            RefillSummaries.createClockTriggers(database);
+        }
+    };
+
+    /**
+     * Adds the dose_events log and the dose_snapshots it is compacted into, and the index on
+     * autoDecStartDate used to log the auto decrement doses.
+     */
+    public static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `dose_events` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`itemId` INTEGER NOT NULL, `epochSecond` INTEGER NOT NULL, `delta` INTEGER NOT NULL, "
+                    + "`source` INTEGER NOT NULL, "
+                    + "FOREIGN KEY(`itemId`) REFERENCES `items`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_dose_events_itemId_epochSecond` "
+                    + "ON `dose_events` (`itemId`, `epochSecond`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_dose_events_epochSecond` "
+                    + "ON `dose_events` (`epochSecond`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `dose_snapshots` (`itemId` INTEGER NOT NULL, "
+                    + "`upToSecond` INTEGER NOT NULL, `total` INTEGER NOT NULL, `eventCount` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`itemId`), "
+                    + "FOREIGN KEY(`itemId`) REFERENCES `items`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_items_autoDecStartDate` "
+                    + "ON `items` (`autoDecStartDate`)");
+        }
+    };
+
+    /**
+     * Adds the runOutDay column, with the indexes that the home grid is sorted and filtered by,
+     * and the triggers that keep it up to date, then works it out for every item.
+     */
+    public static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE items ADD COLUMN `runOutDay` INTEGER NOT NULL DEFAULT " + Item.RUN_OUT_NEVER);
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_items_runOutDay_viewHolderPosition` "
+                    + "ON `items` (`runOutDay`, `viewHolderPosition`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_items_color_runOutDay_viewHolderPosition` "
+                    + "ON `items` (`color`, `runOutDay`, `viewHolderPosition`)");
+            long today = Today.epochDay();
+            RunOutDays.createTriggers(database);
+            RunOutDays.fill(database, today, CurrentDays.usageSinceSecond(today, Today.getClock().getZone()));
+        }
+    };
+
+    /**
+     * Adds the current_day row, that the triggers read today and the usage window from instead of the wall
+     * clock of SQLite, and replaces the triggers with ones that read it. The refill_summary triggers,
+     * which worked the whole summary of an item out again for every changed refill, are replaced by
+     * ones that only apply the change.
+     */
+    public static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `current_day` (`id` INTEGER NOT NULL, "
+                    + "`epochDay` INTEGER NOT NULL, `usageSinceSecond` INTEGER NOT NULL, PRIMARY KEY(`id`))");
+            CurrentDays.create(database);
+            RefillSummaries.dropTriggers(database);
+            RefillSummaries.createTriggers(database);
+            RunOutDays.dropTriggers(database);
+            RunOutDays.createTriggers(database);
+        }
+    };
+
+    /**
+     * Adds the last day started to current_day, so that starting the same day again only reads it,
+     * and the running total of all the events of their Item to the dose_snapshots, which a trigger
+     * keeps up to date. No day has been started yet, so the first start only logs today.
+     */
+    public static final Migration MIGRATION_13_14 = new Migration(13, 14) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE current_day ADD COLUMN `lastStartedDay` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE dose_snapshots ADD COLUMN `runningTotal` INTEGER NOT NULL DEFAULT 0");
+            DoseSnapshots.createTriggers(database);
+            DoseSnapshots.fill(database);
+        }
+    };
 }
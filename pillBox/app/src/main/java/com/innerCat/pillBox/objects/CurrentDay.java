@@ -0,0 +1,118 @@
+package com.innerCat.pillBox.objects;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * The day that the triggers work the run out days out for, as Today sees it, and the last day that
+ * was started. There is a single row, with the id ID, which is moved on at the start of each day
+ * and whenever the database is opened (see CurrentDays).
+ */
+//table name is 'current_day'
+@Entity(tableName = "current_day")
+public class CurrentDay {
+
+    /**
+     * The id of the only row
+     */
+    public static final int ID = 0;
+
+    /**
+     * The id, always ID.
+     */
+    @PrimaryKey
+    private int id;
+    /**
+     * Today, as an epoch day
+     */
+    private long epochDay;
+    /**
+     * The start of the window that the usage of an Item is estimated from, in seconds since the epoch
+     */
+    private long usageSinceSecond;
+    /**
+     * The last day that Database.startNewDay did the work of, as an epoch day, or 0 if it never has
+     */
+    @ColumnInfo(defaultValue = "0")
+    private long lastStartedDay;
+
+    /**
+     * Instantiates a new Current day.
+     */
+    public CurrentDay() {
+        this.id = ID;
+    }
+
+    /**
+     * Gets id.
+     *
+     * @return the id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Sets id.
+     *
+     * @param id the id
+     */
+    public void setId( int id ) {
+        this.id = id;
+    }
+
+    /**
+     * Gets epoch day.
+     *
+     * @return the epoch day
+     */
+    public long getEpochDay() {
+        return epochDay;
+    }
+
+    /**
+     * Sets epoch day.
+     *
+     * @param epochDay the epoch day
+     */
+    public void setEpochDay( long epochDay ) {
+        this.epochDay = epochDay;
+    }
+
+    /**
+     * Gets usage since second.
+     *
+     * @return the usage since second
+     */
+    public long getUsageSinceSecond() {
+        return usageSinceSecond;
+    }
+
+    /**
+     * Sets usage since second.
+     *
+     * @param usageSinceSecond the usage since second
+     */
+    public void setUsageSinceSecond( long usageSinceSecond ) {
+        this.usageSinceSecond = usageSinceSecond;
+    }
+
+    /**
+     * Gets last started day.
+     *
+     * @return the last started day
+     */
+    public long getLastStartedDay() {
+        return lastStartedDay;
+    }
+
+    /**
+     * Sets last started day.
+     *
+     * @param lastStartedDay the last started day
+     */
+    public void setLastStartedDay( long lastStartedDay ) {
+        this.lastStartedDay = lastStartedDay;
+    }
+}
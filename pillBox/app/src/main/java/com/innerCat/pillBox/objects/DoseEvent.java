@@ -0,0 +1,177 @@
+package com.innerCat.pillBox.objects;
+
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A change to the stock of an Item, kept as its history. Old events are folded into a
+ * DoseSnapshot of the Item by DataDao.compactDoseEvents, so the table stays small.
+ */
+//table name is 'dose_events'
+@Entity(tableName = "dose_events",
+        foreignKeys = { @ForeignKey(entity = Item.class,
+                parentColumns = "id",
+                childColumns = "itemId",
+                onDelete = ForeignKey.CASCADE) },
+        indices = { @Index(value = { "itemId", "epochSecond" }),
+                @Index(value = { "epochSecond" }) })
+public class DoseEvent {
+
+    /**
+     * Taken in the app
+     */
+    public static final int SOURCE_APP = 0;
+    /**
+     * Taken from the widget
+     */
+    public static final int SOURCE_WIDGET = 1;
+    /**
+     * Taken by the auto decrement
+     */
+    public static final int SOURCE_AUTODEC = 2;
+    /**
+     * Refilled, or a refill was edited or removed. Refill changes logged before this source existed are SOURCE_APP
+     */
+    public static final int SOURCE_REFILL = 3;
+    /**
+     * The stock was edited in the form
+     */
+    public static final int SOURCE_EDIT = 4;
+
+    /**
+     * The Id.
+     */
+    @PrimaryKey(autoGenerate = true)
+    private long id = 0;
+    /**
+     * The Item id.
+     */
+    private int itemId;
+    /**
+     * When the stock changed, in seconds since the epoch
+     */
+    private long epochSecond;
+    /**
+     * The change in stock, negative when taken and positive when refilled
+     */
+    private int delta;
+    /**
+     * Where the change came from, one of the SOURCE constants
+     */
+    private int source;
+
+    /**
+     * Instantiates a new Dose event.
+     */
+    public DoseEvent() {
+    }
+
+    /**
+     * Instantiates a new Dose event.
+     *
+     * @param itemId      the item id
+     * @param epochSecond the epoch second
+     * @param delta       the delta
+     * @param source      the source
+     */
+    @Ignore
+    public DoseEvent( int itemId, long epochSecond, int delta, int source ) {
+        this.itemId = itemId;
+        this.epochSecond = epochSecond;
+        this.delta = delta;
+        this.source = source;
+    }
+
+    /**
+     * Gets id.
+     *
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Sets id.
+     *
+     * @param id the id
+     */
+    public void setId( long id ) {
+        this.id = id;
+    }
+
+    /**
+     * Gets item id.
+     *
+     * @return the item id
+     */
+    public int getItemId() {
+        return itemId;
+    }
+
+    /**
+     * Sets item id.
+     *
+     * @param itemId the item id
+     */
+    public void setItemId( int itemId ) {
+        this.itemId = itemId;
+    }
+
+    /**
+     * Gets epoch second.
+     *
+     * @return the epoch second
+     */
+    public long getEpochSecond() {
+        return epochSecond;
+    }
+
+    /**
+     * Sets epoch second.
+     *
+     * @param epochSecond the epoch second
+     */
+    public void setEpochSecond( long epochSecond ) {
+        this.epochSecond = epochSecond;
+    }
+
+    /**
+     * Gets delta.
+     *
+     * @return the delta
+     */
+    public int getDelta() {
+        return delta;
+    }
+
+    /**
+     * Sets delta.
+     *
+     * @param delta the delta
+     */
+    public void setDelta( int delta ) {
+        this.delta = delta;
+    }
+
+    /**
+     * Gets source.
+     *
+     * @return the source
+     */
+    public int getSource() {
+        return source;
+    }
+
+    /**
+     * Sets source.
+     *
+     * @param source the source
+     */
+    public void setSource( int source ) {
+        this.source = source;
+    }
+}
@@ -0,0 +1,142 @@
+package com.innerCat.pillBox.objects;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.PrimaryKey;
+
+/**
+ * The DoseEvents of an Item before upToSecond, folded into a single row, with the running total
+ * of all its events, which a trigger adds every new event to (see DoseSnapshots).
+ * The history of an Item is its snapshot plus the events that have happened since.
+ */
+//table name is 'dose_snapshots'
+@Entity(tableName = "dose_snapshots",
+        foreignKeys = { @ForeignKey(entity = Item.class,
+                parentColumns = "id",
+                childColumns = "itemId",
+                onDelete = ForeignKey.CASCADE) })
+public class DoseSnapshot {
+
+    /**
+     * The Item id.
+     */
+    @PrimaryKey
+    private int itemId;
+    /**
+     * The events before this epoch second are folded into the snapshot
+     */
+    private long upToSecond;
+    /**
+     * The total of the folded deltas
+     */
+    private int total;
+    /**
+     * The number of folded events
+     */
+    private int eventCount;
+    /**
+     * The total of the deltas of all the events, folded or not
+     */
+    @ColumnInfo(defaultValue = "0")
+    private int runningTotal;
+
+    /**
+     * Instantiates a new Dose snapshot.
+     *
+     * @param itemId the item id
+     */
+    public DoseSnapshot( int itemId ) {
+        this.itemId = itemId;
+    }
+
+    /**
+     * Gets item id.
+     *
+     * @return the item id
+     */
+    public int getItemId() {
+        return itemId;
+    }
+
+    /**
+     * Sets item id.
+     *
+     * @param itemId the item id
+     */
+    public void setItemId( int itemId ) {
+        this.itemId = itemId;
+    }
+
+    /**
+     * Gets up to second.
+     *
+     * @return the up to second
+     */
+    public long getUpToSecond() {
+        return upToSecond;
+    }
+
+    /**
+     * Sets up to second.
+     *
+     * @param upToSecond the up to second
+     */
+    public void setUpToSecond( long upToSecond ) {
+        this.upToSecond = upToSecond;
+    }
+
+    /**
+     * Gets total.
+     *
+     * @return the total
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Sets total.
+     *
+     * @param total the total
+     */
+    public void setTotal( int total ) {
+        this.total = total;
+    }
+
+    /**
+     * Gets event count.
+     *
+     * @return the event count
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Sets event count.
+     *
+     * @param eventCount the event count
+     */
+    public void setEventCount( int eventCount ) {
+        this.eventCount = eventCount;
+    }
+
+    /**
+     * Gets running total.
+     *
+     * @return the running total
+     */
+    public int getRunningTotal() {
+        return runningTotal;
+    }
+
+    /**
+     * Sets running total.
+     *
+     * @param runningTotal the running total
+     */
+    public void setRunningTotal( int runningTotal ) {
+        this.runningTotal = runningTotal;
+    }
+}
@@ -1,13 +1,13 @@
 package com.innerCat.pillBox.objects;
 
-import static java.time.temporal.ChronoUnit.DAYS;
-
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import com.innerCat.pillBox.util.Assertions;
+import com.innerCat.pillBox.util.Today;
 
 import java.io.Serializable;
 import java.time.LocalDate;
@@ -18,9 +18,27 @@ import java.util.Objects;
  * The type Item.
  */
 //table name is 'items'
-@Entity(tableName = "items")
+@Entity(tableName = "items",
+        indices = { @Index(value = { "viewHolderPosition" }),
+                    @Index(value = { "showInWidget", "viewHolderPosition" }),
+                    @Index(value = { "color", "viewHolderPosition" }),
+                    @Index(value = { "autoDecStartDate" }),
+                    @Index(value = { "runOutDay", "viewHolderPosition" }),
+                    @Index(value = { "color", "runOutDay", "viewHolderPosition" }) })
 public class Item implements Serializable {
 
+    /**
+     * The calculated stock of an item in SQL, for the epoch day bound to :today.
+     * It is the same formula as getCalculatedStock, so lists can be filtered and sorted by it in SQLite.
+     */
+    public static final String CALCULATED_STOCK_SQL = "(CASE WHEN autoDecStartDate IS NULL THEN rawStock "
+            + "ELSE rawStock - autoDecPerDay * ((:today - autoDecStartDate) / autoDecNDays) END)";
+
+    /**
+     * The run out day of an item that isn't projected to run out, so that it sorts after every other item
+     */
+    public static final long RUN_OUT_NEVER = Long.MAX_VALUE;
+
     /**
      * The Id.
      */
@@ -70,6 +88,11 @@ public class Item implements Serializable {
      * Decremented every n days
      */
     private int autoDecNDays = 0;
+    /**
+     * The epoch day the stock is projected to run out, worked out by SQLite (see RunOutDays)
+     */
+    @ColumnInfo(defaultValue = "" + RUN_OUT_NEVER)
+    private long runOutDay = RUN_OUT_NEVER;
     /**
      * The Expiring refill.
      */
@@ -130,6 +153,31 @@ public class Item implements Serializable {
         this.color = color;
     }
 
+    /**
+     * Instantiates a copy of an Item, including a copy of its expiring refill.
+     * Items that are being shown are never changed in place, so changes are made to a copy.
+     *
+     * @param other the item to copy
+     */
+    @Ignore
+    public Item( Item other ) {
+        this.id = other.id;
+        this.name = other.name;
+        this.lastUsed = other.lastUsed;
+        this.lastUsedTime = other.lastUsedTime;
+        this.rawStock = other.rawStock;
+        this.viewHolderPosition = other.viewHolderPosition;
+        this.showInWidget = other.showInWidget;
+        this.color = other.color;
+        this.autoDecStartDate = other.autoDecStartDate;
+        this.autoDecPerDay = other.autoDecPerDay;
+        this.autoDecNDays = other.autoDecNDays;
+        this.runOutDay = other.runOutDay;
+        if (other.expiringRefill != null) {
+            this.expiringRefill = new Refill(other.expiringRefill);
+        }
+    }
+
     /**
      * Gets id.
      *
@@ -227,7 +275,7 @@ public class Item implements Serializable {
         if (diffAutoDec || diffPerDay || diffNDays) {
             this.rawStock = getCalculatedStock();
             if (newAutoDec) {
-                this.autoDecStartDate = LocalDate.now();
+                this.autoDecStartDate = Today.date();
                 Assertions.assertTrue(perDay > 0);
                 Assertions.assertTrue(nDays > 0);
                 this.autoDecPerDay = perDay;
@@ -246,10 +294,21 @@ public class Item implements Serializable {
      * @return the calculated stock
      */
     public int getCalculatedStock() {
+        return getCalculatedStock(Today.epochDay());
+    }
+
+    /**
+     * Gets calculated stock on a day, with integer arithmetic only.
+     * CALCULATED_STOCK_SQL is the same formula in SQL.
+     *
+     * @param today the epoch day to calculate the stock on
+     * @return the calculated stock
+     */
+    public int getCalculatedStock( long today ) {
         if (autoDecStartDate == null) {
             return rawStock;
         } else {
-            long diff = DAYS.between(autoDecStartDate, LocalDate.now());
+            long diff = today - autoDecStartDate.toEpochDay();
             long daysTaken = diff / autoDecNDays;
             long times = (autoDecPerDay * daysTaken);
             return (int) (rawStock - times);
@@ -266,18 +325,20 @@ public class Item implements Serializable {
     }
 
     /**
-     * Decrements the stock and sets the last used to now
+     * Decrements the stock and sets the last used to now.
+     * Only changes this copy, the database is changed with DataDao.takeStock
      */
     public void decrementStock() {
         if (this.rawStock > 0) {
-            setLastUsed(LocalDate.now());
-            setLastUsedTime(LocalTime.now());
+            setLastUsed(Today.date());
+            setLastUsedTime(Today.time());
             this.rawStock = this.rawStock - 1;
         }
     }
 
     /**
-     * Decrement stock by an amount
+     * Decrement stock by an amount.
+     * Only changes this copy, the database is changed with DataDao.decrementStockBy
      *
      * @param num the num
      */
@@ -326,13 +387,15 @@ public class Item implements Serializable {
 
     /**
      * Refill.
+     * Only changes this copy, the database is changed with DataDao.refillStockBy
      *
      * @param refillAmount the refill amount
      */
     public void refillByAmount( int refillAmount ) {
         //reset stock to 0 first by incrementing rawStock by the calculatedStock amount
-        if (getCalculatedStock() < 0) {
-            this.rawStock -= getCalculatedStock();
+        int calculatedStock = getCalculatedStock();
+        if (calculatedStock < 0) {
+            this.rawStock -= calculatedStock;
         }
         this.rawStock = this.rawStock + refillAmount;
     }
@@ -418,6 +481,38 @@ public class Item implements Serializable {
         this.autoDecStartDate = autoDecStartDate;
     }
 
+    /**
+     * Gets run out day.
+     *
+     * @return the epoch day the stock is projected to run out, or RUN_OUT_NEVER
+     */
+    public long getRunOutDay() {
+        return runOutDay;
+    }
+
+    /**
+     * Sets run out day.
+     *
+     * @param runOutDay the run out day
+     */
+    public void setRunOutDay( long runOutDay ) {
+        this.runOutDay = runOutDay;
+    }
+
+    /**
+     * Gets the day the auto decrement runs the stock out, in closed form: the first day
+     * that getCalculatedStock is zero or less. RunOutDays has the same formula in SQL.
+     *
+     * @return the epoch day the stock runs out, or RUN_OUT_NEVER if it isn't auto decremented
+     */
+    public long getAutoDecRunOutDay() {
+        if (autoDecStartDate == null || autoDecPerDay <= 0 || autoDecNDays <= 0) {
+            return RUN_OUT_NEVER;
+        }
+        long periods = (Math.max(rawStock, 0) + autoDecPerDay - 1) / autoDecPerDay;
+        return autoDecStartDate.toEpochDay() + periods * autoDecNDays;
+    }
+
     /**
      * Gets expiring refill.
      *
@@ -0,0 +1,84 @@
+package com.innerCat.pillBox.objects;
+
+import androidx.room.Embedded;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An Item joined with its soonest expiring Refill, loaded in a single query.
+ */
+public class ItemWithExpiringRefill {
+
+    /**
+     * The Item.
+     */
+    @Embedded
+    private Item item;
+
+    /**
+     * The soonest expiring Refill of the Item, or null if there is none.
+     */
+    @Embedded(prefix = "refill_")
+    private Refill expiringRefill;
+
+    /**
+     * Gets item.
+     *
+     * @return the item
+     */
+    public Item getItem() {
+        return item;
+    }
+
+    /**
+     * Sets item.
+     *
+     * @param item the item
+     */
+    public void setItem( Item item ) {
+        this.item = item;
+    }
+
+    /**
+     * Gets expiring refill.
+     *
+     * @return the expiring refill
+     */
+    public Refill getExpiringRefill() {
+        return expiringRefill;
+    }
+
+    /**
+     * Sets expiring refill.
+     *
+     * @param expiringRefill the expiring refill
+     */
+    public void setExpiringRefill( Refill expiringRefill ) {
+        this.expiringRefill = expiringRefill;
+    }
+
+    /**
+     * Gets the Item with its expiring refill set.
+     *
+     * @return the item
+     */
+    public Item toItem() {
+        item.setExpiringRefill(expiringRefill);
+        return item;
+    }
+
+    /**
+     * Gets the Items with their expiring refills set, keeping the order of the rows.
+     *
+     * @param rows the rows
+     * @return the items
+     */
+    public static List<Item> toItems( List<ItemWithExpiringRefill> rows ) {
+        List<Item> items = new ArrayList<>(rows.size());
+        for (ItemWithExpiringRefill row : rows) {
+            items.add(row.toItem());
+        }
+        return items;
+    }
+}
@@ -1,6 +1,9 @@
 package com.innerCat.pillBox.objects;
 
 import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import com.innerCat.pillBox.util.Assertions;
@@ -14,7 +17,14 @@ import static java.time.temporal.ChronoUnit.DAYS;
  * The type Box.
  */
 //table name is 'refills'
-@Entity(tableName = "refills")
+//both indices start with itemId, so either one serves the foreign key
+@Entity(tableName = "refills",
+        foreignKeys = { @ForeignKey(entity = Item.class,
+                parentColumns = "id",
+                childColumns = "itemId",
+                onDelete = ForeignKey.CASCADE) },
+        indices = { @Index(value = { "itemId", "expires", "expiryDate" }),
+                @Index(value = { "itemId", "expiryDate" }, unique = true) })
 public class Refill extends RefillListObject implements Comparable<Refill>, Serializable {
     /**
      * The Id.
@@ -55,6 +65,20 @@ public class Refill extends RefillListObject implements Comparable<Refill>, Seri
         setExpiryDate(expiryDate);
     }
 
+    /**
+     * Instantiates a copy of a Refill.
+     *
+     * @param other the refill to copy
+     */
+    @Ignore
+    public Refill( Refill other ) {
+        this.id = other.id;
+        this.itemId = other.itemId;
+        this.amount = other.amount;
+        this.expiryDate = other.expiryDate;
+        this.expires = other.expires;
+    }
+
     /**
      * Gets id.
      *
@@ -0,0 +1,202 @@
+package com.innerCat.pillBox.objects;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+import java.time.LocalDate;
+
+/**
+ * The refills of an Item, added up. The rows are kept up to date by triggers on the refills
+ * table (see RefillSummaries), and are rolled forward to the new day at midnight.
+ */
+//table name is 'refill_summary'
+@Entity(tableName = "refill_summary")
+public class RefillSummary {
+
+    /**
+     * The Item id.
+     */
+    @PrimaryKey
+    private int itemId;
+    /**
+     * The day (epoch day) that the future and expired totals were worked out for
+     */
+    private long asOfDay;
+    /**
+     * The id of the refill that expires soonest, on or after asOfDay
+     */
+    private Integer soonestRefillId;
+    /**
+     * The expiry date of the refill that expires soonest
+     */
+    private LocalDate soonestExpiryDate;
+    /**
+     * The amount of the refill that expires soonest
+     */
+    private int soonestAmount;
+    /**
+     * The total amount of the refills that expire on or after asOfDay
+     */
+    private int futureTotal;
+    /**
+     * The total amount of the refills that don't expire
+     */
+    private int undatedTotal;
+    /**
+     * The total amount of the refills that expired before asOfDay
+     */
+    private int expiredTotal;
+
+    /**
+     * Instantiates a new Refill summary.
+     *
+     * @param itemId the item id
+     */
+    public RefillSummary( int itemId ) {
+        this.itemId = itemId;
+    }
+
+    /**
+     * Gets item id.
+     *
+     * @return the item id
+     */
+    public int getItemId() {
+        return itemId;
+    }
+
+    /**
+     * Sets item id.
+     *
+     * @param itemId the item id
+     */
+    public void setItemId( int itemId ) {
+        this.itemId = itemId;
+    }
+
+    /**
+     * Gets as of day.
+     *
+     * @return the as of day
+     */
+    public long getAsOfDay() {
+        return asOfDay;
+    }
+
+    /**
+     * Sets as of day.
+     *
+     * @param asOfDay the as of day
+     */
+    public void setAsOfDay( long asOfDay ) {
+        this.asOfDay = asOfDay;
+    }
+
+    /**
+     * Gets soonest refill id.
+     *
+     * @return the soonest refill id
+     */
+    public Integer getSoonestRefillId() {
+        return soonestRefillId;
+    }
+
+    /**
+     * Sets soonest refill id.
+     *
+     * @param soonestRefillId the soonest refill id
+     */
+    public void setSoonestRefillId( Integer soonestRefillId ) {
+        this.soonestRefillId = soonestRefillId;
+    }
+
+    /**
+     * Gets soonest expiry date.
+     *
+     * @return the soonest expiry date
+     */
+    public LocalDate getSoonestExpiryDate() {
+        return soonestExpiryDate;
+    }
+
+    /**
+     * Sets soonest expiry date.
+     *
+     * @param soonestExpiryDate the soonest expiry date
+     */
+    public void setSoonestExpiryDate( LocalDate soonestExpiryDate ) {
+        this.soonestExpiryDate = soonestExpiryDate;
+    }
+
+    /**
+     * Gets soonest amount.
+     *
+     * @return the soonest amount
+     */
+    public int getSoonestAmount() {
+        return soonestAmount;
+    }
+
+    /**
+     * Sets soonest amount.
+     *
+     * @param soonestAmount the soonest amount
+     */
+    public void setSoonestAmount( int soonestAmount ) {
+        this.soonestAmount = soonestAmount;
+    }
+
+    /**
+     * Gets future total.
+     *
+     * @return the future total
+     */
+    public int getFutureTotal() {
+        return futureTotal;
+    }
+
+    /**
+     * Sets future total.
+     *
+     * @param futureTotal the future total
+     */
+    public void setFutureTotal( int futureTotal ) {
+        this.futureTotal = futureTotal;
+    }
+
+    /**
+     * Gets undated total.
+     *
+     * @return the undated total
+     */
+    public int getUndatedTotal() {
+        return undatedTotal;
+    }
+
+    /**
+     * Sets undated total.
+     *
+     * @param undatedTotal the undated total
+     */
+    public void setUndatedTotal( int undatedTotal ) {
+        this.undatedTotal = undatedTotal;
+    }
+
+    /**
+     * Gets expired total.
+     *
+     * @return the expired total
+     */
+    public int getExpiredTotal() {
+        return expiredTotal;
+    }
+
+    /**
+     * Sets expired total.
+     *
+     * @param expiredTotal the expired total
+     */
+    public void setExpiredTotal( int expiredTotal ) {
+        this.expiredTotal = expiredTotal;
+    }
+}
@@ -0,0 +1,144 @@
+package com.innerCat.pillBox.objects;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * The columns of an Item that the widget shows, with its stock already calculated for today,
+ * loaded in a single query so the widget never loads whole Item rows.
+ */
+public class WidgetItem {
+
+    /**
+     * The Item id.
+     */
+    private int id;
+    /**
+     * The Name.
+     */
+    private String name;
+    /**
+     * The calculated stock, as of the day the query was run for
+     */
+    private int stock;
+    /**
+     * The Last used.
+     */
+    private LocalDate lastUsed;
+    /**
+     * The Last used time.
+     */
+    private LocalTime lastUsedTime;
+    /**
+     * Whether the Item is auto decremented
+     */
+    private boolean autoDec;
+
+    /**
+     * Gets id.
+     *
+     * @return the id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Sets id.
+     *
+     * @param id the id
+     */
+    public void setId( int id ) {
+        this.id = id;
+    }
+
+    /**
+     * Gets name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets name.
+     *
+     * @param name the name
+     */
+    public void setName( String name ) {
+        this.name = name;
+    }
+
+    /**
+     * Gets stock.
+     *
+     * @return the calculated stock
+     */
+    public int getStock() {
+        return stock;
+    }
+
+    /**
+     * Sets stock.
+     *
+     * @param stock the calculated stock
+     */
+    public void setStock( int stock ) {
+        this.stock = stock;
+    }
+
+    /**
+     * Gets last used.
+     *
+     * @return the last used
+     */
+    public LocalDate getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Sets last used.
+     *
+     * @param lastUsed the last used
+     */
+    public void setLastUsed( LocalDate lastUsed ) {
+        this.lastUsed = lastUsed;
+    }
+
+    /**
+     * Gets last used time.
+     *
+     * @return the last used time
+     */
+    public LocalTime getLastUsedTime() {
+        return lastUsedTime;
+    }
+
+    /**
+     * Sets last used time.
+     *
+     * @param lastUsedTime the last used time
+     */
+    public void setLastUsedTime( LocalTime lastUsedTime ) {
+        this.lastUsedTime = lastUsedTime;
+    }
+
+    /**
+     * Is auto dec boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isAutoDec() {
+        return autoDec;
+    }
+
+    /**
+     * Sets auto dec.
+     *
+     * @param autoDec the auto dec
+     */
+    public void setAutoDec( boolean autoDec ) {
+        this.autoDec = autoDec;
+    }
+}
@@ -31,7 +31,8 @@ public class ColorAdapter extends
     private final int ANIMATION_LENGTH = 150;
 
     private final List<ColorItem> colors;
-    private final Set<ViewHolder> mBoundViewHolders = new HashSet<>();
+    //the holders from when they are attached until they are recycled, so it never holds more than the shown and cached ones
+    private final Set<ViewHolder> mAttachedViewHolders = new HashSet<>();
     private int selectedColor = ColorItem.NO_COLOR;
 
     // Provide a direct reference to each of the views within a data item
@@ -100,7 +101,7 @@ public class ColorAdapter extends
      * Deselect all except.
      */
     public void deselectAllExcept(ColorItem exceptColorItem) {
-        for (ViewHolder viewHolder : mBoundViewHolders) {
+        for (ViewHolder viewHolder : mAttachedViewHolders) {
             if (viewHolder.colorItem.equals(exceptColorItem) == false) {
                 deselectViewHolder(viewHolder, UNSELECTED_ALPHA);
             }
@@ -111,7 +112,7 @@ public class ColorAdapter extends
      * Deselect all.
      */
     public void deselectAll() {
-        for (ViewHolder viewHolder : mBoundViewHolders) {
+        for (ViewHolder viewHolder : mAttachedViewHolders) {
             deselectViewHolder(viewHolder, SELECTED_ALPHA);
         }
     }
@@ -183,8 +184,18 @@ public class ColorAdapter extends
         } else if (selectedColor != ColorItem.NO_COLOR) {
             holder.colorButton.setAlpha(UNSELECTED_ALPHA);
         }
+    }
 
-        mBoundViewHolders.add(holder);
+    @Override
+    public void onViewAttachedToWindow( @NonNull ColorAdapter.ViewHolder holder ) {
+        super.onViewAttachedToWindow(holder);
+        mAttachedViewHolders.add(holder);
+    }
+
+    @Override
+    public void onViewRecycled( @NonNull ColorAdapter.ViewHolder holder ) {
+        super.onViewRecycled(holder);
+        mAttachedViewHolders.remove(holder);
     }
 
 
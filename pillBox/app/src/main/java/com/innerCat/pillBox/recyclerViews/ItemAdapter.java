@@ -2,44 +2,171 @@ package com.innerCat.pillBox.recyclerViews;
 
 import static android.view.View.GONE;
 import static android.view.View.VISIBLE;
-import static java.time.temporal.ChronoUnit.DAYS;
 
 import android.content.Context;
 import android.graphics.Typeface;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.constraintlayout.widget.ConstraintLayout;
-import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.innerCat.pillBox.R;
 import com.innerCat.pillBox.activities.MainActivity;
 import com.innerCat.pillBox.databinding.MainRvItemBinding;
-import com.innerCat.pillBox.factories.ColorFactory;
 import com.innerCat.pillBox.objects.ColorItem;
 import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.objects.Refill;
 import com.innerCat.pillBox.room.Converters;
+import com.innerCat.pillBox.util.ColorPalette;
+import com.innerCat.pillBox.util.Ranks;
+import com.innerCat.pillBox.util.SettingsSnapshot;
 import com.innerCat.pillBox.util.StringFormatter;
-import com.innerCat.pillBox.util.Thresholds;
+import com.innerCat.pillBox.util.Today;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.Objects;
 
-// Create the basic adapter extending from RecyclerView.Adapter
+// Create the basic adapter with an AsyncListDiffer, which diffs each new list off the main thread
 // Note that we specify the custom ViewHolder which gives us access to our views
 public class ItemAdapter extends
         RecyclerView.Adapter<ItemAdapter.ViewHolder> {
 
-    private List<Item> visibleItems;
+    /**
+     * The payload of a rebind that only updates the last taken text, e.g. as the time passes.
+     */
+    public static final ItemChange PAYLOAD_LAST_TAKEN = new ItemChange(ItemChange.LAST_TAKEN);
+
+    //the view types of the loaded items and of the placeholders for the items that aren't loaded yet
+    private static final int VIEW_TYPE_ITEM = 0;
+    private static final int VIEW_TYPE_PLACEHOLDER = 1;
+
+    /**
+     * Items are the same if they have the same id, and have the same contents if
+     * everything that onBindViewHolder renders is the same.
+     * This relies on Items that are being shown never being changed in place.
+     */
+    public static final DiffUtil.ItemCallback<Item> DIFF_CALLBACK = new DiffUtil.ItemCallback<Item>() {
+        @Override
+        public boolean areItemsTheSame( @NonNull Item oldItem, @NonNull Item newItem ) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame( @NonNull Item oldItem, @NonNull Item newItem ) {
+            return Objects.equals(oldItem.getName(), newItem.getName())
+                    && oldItem.getColor() == newItem.getColor()
+                    && oldItem.getRawStock() == newItem.getRawStock()
+                    && oldItem.getAutoDecPerDay() == newItem.getAutoDecPerDay()
+                    && oldItem.getAutoDecNDays() == newItem.getAutoDecNDays()
+                    && Objects.equals(oldItem.getAutoDecStartDate(), newItem.getAutoDecStartDate())
+                    && Objects.equals(oldItem.getLastUsed(), newItem.getLastUsed())
+                    && Objects.equals(oldItem.getLastUsedTime(), newItem.getLastUsedTime())
+                    && isSameRefill(oldItem.getExpiringRefill(), newItem.getExpiringRefill());
+        }
+
+        /**
+         * Gets the views of a card that changed, so that a tap or a refill only rebinds its stock.
+         * A changed name rebinds the whole card.
+         */
+        @Override
+        public Object getChangePayload( @NonNull Item oldItem, @NonNull Item newItem ) {
+            if (Objects.equals(oldItem.getName(), newItem.getName()) == false) {
+                return null;
+            }
+            int flags = 0;
+            if (oldItem.getColor() != newItem.getColor()) {
+                flags |= ItemChange.COLOR;
+            }
+            if (oldItem.isAutoDec() != newItem.isAutoDec()) {
+                //the last taken text says whether it was taken manually
+                flags |= ItemChange.AUTODEC | ItemChange.LAST_TAKEN;
+            }
+            if (oldItem.getRawStock() != newItem.getRawStock()
+                    || oldItem.getAutoDecPerDay() != newItem.getAutoDecPerDay()
+                    || oldItem.getAutoDecNDays() != newItem.getAutoDecNDays()
+                    || Objects.equals(oldItem.getAutoDecStartDate(), newItem.getAutoDecStartDate()) == false) {
+                flags |= ItemChange.STOCK;
+            }
+            if (isSameRefill(oldItem.getExpiringRefill(), newItem.getExpiringRefill()) == false) {
+                flags |= ItemChange.EXPIRY;
+            }
+            if (Objects.equals(oldItem.getLastUsed(), newItem.getLastUsed()) == false
+                    || Objects.equals(oldItem.getLastUsedTime(), newItem.getLastUsedTime()) == false) {
+                flags |= ItemChange.LAST_TAKEN;
+            }
+            return new ItemChange(flags);
+        }
+
+        private boolean isSameRefill( Refill oldRefill, Refill newRefill ) {
+            if (oldRefill == null || newRefill == null) {
+                return oldRefill == newRefill;
+            }
+            return oldRefill.getAmount() == newRefill.getAmount()
+                    && Objects.equals(oldRefill.getExpiryDate(), newRefill.getExpiryDate());
+        }
+    };
+
+    //the loaded items, of the focus color if there is one, followed by null placeholders for the items that aren't loaded yet
     private List<Item> allItems;
-    private Set<ViewHolder> mBoundViewHolders = new HashSet<>();
+    private int loadedCount;
+    //the index in allItems of each loaded item, by id
+    private Map<Integer, Integer> indexById = new HashMap<>();
     private int focusColor = ColorItem.NO_COLOR;
+    //the thresholds and display settings, handed in so that binding never reads the shared preferences
+    private SettingsSnapshot settings;
+    private ColorPalette palette;
+    //while an item is dragged, and until its drop is committed, the items are moved in allItems and shown from it
+    private boolean movingInPlace = false;
+    //whether the order of the last drag is being submitted, until then nothing can be moved
+    private boolean dropping = false;
+
+    //applies the differences between lists to the shown items, except those of a drop, which were applied as the item moved
+    private final ListUpdateCallback updateCallback = new ListUpdateCallback() {
+        private final AdapterListUpdateCallback adapterCallback = new AdapterListUpdateCallback(ItemAdapter.this);
+
+        @Override
+        public void onInserted( int position, int count ) {
+            if (movingInPlace == false) {
+                adapterCallback.onInserted(position, count);
+            }
+        }
+
+        @Override
+        public void onRemoved( int position, int count ) {
+            if (movingInPlace == false) {
+                adapterCallback.onRemoved(position, count);
+            }
+        }
+
+        @Override
+        public void onMoved( int fromPosition, int toPosition ) {
+            if (movingInPlace == false) {
+                adapterCallback.onMoved(fromPosition, toPosition);
+            }
+        }
+
+        @Override
+        public void onChanged( int position, int count, Object payload ) {
+            if (movingInPlace == false) {
+                adapterCallback.onChanged(position, count, payload);
+            }
+        }
+    };
+    private final AsyncListDiffer<Item> differ = new AsyncListDiffer<>(updateCallback,
+            new AsyncDifferConfig.Builder<>(DIFF_CALLBACK).build());
 
     // Provide a direct reference to each of the views within a data item
     // Used to cache the views within the item layout for fast access
@@ -57,10 +184,15 @@ public class ItemAdapter extends
             this.context = context;
 
             g.refillButton.setOnClickListener(v -> {
-                ((MainActivity) context).refillItem(item, getAdapterPosition());
+                if (item != null) {
+                    ((MainActivity) context).refillItem(new Item(item));
+                }
             });
 
             g.colorDot.setOnClickListener(v -> {
+                if (item == null) {
+                    return;
+                }
                 if (focusColor != item.getColor()) {
                     ((MainActivity) context).focusOnColor(item.getColor());
                 } else {
@@ -80,16 +212,15 @@ public class ItemAdapter extends
          */
         @Override
         public void onClick( View view ) {
+            int position = getAdapterPosition(); // gets item position
+            if (position == RecyclerView.NO_POSITION || getItem(position) == null) { // Check if an item was deleted, but the user clicked it before the UI removed it, or it isn't loaded yet
+                return;
+            }
             if (((MainActivity) context).getEditMode() == false) {
-                int position = getAdapterPosition(); // gets item position
-                if (position != RecyclerView.NO_POSITION) { // Check if an item was deleted, but the user clicked it before the UI removed it
-                    Item item = visibleItems.get(position);
-                    item.decrementStock();
-                    ((MainActivity) context).updateItem(item, position);
-                }
+                //the shown item is replaced when the database changes
+                ((MainActivity) context).takeOne(getItem(position));
             } else {
-                int position = getAdapterPosition(); // gets item position
-                Item item = visibleItems.get(position);
+                Item item = getItem(position);
                 ((MainActivity) context).toFormUpdate(item, position);
             }
         }
@@ -103,8 +234,9 @@ public class ItemAdapter extends
         @Override
         public boolean onLongClick( View view ) {
             int position = getAdapterPosition(); // gets item position
-            if (((MainActivity) context).getEditMode() == false) {
-                Item item = visibleItems.get(position);
+            if (position != RecyclerView.NO_POSITION && getItem(position) != null
+                    && ((MainActivity) context).getEditMode() == false) {
+                Item item = getItem(position);
                 ((MainActivity) context).toRefill(item, position);
             }
             return true;
@@ -118,9 +250,11 @@ public class ItemAdapter extends
      * @param items the items
      */
     public ItemAdapter( List<Item> items ) {
+        setHasStableIds(true);
         this.allItems = new ArrayList<>(items);
-        //weak link because no color focus
-        this.visibleItems = allItems;
+        this.loadedCount = items.size();
+        indexFrom(0, loadedCount);
+        differ.submitList(allItems);
     }
 
     /**
@@ -132,83 +266,38 @@ public class ItemAdapter extends
         return new ItemAdapter(new ArrayList<>());
     }
 
-
     /**
-     * Focus on color.
-     */
-    public void focusOnColor() {
-        if (focusColor == ColorItem.NO_COLOR) {
-            visibleItems = allItems;
-            return;
-        }
-        //clearing
-        for (int i = 0; i < visibleItems.size(); i++) {
-            notifyItemRemoved(0);
-        }
-
-        visibleItems = new ArrayList<>();
-        for (Item item : allItems) {
-            if (item.getColor() == focusColor) {
-                visibleItems.add(0, item);
-                notifyItemInserted(0);
-            }
-        }
-    }
-
-    /**
-     * Sets focus color.
+     * Sets focus color. The items of the color are loaded from the database and given to setItems.
      *
      * @param color the color
      */
     public void setFocusColor( int color ) {
         this.focusColor = color;
-        focusOnColor();
     }
 
     /**
-     * Reset.
+     * Sets the settings that the items are shown with. Call rebindAll after changing them.
+     *
+     * @param settings the settings
      */
-    public void reset() {
-        focusColor = ColorItem.NO_COLOR;
-        visibleItems.forEach(x -> notifyItemRemoved(0));
-        visibleItems = allItems;
-        allItems.forEach(x -> notifyItemInserted(0));
+    public void setSettings( SettingsSnapshot settings ) {
+        this.settings = settings;
     }
 
     /**
-     * Sets item.
+     * Sets the colors that the items are shown with, resolved from the theme of the activity.
      *
-     * @param item     the item
-     * @param position the position
+     * @param palette the palette
      */
-    public void setItem( Item item, int position ) {
-        int visibleItemsPosition = visibleItems.indexOf(allItems.get(position));
-        visibleItems.set(visibleItemsPosition, item);
-        allItems.set(position, item);
-        focusOnColor();
+    public void setPalette( ColorPalette palette ) {
+        this.palette = palette;
     }
 
     /**
-     * Add a item
-     *
-     * @param context  the context
-     * @param item     the Item to add
+     * Reset.
      */
-    public void addItem( Context context, Item item ) {
-        allItems.add(0, item);
-        //if it's color selection mode and we're focused on the wrong color
-        if (focusColor != ColorItem.NO_COLOR && item.getColor() != focusColor) {
-            //reset the color focus
-            ((MainActivity) context).resetColorFocus();
-            notifyInserted(context, 0);
-        } else { //otherwise just add as normal
-            //if allItems isn't the same as visibleItems (because in focus color)
-            if (allItems != visibleItems) {
-                visibleItems.add(0, item);
-            }
-            notifyItemInserted(0);
-            updateIndexesInRange(context, 0);
-        }
+    public void reset() {
+        setFocusColor(ColorItem.NO_COLOR);
     }
 
     /**
@@ -221,81 +310,148 @@ public class ItemAdapter extends
     }
 
     /**
-     * Remove an item.
+     * Records the index of each loaded item from fromIndex up to toIndex.
      *
-     * @param context  the context
-     * @param item     the item to remove
-     * @param position the position of the Item in the List
+     * @param fromIndex the first index, inclusive
+     * @param toIndex   the last index, exclusive
      */
-    public void removeItem( Context context, Item item, int position ) {
-        allItems.remove(item);
-        visibleItems.remove(item);
-        notifyRemoved(context, position);
+    private void indexFrom( int fromIndex, int toIndex ) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            indexById.put(allItems.get(i).getId(), i);
+        }
     }
 
     /**
-     * Update indexes in range, starting from the item at fromIndex to the end
+     * Gets the index of an item in allItems.
      *
-     * @param context   the context
-     * @param fromIndex the from index
+     * @param id the id of the item
+     * @return the index, or -1 if it isn't loaded
      */
-    public void updateIndexesInRange( Context context, int fromIndex ) {
-        List<Item> updated = new ArrayList<>();
-        for (int i = fromIndex; i < allItems.size(); i++) {
-            Item thisItem = allItems.get(i);
-            thisItem.setViewHolderPosition(allItems.indexOf(thisItem));
-            System.out.println("TRIED TO SET IN UPDATE: " + thisItem.getName() + " to " + thisItem.getViewHolderPosition());
-            updated.add(thisItem);
-        }
-        ((MainActivity) context).updateMultipleInBackground(updated);
+    private int indexOfId( int id ) {
+        Integer index = indexById.get(id);
+        return index != null ? index : -1;
     }
 
     /**
-     * Notify that an item has been moved. Calls the super method notifyItemMoved
+     * Gets the item at a position, the one being shown.
      *
-     * @param context      the context
-     * @param fromPosition the from position
-     * @param toPosition   the to position
+     * @param position the adapter position
+     * @return the item, or null for a placeholder of an item that isn't loaded yet
      */
-    public void notifyMoved( Context context, int fromPosition, int toPosition ) {
-        super.notifyItemMoved(fromPosition, toPosition);
-        if (fromPosition != toPosition) {
-            updateIndexesInRange(context, Math.min(fromPosition, toPosition));
-        }
+    private Item getItem( int position ) {
+        return movingInPlace ? allItems.get(position) : differ.getCurrentList().get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return movingInPlace ? allItems.size() : differ.getCurrentList().size();
     }
 
     /**
-     * Notify that an item has been changed. Calls the super method notifyItemChanged
+     * Moves an item onto the position of another while it is being dragged, and persists only its new rank.
+     * The move is shown straight away with notifyItemMoved, and the moved items are only diffed once, by endDrag.
+     * The items are found by id rather than by adapter position, so that a move is never
+     * resolved against a list that is still being diffed.
+     * Dragging is only enabled when there is no color focus, so the loaded items are the first of all the items.
      *
-     * @param context  the context
-     * @param position the position
+     * @param context the context
+     * @param moving  the item being dragged
+     * @param target  the item it is dragged onto
+     * @return whether the item was moved
      */
-    public void notifyChanged( Context context, int position ) {
-        super.notifyItemChanged(position);
+    public boolean moveItem( Context context, Item moving, Item target ) {
+        if (dropping) {
+            return false;
+        }
+        int fromIndex = indexOfId(moving.getId());
+        int toIndex = indexOfId(target.getId());
+        if (fromIndex == -1 || toIndex == -1) {
+            return false;
+        }
+        //the item after the last loaded item isn't loaded, so there is nothing to rank against
+        if (toIndex == loadedCount - 1 && loadedCount < allItems.size()) {
+            return false;
+        }
+        if (fromIndex == toIndex) {
+            return true;
+        }
+        if (movingInPlace == false) {
+            //the submitted list must not change, so the drag moves the items of a copy
+            allItems = new ArrayList<>(allItems);
+            movingInPlace = true;
+        }
+        List<Item> items = allItems;
+        //the moved item is copied, so that the items of the submitted list aren't changed in place
+        Item moved = new Item(items.remove(fromIndex));
+        items.add(toIndex, moved);
+        Item before = toIndex > 0 ? items.get(toIndex - 1) : null;
+        Item after = toIndex < loadedCount - 1 ? items.get(toIndex + 1) : null;
+        if (Ranks.rankBetween(moved, before, after)) {
+            ((MainActivity) context).updatePositionsInBackground(Collections.singletonList(moved));
+        } else {
+            //no gap left, so rank the loaded items GAP apart and move the rest after them
+            List<Integer> orderedIds = new ArrayList<>(loadedCount);
+            for (int i = 0; i < loadedCount; i++) {
+                Item copy = new Item(items.get(i));
+                copy.setViewHolderPosition(i * Ranks.GAP);
+                items.set(i, copy);
+                orderedIds.add(copy.getId());
+            }
+            ((MainActivity) context).rebalanceRanksInBackground(orderedIds);
+        }
+        indexFrom(Math.min(fromIndex, toIndex), Math.max(fromIndex, toIndex) + 1);
+        notifyItemMoved(fromIndex, toIndex);
+        return true;
     }
 
     /**
-     * Notify that an item has been inserted. Calls the super method notifyItemInserted
+     * Ends a drag, submitting the items in the order they were moved to. The differences are
+     * already shown, so they aren't applied again. Items must not be set before onCommitted is run.
      *
-     * @param context  the context
-     * @param position the position
+     * @param onCommitted run once the moved items are the submitted items
      */
-    public void notifyInserted( Context context, int position ) {
-        super.notifyItemInserted(position);
-        updateIndexesInRange(context, position);
-        focusOnColor();
+    public void endDrag( Runnable onCommitted ) {
+        if (movingInPlace == false) {
+            onCommitted.run();
+            return;
+        }
+        dropping = true;
+        differ.submitList(allItems, () -> {
+            dropping = false;
+            movingInPlace = false;
+            onCommitted.run();
+        });
     }
 
     /**
-     * Notify that an item has been removed. Calls the super method notifyItemRemoved
+     * Whether more items should be loaded, because the user has scrolled close to the last loaded item.
      *
-     * @param context  the context
-     * @param position the position
+     * @param lastVisiblePosition the last visible adapter position
+     * @param prefetchDistance    how many positions before the end to start loading
+     * @return whether more items should be loaded
      */
-    public void notifyRemoved( Context context, int position ) {
-        super.notifyItemRemoved(position);
-        updateIndexesInRange(context, position);
-        focusOnColor();
+    public boolean needsMoreItems( int lastVisiblePosition, int prefetchDistance ) {
+        return loadedCount < allItems.size() && lastVisiblePosition + prefetchDistance >= loadedCount;
+    }
+
+    /**
+     * Rebinds every visible item, for when something that isn't part of the items
+     * (the day, or the thresholds in the settings) changes how they are shown.
+     */
+    public void rebindAll() {
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
+    @Override
+    public int getItemViewType( int position ) {
+        return getItem(position) != null ? VIEW_TYPE_ITEM : VIEW_TYPE_PLACEHOLDER;
+    }
+
+    @Override
+    public long getItemId( int position ) {
+        Item item = getItem(position);
+        //placeholders have no identity of their own, the item that replaces one gets its own id
+        return item != null ? item.getId() : RecyclerView.NO_ID;
     }
 
     // Usually involves inflating a layout from XML and returning the holder
@@ -303,21 +459,78 @@ public class ItemAdapter extends
     @Override
     public ItemAdapter.ViewHolder onCreateViewHolder( ViewGroup parent, int viewType ) {
         Context context = parent.getContext();
-        return new ViewHolder(context,
+        ViewHolder holder = new ViewHolder(context,
                 MainRvItemBinding.inflate(LayoutInflater.from(context), parent, false));
+        //a placeholder for an item that isn't loaded yet keeps its space in the grid, but shows nothing
+        if (viewType == VIEW_TYPE_PLACEHOLDER) {
+            holder.itemView.setVisibility(View.INVISIBLE);
+        }
+        return holder;
     }
 
     // Involves populating data into the item through holder
     @Override
     public void onBindViewHolder( ViewHolder holder, int position ) {
         // Get the data model based on position
-        holder.item = visibleItems.get(position);
-        MainRvItemBinding g = holder.g;
+        holder.item = getItem(position);
 
+        //placeholders are never recycled for items, so they only need to be created invisible
+        if (holder.item == null) {
+            return;
+        }
 
-        int stock = holder.item.getCalculatedStock();
+        long today = Today.epochDay();
+        holder.g.nameTV.setText(holder.item.getName());
+        bindColor(holder);
+        bindAutoDec(holder);
+        bindStock(holder, today);
+        bindExpiry(holder, today);
+        bindLastTaken(holder, today);
+    }
+
+    // Only updates the views of the payloads, a rebind without any payload binds the whole card
+    @Override
+    public void onBindViewHolder( @NonNull ViewHolder holder, int position, @NonNull List<Object> payloads ) {
+        Item item = getItem(position);
+        if (payloads.isEmpty() || item == null || holder.item == null || holder.item.getId() != item.getId()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        //the changes of several updates before the card was bound again are all applied
+        int flags = 0;
+        for (Object payload : payloads) {
+            if (payload instanceof ItemChange == false) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+            flags |= ((ItemChange) payload).getFlags();
+        }
+        holder.item = item;
+        long today = Today.epochDay();
+        if ((flags & ItemChange.COLOR) != 0) {
+            bindColor(holder);
+        }
+        if ((flags & ItemChange.AUTODEC) != 0) {
+            bindAutoDec(holder);
+        }
+        if ((flags & ItemChange.STOCK) != 0) {
+            bindStock(holder, today);
+        }
+        if ((flags & ItemChange.EXPIRY) != 0) {
+            bindExpiry(holder, today);
+        }
+        if ((flags & ItemChange.LAST_TAKEN) != 0) {
+            bindLastTaken(holder, today);
+        }
+    }
 
-        g.nameTV.setText(holder.item.getName());
+    /**
+     * Binds the color dot of a card, and the margin of its name around it.
+     *
+     * @param holder the holder
+     */
+    private void bindColor( ViewHolder holder ) {
+        MainRvItemBinding g = holder.g;
 
         //Getting the margin on the NameTV
         ConstraintLayout.LayoutParams params = ((ConstraintLayout.LayoutParams) g.nameTV.getLayoutParams());
@@ -336,51 +549,78 @@ public class ItemAdapter extends
             params.setMargins(defMargin, defMargin, rightMargin, 0);
         }
         g.nameTV.setLayoutParams(params);
+    }
 
+    /**
+     * Binds the background and border of a card, that show whether it is auto decremented.
+     *
+     * @param holder the holder
+     */
+    private void bindAutoDec( ViewHolder holder ) {
+        MainRvItemBinding g = holder.g;
         //If autodec
         if (holder.item.isAutoDec()) {
-            g.cardView.setCardBackgroundColor(ColorFactory.getAttrColor(holder.context, R.attr.autoDecBgColor));
-            g.cardView.setStrokeColor(ColorFactory.getAttrColor(holder.context, R.attr.autoDecBorderColor));
+            g.cardView.setCardBackgroundColor(palette.getAutoDecBgColor());
+            g.cardView.setStrokeColor(palette.getAutoDecBorderColor());
             g.cardView.setStrokeWidth(Converters.fromDpToPixels(2, holder.context.getResources()));
         } else {
-            g.cardView.setCardBackgroundColor(ColorFactory.getAttrColor(holder.context, R.attr.colorOnCard));
+            g.cardView.setCardBackgroundColor(palette.getColorOnCard());
             //no stroke width
             g.cardView.setStrokeWidth(0);
         }
+    }
+
+    /**
+     * Binds the stock of a card.
+     *
+     * @param holder the holder
+     * @param today  the epoch day of today
+     */
+    private void bindStock( ViewHolder holder, long today ) {
+        MainRvItemBinding g = holder.g;
+        int stock = holder.item.getCalculatedStock(today);
 
         //Set the text of the stockTV
         g.stockTV.setText(String.valueOf(stock));
         //Set the color if the stock is low
-        if (stock <= Thresholds.getStockThreshold(holder.context)) {
-            g.stockTV.setTextColor(ContextCompat.getColor(holder.context, R.color.primaryColor));
+        if (stock <= settings.getStockThreshold()) {
+            g.stockTV.setTextColor(palette.getPrimaryColor());
             g.stockTV.setTypeface(null, Typeface.BOLD);
         } else {
             //get the default color
-            g.stockTV.setTextColor(ColorFactory.getDefaultTextColor(holder.context));
+            g.stockTV.setTextColor(palette.getTextColor());
             g.stockTV.setTypeface(null, Typeface.NORMAL);
         }
+    }
 
+    /**
+     * Binds the expiry of the soonest expiring refill of a card.
+     *
+     * @param holder the holder
+     * @param today  the epoch day of today
+     */
+    private void bindExpiry( ViewHolder holder, long today ) {
+        MainRvItemBinding g = holder.g;
         //set the text of the expiryTV
         if (holder.item.getExpiringRefill() != null) {
             /*
             At 4 weeks or 28 days, show warning
              */
             LocalDate expiringDate = holder.item.getExpiringRefill().getExpiryDate();
-            long daysTillExpiry = DAYS.between(LocalDate.now(), expiringDate);
-            if (daysTillExpiry <= Thresholds.getWarningDayThreshold(holder.context)) {
+            long daysTillExpiry = expiringDate.toEpochDay() - today;
+            if (daysTillExpiry <= settings.getWarningDayThreshold()) {
                 g.expiryTV.setVisibility(VISIBLE);
                 //Set the text of the stockTV
-                g.expiryTV.setText(StringFormatter.getExpiryText(holder.item.getExpiringRefill()));
+                g.expiryTV.setText(StringFormatter.getExpiryText(holder.item.getExpiringRefill().getAmount(), daysTillExpiry));
 
                 /*
                 At red day threshold, make the text red
                  */
-                if (daysTillExpiry <= Thresholds.getRedDayThreshold(holder.context)) {
-                    g.expiryTV.setTextColor(ContextCompat.getColor(holder.context, R.color.primaryColor));
+                if (daysTillExpiry <= settings.getRedDayThreshold()) {
+                    g.expiryTV.setTextColor(palette.getPrimaryColor());
                 } else {
                     //get the default color
-                    int color = ColorFactory.getAttrColor(holder.context, android.R.attr.textColor);
-                    g.expiryTV.setTextColor(color);
+                    g.expiryTV.setTextColor(palette.getTextColor());
                 }
 
             } else {
@@ -389,46 +629,59 @@ public class ItemAdapter extends
         } else {
             g.expiryTV.setVisibility(GONE);
         }
-
-        //set the text of the last taken text view
-        g.lastTakenTV.setText(StringFormatter.getLastTakenText(holder.context, holder.item));
-
-        mBoundViewHolders.add(holder);
     }
 
-
-
     /**
-     * Check last taken.
+     * Gets the last taken text of an item, with the settings the items are shown with.
+     *
+     * @param item  the item
+     * @param today the epoch day of today
+     * @return the last taken text
      */
-    public void checkLastTaken() {
-        for (ViewHolder viewHolder : mBoundViewHolders) {
-            viewHolder.g.lastTakenTV.setText(StringFormatter.getLastTakenText(viewHolder.context, viewHolder.item));
-        }
+    private String getLastTakenText( Item item, long today ) {
+        return StringFormatter.getLastTakenText(item.getLastUsed(), item.getLastUsedTime(), item.isAutoDec(),
+                today, settings.getShowTime());
     }
 
-    // Returns the total count of items in the list
-    @Override
-    public int getItemCount() {
-        return visibleItems.size();
+    /**
+     * Binds the last taken text of a card.
+     *
+     * @param holder the holder
+     * @param today  the epoch day of today
+     */
+    private void bindLastTaken( ViewHolder holder, long today ) {
+        //an unchanged text needs no new layout
+        String lastTakenText = getLastTakenText(holder.item, today);
+        if (TextUtils.equals(holder.g.lastTakenTV.getText(), lastTakenText) == false) {
+            holder.g.lastTakenTV.setText(lastTakenText);
+        }
     }
 
     /**
-     * Gets items.
-     *
-     * @return the items
+     * Check last taken. Rebinds only the last taken text of the cards that are bound,
+     * the others get the new text whenever they are bound.
      */
-    public List<Item> getItems() {
-        return this.visibleItems;
+    public void checkLastTaken() {
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_LAST_TAKEN);
     }
 
     /**
-     * Sets items.
+     * Sets items. The difference from the items being shown is worked out off the main thread.
      *
-     * @param items the items
+     * @param items       the loaded items, in order
+     * @param totalCount  the number of items in the database, the rest are shown as placeholders
+     * @param onCommitted run once the items are being shown
      */
-    public void setItems( List<Item> items ) {
-        this.allItems = items;
-        focusOnColor();
+    public void setItems( List<Item> items, int totalCount, Runnable onCommitted ) {
+        List<Item> withPlaceholders = new ArrayList<>(Math.max(totalCount, items.size()));
+        withPlaceholders.addAll(items);
+        while (withPlaceholders.size() < totalCount) {
+            withPlaceholders.add(null);
+        }
+        this.allItems = withPlaceholders;
+        this.loadedCount = items.size();
+        indexById = new HashMap<>(loadedCount * 2);
+        indexFrom(0, loadedCount);
+        differ.submitList(allItems, onCommitted);
     }
 }
@@ -0,0 +1,70 @@
+package com.innerCat.pillBox.recyclerViews;
+
+/**
+ * The payload of a rebind of an Item card, with the parts of the card that changed,
+ * so that ItemAdapter only binds the views of those parts.
+ */
+public final class ItemChange {
+
+    /**
+     * The stock, or the auto decrement that it is calculated with
+     */
+    public static final int STOCK = 1;
+    /**
+     * The soonest expiring refill
+     */
+    public static final int EXPIRY = 1 << 1;
+    /**
+     * The day and time it was last taken
+     */
+    public static final int LAST_TAKEN = 1 << 2;
+    /**
+     * The color
+     */
+    public static final int COLOR = 1 << 3;
+    /**
+     * Whether it is auto decremented
+     */
+    public static final int AUTODEC = 1 << 4;
+
+    private final int flags;
+
+    /**
+     * Instantiates a new Item change.
+     *
+     * @param flags the parts that changed, e.g. STOCK | LAST_TAKEN
+     */
+    public ItemChange( int flags ) {
+        this.flags = flags;
+    }
+
+    /**
+     * Gets flags.
+     *
+     * @return the parts that changed
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return flags == ((ItemChange) o).flags;
+    }
+
+    @Override
+    public int hashCode() {
+        return flags;
+    }
+
+    @Override
+    public String toString() {
+        return "ItemChange{" + "flags=" + Integer.toBinaryString(flags) + '}';
+    }
+}
@@ -11,20 +11,21 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
-import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.innerCat.pillBox.R;
+import com.innerCat.pillBox.util.ColorPalette;
 import com.innerCat.pillBox.util.StringFormatter;
 import com.innerCat.pillBox.activities.RefillActivity;
-import com.innerCat.pillBox.factories.ColorFactory;
 import com.innerCat.pillBox.objects.Refill;
 import com.innerCat.pillBox.objects.RefillListHeader;
 import com.innerCat.pillBox.objects.RefillListObject;
 import com.innerCat.pillBox.room.Converters;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -34,9 +35,13 @@ public class RefillAdapter extends
         RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private static final int TYPE_HEADER = 0;
     private static final int TYPE_ITEM = 1;
+    /**
+     * The payload of a rebind that only updates the delete checkbox of a refill, when the edit mode changes
+     */
+    public static final String PAYLOAD_EDIT_MODE = "editMode";
 
     private List<RefillListObject> refillListObjects = new ArrayList<>();
-    private Set<ViewHolderItem> mBoundItemViewHolders = new HashSet<>();
+    private final ColorPalette palette;
 
     // Provide a direct reference to each of the views within a data refill
     // Used to cache the views within the refill layout for fast access
@@ -76,24 +81,26 @@ public class RefillAdapter extends
                     ((RefillActivity) context).editRefillItem(refill, refillListObjects.indexOf(refill));
                 }
             });
-            updateState();
 
         }
 
 
         /**
-         * Update the state of the checkboxes in the recyclerview wrt the modes in ArchiveActivity
+         * Update the state of the checkbox in the recyclerview wrt the edit mode in RefillActivity
          */
         public void updateState() {
-            if (((RefillActivity) context).getEditMode()) {
+            RefillActivity activity = (RefillActivity) context;
+            Resources resources = context.getResources();
+            LinearLayout.MarginLayoutParams params = (LinearLayout.MarginLayoutParams) dateTV.getLayoutParams();
+            if (activity.getEditMode()) {
+                params.setMarginEnd(Converters.fromDpToPixels(6, resources));
                 deleteCheckBox.setVisibility(View.VISIBLE);
-                if (((RefillActivity) context).getSelectAllMode()) {
-                    deleteCheckBox.setChecked(true);
-                    ((RefillActivity) context).addDeleteRefill(refill);
-                }
+                deleteCheckBox.setChecked(activity.isDeleteRefill(refill));
             } else {
+                params.setMarginEnd(Converters.fromDpToPixels(12, resources));
                 deleteCheckBox.setVisibility(View.GONE);
             }
+            dateTV.setLayoutParams(params);
         }
 
     }
@@ -108,46 +115,35 @@ public class RefillAdapter extends
     }
 
     /**
-     * Enables deletion of all the tasks
+     * Enables deletion of all the tasks. Only the checkboxes of the refills are rebound,
+     * from the edit mode and the selected refills of RefillActivity.
      */
-    public void checkDelete(Resources resources, boolean deleteMode) {
-        for (ViewHolderItem viewHolderItem : mBoundItemViewHolders) {
-            LinearLayout.MarginLayoutParams params = (LinearLayout.MarginLayoutParams)
-                    viewHolderItem.dateTV.getLayoutParams();
-            if (deleteMode) {
-                int endMargin = Converters.fromDpToPixels(6, resources);
-                params.setMarginEnd(endMargin);
-                viewHolderItem.deleteCheckBox.setVisibility(View.VISIBLE);
-                viewHolderItem.deleteCheckBox.setChecked(false);
-            } else {
-                int defaultMargin = Converters.fromDpToPixels(12, resources);
-                params.setMarginEnd(defaultMargin);
-                viewHolderItem.deleteCheckBox.setVisibility(View.GONE);
-            }
-            viewHolderItem.dateTV.setLayoutParams(params);
-        }
+    public void checkDelete() {
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_EDIT_MODE);
     }
 
     /**
      * Pass in the refills array into the Adapter
      *
+     * @param palette the colors the refills are shown with, resolved from the theme of the activity
      * @param expired the expired
      * @param future  the future
      */
-    public RefillAdapter(Context context,
+    public RefillAdapter(ColorPalette palette,
                          List<? extends RefillListObject> expired,
                          List<? extends RefillListObject> nonExpiring,
                          List<? extends RefillListObject> future) {
+        this.palette = palette;
         refillListObjects.addAll(future);
 
         if (nonExpiring.isEmpty() == false) {
-            refillListObjects.add(new RefillListHeader("Undated Refills", ColorFactory.getDefaultTextColor(context)));
+            refillListObjects.add(new RefillListHeader("Undated Refills", palette.getTextColor()));
             refillListObjects.addAll(nonExpiring);
         }
 
 
         if (expired.isEmpty() == false) {
-            refillListObjects.add(new RefillListHeader("Expired Refills", ContextCompat.getColor(context, R.color.primaryDarkColor)));
+            refillListObjects.add(new RefillListHeader("Expired Refills", palette.getPrimaryDarkColor()));
             refillListObjects.addAll(expired);
         }
     }
@@ -171,14 +167,12 @@ public class RefillAdapter extends
      * @param context the context (RefillActivity instance)
      */
     public void selectAll(Context context) {
-        for (ViewHolderItem viewHolderItem : mBoundItemViewHolders) {
-            viewHolderItem.deleteCheckBox.setChecked(true);
-        }
         for (RefillListObject refillObject : refillListObjects) {
             if (refillObject instanceof Refill) {
                 ((RefillActivity) context).addDeleteRefill((Refill) refillObject);
             }
         }
+        checkDelete();
     }
 
     /**
@@ -206,6 +200,32 @@ public class RefillAdapter extends
         notifyChanged(context, position);
     }
 
+    /**
+     * Merge an edited refill into another refill of the list with the same expiry date, if there is one.
+     * The edited refill is removed and its amount added to the other one, as DataDao.updateMerging does.
+     *
+     * @param context  the context
+     * @param refill   the edited refill
+     * @param position the position of the edited refill in the List
+     * @return whether the refill was merged
+     */
+    public boolean mergeRefill(Context context, Refill refill, int position) {
+        if (refill.getExpiryDate() == null) {
+            return false;
+        }
+        for (int i = 0; i < refillListObjects.size(); i++) {
+            RefillListObject object = refillListObjects.get(i);
+            if (object instanceof Refill && object != refill
+                    && refill.getExpiryDate().equals(((Refill) object).getExpiryDate())) {
+                ((Refill) object).mergeWith(refill);
+                notifyChanged(context, i);
+                removeRefill(context, refill, position);
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Remove an refill.
      *
@@ -218,6 +238,36 @@ public class RefillAdapter extends
         notifyRemoved(context, position);
     }
 
+    /**
+     * Remove many refills in a single pass over the list, notifying each run of removed
+     * refills as one range rather than searching the list for every refill.
+     *
+     * @param refills the refills to remove
+     */
+    public void removeRefills(Collection<Refill> refills) {
+        Set<RefillListObject> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(refills);
+        List<RefillListObject> previous = refillListObjects;
+        refillListObjects = new ArrayList<>(previous.size());
+        for (RefillListObject object : previous) {
+            if (removed.contains(object) == false) {
+                refillListObjects.add(object);
+            }
+        }
+        //ranges are notified from the end, so the earlier positions are still correct
+        int runEnd = -1;
+        for (int i = previous.size() - 1; i >= -1; i--) {
+            if (i >= 0 && removed.contains(previous.get(i))) {
+                if (runEnd == -1) {
+                    runEnd = i;
+                }
+            } else if (runEnd != -1) {
+                notifyItemRangeRemoved(i + 1, runEnd - i);
+                runEnd = -1;
+            }
+        }
+    }
+
     /**
      * Notify that an refill has been changed. Calls the super method notifyItemChanged
      *
@@ -294,14 +344,27 @@ public class RefillAdapter extends
             TextView dateTV = refillViewHolder.dateTV;
             amountTV.setText(String.valueOf(refillViewHolder.refill.getAmount()));
             if (refillViewHolder.refill.getExpires()) {
-                dateTV.setTextColor(ContextCompat.getColor(refillViewHolder.context, R.color.primaryColor));
+                dateTV.setTextColor(palette.getPrimaryColor());
                 dateTV.setVisibility(View.VISIBLE);
                 dateTV.setText(StringFormatter.dateToString(refillViewHolder.refill.getExpiryDate()));
             } else {
-                dateTV.setTextColor(ColorFactory.getDefaultTextColor(refillViewHolder.context));
+                dateTV.setTextColor(palette.getTextColor());
                 dateTV.setVisibility(View.INVISIBLE);
             }
-            mBoundItemViewHolders.add(refillViewHolder);
+            refillViewHolder.updateState();
+        }
+    }
+
+    // Only updates the views of the payloads, a rebind without any payload binds the whole row
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || !(holder instanceof ViewHolderItem)
+                || ((ViewHolderItem) holder).refill != refillListObjects.get(position)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        if (payloads.contains(PAYLOAD_EDIT_MODE)) {
+            ((ViewHolderItem) holder).updateState();
         }
     }
 
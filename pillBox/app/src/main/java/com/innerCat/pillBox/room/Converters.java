@@ -9,68 +9,75 @@ import android.util.TypedValue;
 import androidx.room.TypeConverter;
 
 import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.util.Today;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 
 public class Converters {
 
+    /**
+     * Convert from seconds of the day to a LocalTime
+     *
+     * @param value the seconds of the day
+     * @return the LocalTime
+     */
     @TypeConverter
-    public static LocalTime localTimeFromTimestamp(String value) {
+    public static LocalTime localTimeFromSecondOfDay(Integer value) {
         if (value == null) {
             return null;
         }
-        return LocalTime.parse(value);
+        return LocalTime.ofSecondOfDay(value);
     }
 
     /**
-     * Converts the date to a String timestamp
+     * Converts the time to seconds of the day
      *
-     * @param date the date (LocalDate with date ONLY)
-     * @return the timestamp as a String
+     * @param time the time
+     * @return the seconds of the day
      */
     @TypeConverter
-    public static String localTimeToTimestamp(LocalTime date) {
-        if (date == null) {
+    public static Integer localTimeToSecondOfDay(LocalTime time) {
+        if (time == null) {
             return null;
         }
-        return date.format(DateTimeFormatter.ISO_LOCAL_TIME);
+        return time.toSecondOfDay();
     }
 
     /**
-     * Convert from a timestamp String to a LocalDate (with date ONLY)
+     * Convert from an epoch day to a LocalDate (with date ONLY)
      *
-     * @param value the String to convert
+     * @param value the epoch day to convert
      * @return the LocalDate
      */
     @TypeConverter
-    public static LocalDate fromTimestamp(String value) {
+    public static LocalDate fromEpochDay(Long value) {
         if (value == null) {
             return null;
         }
-        return LocalDate.parse(value);
+        return LocalDate.ofEpochDay(value);
     }
 
     /**
-     * Converts the date to a String timestamp
+     * Converts the date to an epoch day, so that it is stored as an INTEGER
+     * and can be compared directly (and through an index) in queries
      *
      * @param date the date (LocalDate with date ONLY)
-     * @return the timestamp as a String
+     * @return the epoch day
      */
     @TypeConverter
-    public static String dateToTimestamp(LocalDate date) {
+    public static Long dateToEpochDay(LocalDate date) {
         if (date == null) {
             return null;
         }
-        return date.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        return date.toEpochDay();
     }
 
     /**
-     * @return Today's dateString
+     * @return Today's epoch day
      */
-    public static String todayString() {
-        return dateToTimestamp(LocalDate.now());
+    public static long todayEpochDay() {
+        return Today.epochDay();
     }
 
     /**
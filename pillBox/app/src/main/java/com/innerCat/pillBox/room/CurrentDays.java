@@ -0,0 +1,64 @@
+package com.innerCat.pillBox.room;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.innerCat.pillBox.objects.CurrentDay;
+import com.innerCat.pillBox.util.Today;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Keeps the current_day row in step with Today, so that the triggers read the day from it
+ * instead of working it out from the wall clock of SQLite, which neither follows a Clock set by
+ * the tests nor a change of time zone that Today has followed.
+ */
+public class CurrentDays {
+
+    /**
+     * The epoch day of today, as the triggers read it
+     */
+    static final String TODAY_SQL = "(SELECT epochDay FROM current_day WHERE id = " + CurrentDay.ID + ")";
+
+    /**
+     * The start of the usage window, in seconds since the epoch, as the triggers read it
+     */
+    static final String USAGE_SINCE_SQL = "(SELECT usageSinceSecond FROM current_day WHERE id = " + CurrentDay.ID + ")";
+
+    /**
+     * Gets the start of the usage window of a day, RunOutDays.USAGE_DAYS before its start.
+     *
+     * @param today the epoch day of today
+     * @param zone  the time zone the day starts in
+     * @return the start of the usage window, in seconds since the epoch
+     */
+    public static long usageSinceSecond( long today, ZoneId zone ) {
+        return LocalDate.ofEpochDay(today).atStartOfDay(zone).toEpochSecond()
+                - RunOutDays.USAGE_DAYS * 24 * 60 * 60;
+    }
+
+    /**
+     * Adds the row for today, for when the table is first created. No day has been started yet,
+     * so lastStartedDay is left to its default of 0.
+     *
+     * @param database the database
+     */
+    public static void create( SupportSQLiteDatabase database ) {
+        long today = Today.epochDay();
+        database.execSQL("INSERT OR IGNORE INTO current_day (id, epochDay, usageSinceSecond) "
+                        + "VALUES (?1, ?2, ?3)",
+                new Object[]{ CurrentDay.ID, today, usageSinceSecond(today, Today.getClock().getZone()) });
+    }
+
+    /**
+     * Moves the row on to a day.
+     *
+     * @param database         the database
+     * @param today            the epoch day of today
+     * @param usageSinceSecond the start of the usage window, in seconds since the epoch
+     */
+    public static void moveTo( SupportSQLiteDatabase database, long today, long usageSinceSecond ) {
+        database.execSQL("UPDATE current_day SET epochDay = ?1, usageSinceSecond = ?2 WHERE id = " + CurrentDay.ID,
+                new Object[]{ today, usageSinceSecond });
+    }
+}
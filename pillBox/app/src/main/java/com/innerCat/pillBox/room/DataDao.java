@@ -4,12 +4,28 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
+import com.innerCat.pillBox.objects.CurrentDay;
+import com.innerCat.pillBox.objects.DoseEvent;
+import com.innerCat.pillBox.objects.DoseSnapshot;
 import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.objects.ItemWithExpiringRefill;
 import com.innerCat.pillBox.objects.Refill;
+import com.innerCat.pillBox.objects.RefillSummary;
+import com.innerCat.pillBox.objects.WidgetItem;
+import com.innerCat.pillBox.util.Ranks;
+import com.innerCat.pillBox.util.Today;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 //The Data Access Object is the abstraction layer through which the database is manipulated
@@ -35,20 +51,182 @@ public interface DataDao {
     void update( Item item );
 
     /**
-     * Removes an Item by id
+     * Saves the changes made to an Item in the form, in a single transaction. Only the columns the
+     * form edits are written, so doses taken from the widget and rank changes made meanwhile are kept.
+     * The stock is changed by what the form changed it by, logged as a DoseEvent, and is flattened
+     * if auto decrement has changed.
      *
-     * @param id the id of the Item to remove
+     * @param item        the edited item
+     * @param stockChange how much the form changed the stock by
+     * @param today       the today
      */
-    @Query("DELETE FROM items WHERE id = :id")
-    void removeItemById( int id );
+    @Transaction
+    default void updateItem( Item item, int stockChange, long today ) {
+        updateDetails(item.getId(), item.getName(), item.getColor(), item.getShowInWidget());
+        if (stockChange != 0) {
+            int before = getRawStock(item.getId());
+            decrementStockBy(item.getId(), -stockChange);
+            logStockChange(item.getId(), before, DoseEvent.SOURCE_EDIT);
+        }
+        flattenAndSetAutoDec(item.getId(), item.isAutoDec(), item.getAutoDecPerDay(), item.getAutoDecNDays(), today);
+    }
+
+    /**
+     * Updates only the details of an Item that the form edits, other than its stock and auto decrement
+     *
+     * @param id           the id of the Item
+     * @param name         the name
+     * @param color        the color
+     * @param showInWidget whether it is shown in the widget
+     */
+    @Query("UPDATE items SET name = :name, color = :color, showInWidget = :showInWidget WHERE id = :id")
+    void updateDetails( int id, String name, int color, boolean showInWidget );
+
+    /**
+     * Sets the auto decrement of an Item, if it has changed, flattening its stock to the calculated
+     * stock of today and starting the auto decrement from today.
+     * This is the database equivalent of Item.flattenAndSetAutoDecIf
+     *
+     * @param id      the id of the Item
+     * @param autoDec whether it is auto decremented
+     * @param perDay  the number taken each time, 0 if it isn't auto decremented
+     * @param nDays   the number of days between each time, 0 if it isn't auto decremented
+     * @param today   the today
+     */
+    @Query("UPDATE items SET rawStock = " + Item.CALCULATED_STOCK_SQL + ", " +
+            "autoDecStartDate = CASE WHEN :autoDec THEN :today ELSE NULL END, " +
+            "autoDecPerDay = :perDay, autoDecNDays = :nDays " +
+            "WHERE id = :id " +
+            "AND ((autoDecStartDate IS NOT NULL) != :autoDec OR autoDecPerDay != :perDay OR autoDecNDays != :nDays)")
+    void flattenAndSetAutoDec( int id, boolean autoDec, int perDay, int nDays, long today );
+
+    /**
+     * Updates multiple items in a single transaction
+     *
+     * @param items the items
+     */
+    @Update
+    void updateAll( List<Item> items );
+
+    /**
+     * Updates only the viewHolderPosition of an Item
+     *
+     * @param id                 the id of the Item
+     * @param viewHolderPosition the view holder position
+     */
+    @Query("UPDATE items SET viewHolderPosition = :viewHolderPosition WHERE id = :id")
+    void updateViewHolderPosition( int id, int viewHolderPosition );
+
+    /**
+     * Updates only the viewHolderPositions of multiple items, in a single transaction
+     *
+     * @param items the items with their new view holder positions
+     */
+    @Transaction
+    default void updateViewHolderPositions( List<Item> items ) {
+        for (Item item : items) {
+            updateViewHolderPosition(item.getId(), item.getViewHolderPosition());
+        }
+    }
+
+    /**
+     * Takes n of an Item, if it has any stock, and sets when it was last used.
+     * The stock is changed in SQL, so a concurrent change from the widget or another screen is never lost.
+     * This is the database equivalent of Item.decrementStock
+     *
+     * @param id   the id of the Item
+     * @param n    the number taken
+     * @param day  the day it was taken
+     * @param time the time it was taken
+     * @return the number of Items changed, 0 if it had no stock
+     */
+    @Query("UPDATE items SET rawStock = max(rawStock - :n, 0), lastUsed = :day, lastUsedTime = :time " +
+            "WHERE id = :id AND rawStock > 0")
+    int takeStock( int id, int n, LocalDate day, LocalTime time );
+
+    /**
+     * Takes one of an Item, if it has any stock, and logs it as a DoseEvent, in a single transaction.
+     *
+     * @param id     the id of the Item
+     * @param day    the day it was taken
+     * @param time   the time it was taken
+     * @param source where it was taken from, one of the DoseEvent SOURCE constants
+     * @return whether one was taken
+     */
+    @Transaction
+    default boolean takeOne( int id, LocalDate day, LocalTime time, int source ) {
+        if (takeStock(id, 1, day, time) == 0) {
+            return false;
+        }
+        long epochSecond = LocalDateTime.of(day, time).atZone(Today.getClock().getZone()).toEpochSecond();
+        insert(new DoseEvent(id, epochSecond, -1, source));
+        return true;
+    }
+
+    /**
+     * Gets the raw stock of an Item, as stored.
+     *
+     * @param id the id of the Item
+     * @return the raw stock, or 0 if there is no such Item
+     */
+    @Query("SELECT rawStock FROM items WHERE id = :id")
+    int getRawStock( int id );
 
     /**
-     * Removes an Item by id
+     * Logs the change in the raw stock of an Item since it was before, as a DoseEvent, if it changed.
+     * Stock changes are clamped and reset in SQL, so the change that was applied is read back
+     * rather than worked out from what was asked for. It must run in the same transaction as the change.
+     *
+     * @param id     the id of the Item
+     * @param before the raw stock before the change
+     * @param source where the change came from, one of the DoseEvent SOURCE constants
+     */
+    default void logStockChange( int id, int before, int source ) {
+        int delta = getRawStock(id) - before;
+        if (delta != 0) {
+            insert(new DoseEvent(id, Instant.now().getEpochSecond(), delta, source));
+        }
+    }
+
+    /**
+     * Decrements the stock of an Item by n, down to no lower than 0. A negative n increments it.
+     * This is the database equivalent of Item.decrementStockBy
+     *
+     * @param id the id of the Item
+     * @param n  the amount to decrement by
+     */
+    @Query("UPDATE items SET rawStock = max(rawStock - :n, 0) WHERE id = :id")
+    void decrementStockBy( int id, int n );
+
+    /**
+     * Refills the stock of an Item. If the calculated stock has gone below 0, it is reset to 0 first.
+     * This is the database equivalent of Item.refillByAmount
+     *
+     * @param id     the id of the Item
+     * @param amount the refill amount
+     * @param today  the today, to work out the calculated stock
+     */
+    @Query("UPDATE items SET rawStock = rawStock + :amount - min(0, " + Item.CALCULATED_STOCK_SQL + ") " +
+            "WHERE id = :id")
+    void refillStockBy( int id, int amount, long today );
+
+    /**
+     * Gets the calculated stock of an Item on a day, worked out by SQLite with Item.CALCULATED_STOCK_SQL
+     *
+     * @param id    the id of the Item
+     * @param today the epoch day to calculate the stock on
+     * @return the calculated stock
+     */
+    @Query("SELECT " + Item.CALCULATED_STOCK_SQL + " FROM items WHERE id = :id")
+    int getCalculatedStock( int id, long today );
+
+    /**
+     * Removes an Item by id. Its refills are removed with it, by the foreign key on Refill.itemId
      *
      * @param id the id of the Item to remove
      */
-    @Query("DELETE FROM refills WHERE itemId = :id")
-    void removeRefillsOfItemId( int id );
+    @Query("DELETE FROM items WHERE id = :id")
+    void removeItemById( int id );
 
     /**
      * Get a single Item from the id
@@ -68,12 +246,306 @@ public interface DataDao {
     List<Item> getAllItems();
 
     /**
-     * Gets all widget items.
+     * Returns all Items joined with their soonest expiring Refill, in a single query
      *
-     * @return all Items that should be shown in the widget as a List
+     * @param today the today
+     * @return all the Items in the database with their expiring refills
+     */
+    @Query( "SELECT items.*, " +
+            "refills.id AS refill_id, " +
+            "refills.itemId AS refill_itemId, " +
+            "refills.amount AS refill_amount, " +
+            "refills.expiryDate AS refill_expiryDate, " +
+            "refills.expires AS refill_expires " +
+            "FROM items " +
+            "LEFT JOIN refills ON refills.id = (" +
+            "SELECT r.id FROM refills r " +
+            "WHERE r.itemId = items.id " +
+            "AND r.expires is 1 " +
+            "AND r.expiryDate >= :today " +
+            "ORDER BY r.expiryDate " +
+            "ASC LIMIT 1) " +
+            "ORDER BY items.viewHolderPosition")
+    List<ItemWithExpiringRefill> getAllItemsWithExpiringRefill( long today );
+
+    /**
+     * Gets a page of Items, in order, joined with their soonest expiring Refill: the Items after
+     * the key (afterRank, afterId) up to and including the key (untilRank, untilId), at most limit of them.
+     * The id breaks ties between equal ranks, so that no Item is skipped or shown twice at the end of a
+     * page. The query seeks to the start of the page in the viewHolderPosition index, whose entries end
+     * with the id, and stops at its end or after limit rows, so its cost depends on the size of the page
+     * and not on how many pages come before it. The soonest expiring Refill is read from the
+     * refill_summary row of each Item, so the refills themselves are never scanned.
+     * MainActivity runs it again only for the pages that a changed Item was or now is in (see ItemChanges).
+     *
+     * @param today     the today
+     * @param afterRank the viewHolderPosition of the key the page starts after, Long.MIN_VALUE for the first page
+     * @param afterId   the id of the key the page starts after, Long.MIN_VALUE for the first page
+     * @param untilRank the viewHolderPosition of the last key of the page, Long.MAX_VALUE for the last page
+     * @param untilId   the id of the last key of the page, Long.MAX_VALUE for the last page
+     * @param limit     the most Items to load, -1 for no limit
+     * @return the page of Items with their expiring refills
+     */
+    @Query( "SELECT items.*, " +
+            "s.soonestRefillId AS refill_id, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE s.itemId END AS refill_itemId, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE s.soonestAmount END AS refill_amount, " +
+            "s.soonestExpiryDate AS refill_expiryDate, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE 1 END AS refill_expires " +
+            "FROM items " +
+            "LEFT JOIN refill_summary s ON s.itemId = items.id " +
+            "AND s.soonestExpiryDate >= :today " +
+            "WHERE (items.viewHolderPosition, items.id) > (:afterRank, :afterId) " +
+            "AND (items.viewHolderPosition, items.id) <= (:untilRank, :untilId) " +
+            "ORDER BY items.viewHolderPosition, items.id " +
+            "LIMIT :limit")
+    List<ItemWithExpiringRefill> getItemsWithExpiringRefill( long today,
+                                                             long afterRank, long afterId,
+                                                             long untilRank, long untilId, int limit );
+
+    /**
+     * Gets a page of the Items of a color, in order, joined with their soonest expiring Refill.
+     * The query seeks in the (color, viewHolderPosition) index, so it only reads the Items of the page.
+     * The soonest expiring Refill is read from the refill_summary row of each Item.
+     *
+     * @param today     the today
+     * @param color     the color
+     * @param afterRank the viewHolderPosition of the key the page starts after, Long.MIN_VALUE for the first page
+     * @param afterId   the id of the key the page starts after, Long.MIN_VALUE for the first page
+     * @param untilRank the viewHolderPosition of the last key of the page, Long.MAX_VALUE for the last page
+     * @param untilId   the id of the last key of the page, Long.MAX_VALUE for the last page
+     * @param limit     the most Items to load, -1 for no limit
+     * @return the page of Items of the color with their expiring refills
+     */
+    @Query( "SELECT items.*, " +
+            "s.soonestRefillId AS refill_id, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE s.itemId END AS refill_itemId, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE s.soonestAmount END AS refill_amount, " +
+            "s.soonestExpiryDate AS refill_expiryDate, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE 1 END AS refill_expires " +
+            "FROM items " +
+            "LEFT JOIN refill_summary s ON s.itemId = items.id " +
+            "AND s.soonestExpiryDate >= :today " +
+            "WHERE items.color = :color " +
+            "AND (items.viewHolderPosition, items.id) > (:afterRank, :afterId) " +
+            "AND (items.viewHolderPosition, items.id) <= (:untilRank, :untilId) " +
+            "ORDER BY items.viewHolderPosition, items.id " +
+            "LIMIT :limit")
+    List<ItemWithExpiringRefill> getItemsWithExpiringRefillOfColor( long today, int color,
+                                                                    long afterRank, long afterId,
+                                                                    long untilRank, long untilId, int limit );
+
+    /**
+     * Gets a page of the Items that run out on or before lastDay, soonest first, joined with their
+     * soonest expiring Refill. A page is keyed by (runOutDay, viewHolderPosition, id), the order of the
+     * (runOutDay, viewHolderPosition) index, whose entries end with the id, which the query seeks in from
+     * the key the page starts after. The id breaks ties between Items of the same day and rank.
+     * With lastDay Item.RUN_OUT_NEVER it is every Item sorted by the days remaining, and with a nearer
+     * lastDay it only reads the Items running out by then.
+     *
+     * @param today     the today
+     * @param lastDay   the last run out day (epoch day) to include
+     * @param afterDay  the runOutDay of the key the page starts after, Long.MIN_VALUE for the first page
+     * @param afterRank the viewHolderPosition of the key the page starts after, Long.MIN_VALUE for the first page
+     * @param afterId   the id of the key the page starts after, Long.MIN_VALUE for the first page
+     * @param untilDay  the runOutDay of the last key of the page, Long.MAX_VALUE for the last page
+     * @param untilRank the viewHolderPosition of the last key of the page, Long.MAX_VALUE for the last page
+     * @param untilId   the id of the last key of the page, Long.MAX_VALUE for the last page
+     * @param limit     the most Items to load, -1 for no limit
+     * @return the page of Items by run out day with their expiring refills
+     */
+    @Query( "SELECT items.*, " +
+            "s.soonestRefillId AS refill_id, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE s.itemId END AS refill_itemId, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE s.soonestAmount END AS refill_amount, " +
+            "s.soonestExpiryDate AS refill_expiryDate, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE 1 END AS refill_expires " +
+            "FROM items " +
+            "LEFT JOIN refill_summary s ON s.itemId = items.id " +
+            "AND s.soonestExpiryDate >= :today " +
+            "WHERE items.runOutDay <= :lastDay " +
+            "AND (items.runOutDay, items.viewHolderPosition, items.id) > (:afterDay, :afterRank, :afterId) " +
+            "AND (items.runOutDay, items.viewHolderPosition, items.id) <= (:untilDay, :untilRank, :untilId) " +
+            "ORDER BY items.runOutDay, items.viewHolderPosition, items.id " +
+            "LIMIT :limit")
+    List<ItemWithExpiringRefill> getItemsByRunOutDay( long today, long lastDay,
+                                                      long afterDay, long afterRank, long afterId,
+                                                      long untilDay, long untilRank, long untilId,
+                                                      int limit );
+
+    /**
+     * Gets a page of the Items of a color that run out on or before lastDay, soonest first, joined
+     * with their soonest expiring Refill. The query seeks in the (color, runOutDay, viewHolderPosition) index.
+     *
+     * @param today     the today
+     * @param color     the color
+     * @param lastDay   the last run out day (epoch day) to include
+     * @param afterDay  the runOutDay of the key the page starts after, Long.MIN_VALUE for the first page
+     * @param afterRank the viewHolderPosition of the key the page starts after, Long.MIN_VALUE for the first page
+     * @param afterId   the id of the key the page starts after, Long.MIN_VALUE for the first page
+     * @param untilDay  the runOutDay of the last key of the page, Long.MAX_VALUE for the last page
+     * @param untilRank the viewHolderPosition of the last key of the page, Long.MAX_VALUE for the last page
+     * @param untilId   the id of the last key of the page, Long.MAX_VALUE for the last page
+     * @param limit     the most Items to load, -1 for no limit
+     * @return the page of Items of the color by run out day with their expiring refills
+     */
+    @Query( "SELECT items.*, " +
+            "s.soonestRefillId AS refill_id, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE s.itemId END AS refill_itemId, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE s.soonestAmount END AS refill_amount, " +
+            "s.soonestExpiryDate AS refill_expiryDate, " +
+            "CASE WHEN s.soonestRefillId IS NULL THEN NULL ELSE 1 END AS refill_expires " +
+            "FROM items " +
+            "LEFT JOIN refill_summary s ON s.itemId = items.id " +
+            "AND s.soonestExpiryDate >= :today " +
+            "WHERE items.color = :color " +
+            "AND items.runOutDay <= :lastDay " +
+            "AND (items.runOutDay, items.viewHolderPosition, items.id) > (:afterDay, :afterRank, :afterId) " +
+            "AND (items.runOutDay, items.viewHolderPosition, items.id) <= (:untilDay, :untilRank, :untilId) " +
+            "ORDER BY items.runOutDay, items.viewHolderPosition, items.id " +
+            "LIMIT :limit")
+    List<ItemWithExpiringRefill> getItemsByRunOutDayOfColor( long today, int color, long lastDay,
+                                                             long afterDay, long afterRank, long afterId,
+                                                             long untilDay, long untilRank, long untilId,
+                                                             int limit );
+
+    /**
+     * Gets the number of Items.
+     *
+     * @return the number of Items in the database
+     */
+    @Query("SELECT COUNT(*) FROM items")
+    int countItems();
+
+    /**
+     * Gets the number of Items of a color.
+     *
+     * @param color the color
+     * @return the number of Items of the color
+     */
+    @Query("SELECT COUNT(*) FROM items WHERE color = :color")
+    int countItemsOfColor( int color );
+
+    /**
+     * Gets the number of Items that run out on or before lastDay.
+     *
+     * @param lastDay the last run out day (epoch day) to count
+     * @return the number of Items running out by lastDay
+     */
+    @Query("SELECT COUNT(*) FROM items WHERE runOutDay <= :lastDay")
+    int countItemsByRunOutDay( long lastDay );
+
+    /**
+     * Gets the number of Items of a color that run out on or before lastDay.
+     *
+     * @param color   the color
+     * @param lastDay the last run out day (epoch day) to count
+     * @return the number of Items of the color running out by lastDay
+     */
+    @Query("SELECT COUNT(*) FROM items WHERE color = :color AND runOutDay <= :lastDay")
+    int countItemsByRunOutDayOfColor( int color, long lastDay );
+
+    /**
+     * Gets the run out day of an Item.
+     *
+     * @param id the id of the Item
+     * @return the epoch day it is projected to run out, or Item.RUN_OUT_NEVER
+     */
+    @Query("SELECT runOutDay FROM items WHERE id = :id")
+    long getRunOutDay( int id );
+
+    /**
+     * Gets the lowest rank of all the Items.
+     *
+     * @return the lowest viewHolderPosition, or null if there are no Items
+     */
+    @Query("SELECT MIN(viewHolderPosition) FROM items")
+    Integer getFirstRank();
+
+    /**
+     * Gets the ids of all the Items, in order.
+     *
+     * @return the ids of the Items
+     */
+    @Query("SELECT id FROM items ORDER BY viewHolderPosition")
+    List<Integer> getAllItemIdsInOrder();
+
+    /**
+     * Ranks all the Items Ranks.GAP apart, in a single transaction. The Items with the given ids
+     * come first, in the given order, and the rest keep their order after them.
+     * This is used when there is no gap left to move an Item into, and not every Item is loaded.
+     *
+     * @param orderedIds the ids of the first Items, in their new order
+     */
+    @Transaction
+    default void rebalanceRanks( List<Integer> orderedIds ) {
+        Set<Integer> placed = new HashSet<>(orderedIds);
+        int rank = 0;
+        for (int id : orderedIds) {
+            updateViewHolderPosition(id, rank);
+            rank += Ranks.GAP;
+        }
+        for (int id : getAllItemIdsInOrder()) {
+            if (placed.contains(id) == false) {
+                updateViewHolderPosition(id, rank);
+                rank += Ranks.GAP;
+            }
+        }
+    }
+
+    /**
+     * Inserts an Item before all the Items, in a single transaction so that nothing else can be
+     * ranked first meanwhile. If there is no rank left before the first Item, the Items are rebalanced first.
+     *
+     * @param item the Item to insert
+     * @return the id of the inserted Item
      */
-    @Query("SELECT * FROM items WHERE showInWidget is 1 ORDER BY viewHolderPosition")
-    List<Item> getAllWidgetItems();
+    @Transaction
+    default long insertFirst( Item item ) {
+        Integer firstRank = getFirstRank();
+        if (Ranks.hasRankBefore(firstRank) == false) {
+            rebalanceRanks(Collections.emptyList());
+            firstRank = getFirstRank();
+        }
+        item.setViewHolderPosition(Ranks.rankBefore(firstRank));
+        return insert(item);
+    }
+
+    /**
+     * Get a single Item joined with its soonest expiring Refill
+     *
+     * @param id    the id (primary key) of the item
+     * @param today the today
+     * @return the item with its expiring refill
+     */
+    @Query( "SELECT items.*, " +
+            "refills.id AS refill_id, " +
+            "refills.itemId AS refill_itemId, " +
+            "refills.amount AS refill_amount, " +
+            "refills.expiryDate AS refill_expiryDate, " +
+            "refills.expires AS refill_expires " +
+            "FROM items " +
+            "LEFT JOIN refills ON refills.id = (" +
+            "SELECT r.id FROM refills r " +
+            "WHERE r.itemId = items.id " +
+            "AND r.expires is 1 " +
+            "AND r.expiryDate >= :today " +
+            "ORDER BY r.expiryDate " +
+            "ASC LIMIT 1) " +
+            "WHERE items.id = :id")
+    ItemWithExpiringRefill getItemWithExpiringRefill( int id, long today );
+
+    /**
+     * Gets the columns the widget shows of all the widget items, with their stock calculated in SQLite.
+     * The query walks the (showInWidget, viewHolderPosition) index.
+     *
+     * @param today the today
+     * @return all Items that should be shown in the widget, as WidgetItems
+     */
+    @Query( "SELECT id, name, " + Item.CALCULATED_STOCK_SQL + " AS stock, lastUsed, lastUsedTime, " +
+            "autoDecStartDate IS NOT NULL AS autoDec " +
+            "FROM items WHERE showInWidget is 1 ORDER BY viewHolderPosition")
+    List<WidgetItem> getWidgetItems( long today );
 
     /**
      * Gets refills of item itemId.
@@ -81,8 +553,8 @@ public interface DataDao {
      * @param itemId the itemId
      * @return the refills of item itemId
      */
-    @Query("SELECT * FROM refills WHERE itemId = :itemId AND julianday(expiryDate) >= julianday(:today)")
-    List<Refill> getFutureRefillsOfItemId( int itemId, String today );
+    @Query("SELECT * FROM refills WHERE itemId = :itemId AND expires is 1 AND expiryDate >= :today")
+    List<Refill> getFutureRefillsOfItemId( int itemId, long today );
 
     /**
      * Gets non expiring refills of item id.
@@ -100,8 +572,26 @@ public interface DataDao {
      * @param today  the today
      * @return the expired refills of item id
      */
-    @Query("SELECT * FROM refills WHERE itemId = :itemId AND julianday(expiryDate) < julianday(:today)")
-    List<Refill> getExpiredRefillsOfItemId( int itemId, String today );
+    @Query("SELECT * FROM refills WHERE itemId = :itemId AND expires is 1 AND expiryDate < :today")
+    List<Refill> getExpiredRefillsOfItemId( int itemId, long today );
+
+    /**
+     * Gets all the refills of item id, in a single query.
+     *
+     * @param itemId the item id
+     * @return the refills of item id
+     */
+    @Query("SELECT * FROM refills WHERE itemId = :itemId")
+    List<Refill> getRefillsOfItemId( int itemId );
+
+    /**
+     * Gets the refill summary of item id.
+     *
+     * @param itemId the item id
+     * @return the refill summary of item id, or null if the item has never had a refill
+     */
+    @Query("SELECT * FROM refill_summary WHERE itemId = :itemId")
+    RefillSummary getRefillSummary( int itemId );
 
     /**
      * Gets soonest expiring refill of item id.
@@ -113,10 +603,10 @@ public interface DataDao {
     @Query( "SELECT * FROM refills " +
             "WHERE itemId = :itemId " +
             "AND expires is 1 " +
-            "AND julianday(expiryDate) >= julianday(:today) " +
-            "ORDER BY julianday(expiryDate) " +
+            "AND expiryDate >= :today " +
+            "ORDER BY expiryDate " +
             "ASC LIMIT 1")
-    Refill getSoonestExpiringRefillOfItemId( int itemId, String today );
+    Refill getSoonestExpiringRefillOfItemId( int itemId, long today );
 
 
     /**
@@ -143,6 +633,55 @@ public interface DataDao {
     @Update
     void update( Refill refill );
 
+    /**
+     * Adds an amount to the refill of an item that expires on a date, other than the refill with id.
+     * The (itemId, expiryDate) index is unique, so there is at most one such refill.
+     *
+     * @param id         the id of the refill to leave out, or 0 for a new refill
+     * @param itemId     the item id
+     * @param expiryDate the expiry date. Refills without one are never merged
+     * @param amount     the amount to add
+     * @return the number of refills that were added to, either 0 or 1
+     */
+    @Query("UPDATE refills SET amount = amount + :amount " +
+            "WHERE itemId = :itemId AND expiryDate = :expiryDate AND id != :id")
+    int mergeIntoRefillOfExpiryDate( int id, int itemId, LocalDate expiryDate, int amount );
+
+    /**
+     * Adds a new refill. If the item already has a refill that expires on the same date, the amount
+     * is added to that refill instead, and the new refill keeps the id 0.
+     * SQLite only has ON CONFLICT DO UPDATE from 3.24, which is newer than minSdk 26 ships, so this is
+     * an indexed UPDATE followed by an INSERT only when nothing was updated, in one transaction.
+     *
+     * @param refill the refill to add, whose id is set if it is inserted
+     * @return whether the refill was merged into an existing one
+     */
+    @Transaction
+    default boolean upsert( Refill refill ) {
+        if (mergeIntoRefillOfExpiryDate(0, refill.getItemId(), refill.getExpiryDate(), refill.getAmount()) > 0) {
+            return true;
+        }
+        refill.setId((int) insert(refill));
+        return false;
+    }
+
+    /**
+     * Updates a refill. If its (new) expiry date is the same as another refill of the item, its amount
+     * is added to that refill and it is removed, rather than breaking the unique (itemId, expiryDate) index.
+     *
+     * @param refill the refill to update
+     * @return whether the refill was merged into another one and removed
+     */
+    @Transaction
+    default boolean updateMerging( Refill refill ) {
+        if (mergeIntoRefillOfExpiryDate(refill.getId(), refill.getItemId(), refill.getExpiryDate(), refill.getAmount()) > 0) {
+            removeRefillById(refill.getId());
+            return true;
+        }
+        update(refill);
+        return false;
+    }
+
     /**
      * Returns all Refills as a List
      *
@@ -160,4 +699,214 @@ public interface DataDao {
     @Query("DELETE FROM refills WHERE id = :id")
     void removeRefillById( int id );
 
+    /**
+     * Adds a refill, merged with any of the same expiry date, and refills the stock of its Item
+     * by the same amount, in a single transaction. The change logged includes the reset of a
+     * calculated stock that had gone below 0.
+     *
+     * @param refill the refill
+     * @param today  the today
+     */
+    @Transaction
+    default void addRefill( Refill refill, long today ) {
+        upsert(refill);
+        int before = getRawStock(refill.getItemId());
+        refillStockBy(refill.getItemId(), refill.getAmount(), today);
+        logStockChange(refill.getItemId(), before, DoseEvent.SOURCE_REFILL);
+    }
+
+    /**
+     * Saves an edited refill, merged with any of the same expiry date, and changes the stock of its
+     * Item by the change in amount, in a single transaction.
+     *
+     * @param refill        the edited refill
+     * @param initialAmount the amount of the refill before it was edited
+     * @return whether the refill was merged into another one and removed
+     */
+    @Transaction
+    default boolean editRefill( Refill refill, int initialAmount ) {
+        boolean merged = updateMerging(refill);
+        int delta = refill.getAmount() - initialAmount;
+        if (delta != 0) {
+            int before = getRawStock(refill.getItemId());
+            decrementStockBy(refill.getItemId(), -delta);
+            logStockChange(refill.getItemId(), before, DoseEvent.SOURCE_REFILL);
+        }
+        return merged;
+    }
+
+    /**
+     * Removes refills of an Item and takes their total amount from its stock, in a single transaction.
+     *
+     * @param itemId the id of the Item
+     * @param ids    the ids of the refills
+     * @return the total amount of the removed refills
+     */
+    @Transaction
+    default int removeRefillsOfItem( int itemId, List<Integer> ids ) {
+        int total = removeRefills(ids);
+        if (total != 0) {
+            int before = getRawStock(itemId);
+            decrementStockBy(itemId, total);
+            logStockChange(itemId, before, DoseEvent.SOURCE_REFILL);
+        }
+        return total;
+    }
+
+    /**
+     * The most ids bound to a single IN (...) query. SQLite before 3.32 allows 999 variables per statement.
+     */
+    int MAX_BOUND_IDS = 900;
+
+    /**
+     * Gets the total amount of the refills with ids.
+     *
+     * @param ids the ids, at most MAX_BOUND_IDS of them
+     * @return the total amount, or 0 if there are none
+     */
+    @Query("SELECT IFNULL(SUM(amount), 0) FROM refills WHERE id IN (:ids)")
+    int getTotalAmountOfRefillIds( List<Integer> ids );
+
+    /**
+     * Removes the refills with ids.
+     *
+     * @param ids the ids, at most MAX_BOUND_IDS of them
+     */
+    @Query("DELETE FROM refills WHERE id IN (:ids)")
+    void removeRefillsByIds( List<Integer> ids );
+
+    /**
+     * Removes any number of refills in a single transaction, MAX_BOUND_IDS at a time.
+     *
+     * @param ids the ids of the refills to remove
+     * @return the total amount of the removed refills, so that the stock can be adjusted once
+     */
+    @Transaction
+    default int removeRefills( List<Integer> ids ) {
+        int total = 0;
+        for (int from = 0; from < ids.size(); from += MAX_BOUND_IDS) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_BOUND_IDS));
+            total += getTotalAmountOfRefillIds(chunk);
+            removeRefillsByIds(chunk);
+        }
+        return total;
+    }
+
+    /**
+     * Inserts a DoseEvent
+     *
+     * @param event the event
+     */
+    @Insert
+    void insert( DoseEvent event );
+
+    /**
+     * Inserts many DoseEvents with a single prepared statement, in a single transaction
+     *
+     * @param events the events
+     */
+    @Insert
+    void insertAll( List<DoseEvent> events );
+
+    /**
+     * Logs the doses taken by the auto decrement on a day, for every auto decrementing Item,
+     * in a single statement. Items already logged that day are skipped, so it is safe to run more than once a day.
+     *
+     * @param day         the epoch day
+     * @param epochSecond the start of the day, in seconds since the epoch
+     * @param untilSecond the start of the next day, in seconds since the epoch
+     */
+    @Query( "INSERT INTO dose_events (itemId, epochSecond, delta, source) " +
+            "SELECT id, :epochSecond, -autoDecPerDay, " + DoseEvent.SOURCE_AUTODEC + " FROM items " +
+            "WHERE autoDecStartDate IS NOT NULL " +
+            "AND autoDecStartDate < :day " +
+            "AND (:day - autoDecStartDate) % autoDecNDays = 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM dose_events e " +
+            "WHERE e.itemId = items.id " +
+            "AND e.epochSecond >= :epochSecond " +
+            "AND e.epochSecond < :untilSecond " +
+            "AND e.source = " + DoseEvent.SOURCE_AUTODEC + ")")
+    void logAutoDecDoses( long day, long epochSecond, long untilSecond );
+
+    /**
+     * Adds the DoseEvents before beforeSecond to the DoseSnapshot of their Item
+     *
+     * @param beforeSecond the epoch second
+     */
+    @Query( "INSERT OR REPLACE INTO dose_snapshots (itemId, upToSecond, total, eventCount, runningTotal) " +
+            "SELECT e.itemId, :beforeSecond, " +
+            "IFNULL((SELECT s.total FROM dose_snapshots s WHERE s.itemId = e.itemId), 0) + SUM(e.delta), " +
+            "IFNULL((SELECT s.eventCount FROM dose_snapshots s WHERE s.itemId = e.itemId), 0) + COUNT(*), " +
+            "IFNULL((SELECT s.runningTotal FROM dose_snapshots s WHERE s.itemId = e.itemId), 0) " +
+            "FROM dose_events e " +
+            "WHERE e.epochSecond < :beforeSecond " +
+            "GROUP BY e.itemId")
+    void snapshotDoseEventsBefore( long beforeSecond );
+
+    /**
+     * Removes the DoseEvents before beforeSecond
+     *
+     * @param beforeSecond the epoch second
+     */
+    @Query("DELETE FROM dose_events WHERE epochSecond < :beforeSecond")
+    void removeDoseEventsBefore( long beforeSecond );
+
+    /**
+     * Folds the DoseEvents before beforeSecond into the DoseSnapshots of their Items and removes them,
+     * in a single transaction, so that the dose_events table only holds the recent tail.
+     *
+     * @param beforeSecond the epoch second
+     */
+    @Transaction
+    default void compactDoseEvents( long beforeSecond ) {
+        snapshotDoseEventsBefore(beforeSecond);
+        removeDoseEventsBefore(beforeSecond);
+    }
+
+    /**
+     * Gets the DoseSnapshot of item id.
+     *
+     * @param itemId the item id
+     * @return the dose snapshot, or null if it has no events
+     */
+    @Query("SELECT * FROM dose_snapshots WHERE itemId = :itemId")
+    DoseSnapshot getDoseSnapshot( int itemId );
+
+    /**
+     * Gets the DoseEvents of item id since an epoch second, newest first.
+     *
+     * @param itemId      the item id
+     * @param sinceSecond the epoch second
+     * @return the dose events
+     */
+    @Query("SELECT * FROM dose_events WHERE itemId = :itemId AND epochSecond >= :sinceSecond ORDER BY epochSecond DESC")
+    List<DoseEvent> getDoseEventsOfItemId( int itemId, long sinceSecond );
+
+    /**
+     * Gets the total of all the DoseEvents of item id, from the running total of its snapshot.
+     * The auto decrement doses are counted, so the total follows the calculated stock of an auto
+     * decrementing Item (WidgetItem.getStock), not its rawStock, which they never change.
+     *
+     * @param itemId the item id
+     * @return the total change in stock
+     */
+    @Query("SELECT IFNULL((SELECT runningTotal FROM dose_snapshots WHERE itemId = :itemId), 0)")
+    int getDoseTotal( int itemId );
+
+    /**
+     * Gets the last day that was started by Database.startNewDay.
+     *
+     * @return the epoch day, or 0 if no day has been started
+     */
+    @Query("SELECT lastStartedDay FROM current_day WHERE id = " + CurrentDay.ID)
+    long getLastStartedDay();
+
+    /**
+     * Sets the last day that was started by Database.startNewDay.
+     *
+     * @param day the epoch day
+     */
+    @Query("UPDATE current_day SET lastStartedDay = :day WHERE id = " + CurrentDay.ID)
+    void setLastStartedDay( long day );
+
 }
@@ -3,17 +3,87 @@ package com.innerCat.pillBox.room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
 
+import com.innerCat.pillBox.objects.CurrentDay;
+import com.innerCat.pillBox.objects.DoseEvent;
+import com.innerCat.pillBox.objects.DoseSnapshot;
 import com.innerCat.pillBox.objects.Item;
 import com.innerCat.pillBox.objects.Refill;
+import com.innerCat.pillBox.objects.RefillSummary;
+import com.innerCat.pillBox.util.Today;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
 
 @androidx.room.Database(
-        entities = { Item.class, Refill.class },
-        version = 4
+        entities = { Item.class, Refill.class, RefillSummary.class, DoseEvent.class, DoseSnapshot.class, CurrentDay.class },
+        version = 14
 )
 @TypeConverters({ Converters.class })
 public abstract class Database extends RoomDatabase {
+
+    /**
+     * The number of days of DoseEvents kept, older ones are folded into the DoseSnapshots
+     */
+    public static final int DOSE_EVENT_DAYS = 90;
+
     public abstract DataDao getDao();
 
-}
+    /**
+     * Rolls the refill summaries forward to a new day. This goes through a Room transaction,
+     * so that the observers of refill_summary are notified.
+     *
+     * @param today the epoch day of today
+     */
+    public void rollRefillSummaries( long today ) {
+        runInTransaction(() -> RefillSummaries.rollForward(getOpenHelper().getWritableDatabase(), today));
+    }
 
+    /**
+     * Takes the changes of the Items logged since the last time, see ItemChanges.
+     *
+     * @return the changes
+     */
+    public List<ItemChanges.Change> takeItemChanges() {
+        return runInTransaction(() -> ItemChanges.take(getOpenHelper().getWritableDatabase()));
+    }
 
+    /**
+     * Does the work that is due at the start of a day, in a single transaction: moves the current_day
+     * row on, rolls the refill summaries forward, logs the auto decrement doses, compacts the old DoseEvents
+     * and projects the run out days of the Items from their usage up to today.
+     * The day starts in the time zone of Today, so it agrees with the day the triggers read.
+     * The last day started is kept in current_day, so starting the same day again, as every
+     * recreation of MainActivity does, only reads it. The auto decrement doses of the days since then
+     * that were never started, while the app wasn't opened, are logged as well, so that the running
+     * totals of the DoseSnapshots keep up with the calculated stock.
+     *
+     * @param today the epoch day of today
+     * @return whether the day was started, false if it already had been
+     */
+    public boolean startNewDay( long today ) {
+        ZoneId zone = Today.getClock().getZone();
+        long keepFrom = LocalDate.ofEpochDay(today - DOSE_EVENT_DAYS).atStartOfDay(zone).toEpochSecond();
+        long usageSince = CurrentDays.usageSinceSecond(today, zone);
+        return runInTransaction(() -> {
+            long lastStartedDay = getDao().getLastStartedDay();
+            if (lastStartedDay == today) {
+                return false;
+            }
+            CurrentDays.moveTo(getOpenHelper().getWritableDatabase(), today, usageSince);
+            RefillSummaries.rollForward(getOpenHelper().getWritableDatabase(), today);
+            //no day started yet, or the clock went back: only today is due
+            long firstDay = lastStartedDay == 0 || lastStartedDay > today ? today : lastStartedDay + 1;
+            long startOfDay = LocalDate.ofEpochDay(firstDay).atStartOfDay(zone).toEpochSecond();
+            for (long day = firstDay; day <= today; day++) {
+                long startOfNextDay = LocalDate.ofEpochDay(day + 1).atStartOfDay(zone).toEpochSecond();
+                getDao().logAutoDecDoses(day, startOfDay, startOfNextDay);
+                startOfDay = startOfNextDay;
+            }
+            getDao().compactDoseEvents(keepFrom);
+            RunOutDays.refresh(getOpenHelper().getWritableDatabase(), today, usageSince);
+            getDao().setLastStartedDay(today);
+            return true;
+        });
+    }
+}
@@ -0,0 +1,252 @@
+package com.innerCat.pillBox.room;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules the background database work of the app.
+ * Writes run one at a time, in the order they were submitted, so that they can't race each other.
+ * Reads run on a bounded pool, where reads that the UI is waiting on run before background reads.
+ * A read is a background read unless it is tagged UI_VISIBLE, including Room's own work on the query executor.
+ */
+public class DatabaseScheduler {
+
+    /**
+     * The priority of a read.
+     */
+    public enum Priority {
+        /**
+         * A read whose result is about to be shown to the user
+         */
+        UI_VISIBLE,
+        /**
+         * A read that nothing on screen is waiting on
+         */
+        BACKGROUND
+    }
+
+    /**
+     * The number of threads that reads run on
+     */
+    private static final int READ_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * The process-wide DatabaseScheduler
+     */
+    private static volatile DatabaseScheduler instance = null;
+
+    private final ExecutorService writeLane;
+    private final ThreadPoolExecutor readPool;
+    private final Executor queryExecutor;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final AtomicInteger pendingReads = new AtomicInteger();
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    //the tasks that haven't finished and been counted yet, and the lock that awaitIdle waits on
+    private final AtomicInteger unfinishedTasks = new AtomicInteger();
+    private final Object idleLock = new Object();
+
+    /**
+     * Gets the process-wide DatabaseScheduler.
+     *
+     * @return the database scheduler
+     */
+    public static DatabaseScheduler getInstance() {
+        if (instance == null) {
+            synchronized (DatabaseScheduler.class) {
+                if (instance == null) {
+                    instance = new DatabaseScheduler(READ_THREADS);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Instantiates a new Database scheduler.
+     *
+     * @param readThreads the number of threads that reads run on
+     */
+    public DatabaseScheduler( int readThreads ) {
+        writeLane = Executors.newSingleThreadExecutor(namedThreadFactory("pillBox-db-write"));
+        readPool = new ThreadPoolExecutor(readThreads, readThreads,
+                30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                namedThreadFactory("pillBox-db-read"));
+        readPool.allowCoreThreadTimeOut(true);
+        queryExecutor = task -> read(Priority.BACKGROUND, task);
+    }
+
+    /**
+     * Runs a write on the write lane, after every write submitted before it.
+     *
+     * @param task the task
+     */
+    public void write( Runnable task ) {
+        pendingWrites.incrementAndGet();
+        writeLane.execute(new Task(Priority.UI_VISIBLE, task, pendingWrites));
+    }
+
+    /**
+     * Runs a read that nothing on screen is waiting on.
+     *
+     * @param task the task
+     */
+    public void read( Runnable task ) {
+        read(Priority.BACKGROUND, task);
+    }
+
+    /**
+     * Runs a read on the read pool.
+     *
+     * @param priority the priority of the read
+     * @param task     the task
+     */
+    public void read( Priority priority, Runnable task ) {
+        pendingReads.incrementAndGet();
+        readPool.execute(new Task(priority, task, pendingReads));
+    }
+
+    /**
+     * Gets the executor that Room runs its own queries (e.g. the refresh of its InvalidationTracker) on,
+     * as background reads.
+     *
+     * @return the query executor
+     */
+    public Executor getQueryExecutor() {
+        return queryExecutor;
+    }
+
+    /**
+     * Gets the number of writes waiting to run.
+     *
+     * @return the pending writes
+     */
+    public int getPendingWrites() {
+        return pendingWrites.get();
+    }
+
+    /**
+     * Gets the number of reads waiting to run.
+     *
+     * @return the pending reads
+     */
+    public int getPendingReads() {
+        return pendingReads.get();
+    }
+
+    /**
+     * Gets the number of tasks that have finished.
+     *
+     * @return the completed tasks
+     */
+    public long getCompletedTasks() {
+        return completedTasks.get();
+    }
+
+    /**
+     * Gets the average time from submitting a task to it finishing.
+     *
+     * @return the average latency in nanoseconds
+     */
+    public long getAverageLatencyNanos() {
+        long completed = completedTasks.get();
+        return completed == 0 ? 0 : totalLatencyNanos.get() / completed;
+    }
+
+    /**
+     * Gets the longest time from submitting a task to it finishing.
+     *
+     * @return the max latency in nanoseconds
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    /**
+     * Waits until every task submitted so far has finished, and has been counted.
+     *
+     * @param timeout the longest time to wait
+     * @param unit    the unit of the timeout
+     * @return whether the tasks finished before the timeout
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitIdle( long timeout, TimeUnit unit ) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (idleLock) {
+            while (unfinishedTasks.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(idleLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a thread factory that names its threads, to make them easy to find when profiling.
+     *
+     * @param name the name of the threads
+     * @return the thread factory
+     */
+    private static ThreadFactory namedThreadFactory( String name ) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(runnable, name + "-" + count.incrementAndGet());
+    }
+
+    /**
+     * A submitted task, ordered by priority and then by submission order.
+     */
+    private class Task implements Runnable, Comparable<Task> {
+        private final Priority priority;
+        private final long order = sequence.getAndIncrement();
+        private final long submittedAt = System.nanoTime();
+        private final Runnable task;
+        private final AtomicInteger pending;
+
+        Task( Priority priority, Runnable task, AtomicInteger pending ) {
+            this.priority = priority;
+            this.task = task;
+            this.pending = pending;
+            unfinishedTasks.incrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            pending.decrementAndGet();
+            try {
+                task.run();
+            } finally {
+                long latency = System.nanoTime() - submittedAt;
+                completedTasks.incrementAndGet();
+                totalLatencyNanos.addAndGet(latency);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                if (unfinishedTasks.decrementAndGet() == 0) {
+                    synchronized (idleLock) {
+                        idleLock.notifyAll();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int compareTo( Task o ) {
+            if (priority != o.priority) {
+                return priority.compareTo(o.priority);
+            }
+            return Long.compare(order, o.order);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.innerCat.pillBox.room;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Keeps the runningTotal of the dose_snapshots up to date with a SQLite trigger, so that the total
+ * of the DoseEvents of an Item is read from a single row instead of adding up the tail of its events.
+ * Every insert adds to it, including the auto decrement doses logged in a single INSERT ... SELECT,
+ * so for an auto decrementing Item it follows the calculated stock rather than the rawStock.
+ */
+public class DoseSnapshots {
+
+    /**
+     * Creates the trigger that adds every new DoseEvent to the running total of its Item,
+     * starting an empty snapshot for the Item if it has none yet.
+     *
+     * @param database the database
+     */
+    public static void createTriggers( SupportSQLiteDatabase database ) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `dose_snapshot_after_dose_insert` "
+                + "AFTER INSERT ON dose_events BEGIN "
+                + "INSERT OR IGNORE INTO dose_snapshots (itemId, upToSecond, total, eventCount, runningTotal) "
+                + "VALUES (NEW.itemId, 0, 0, 0, 0); "
+                + "UPDATE dose_snapshots SET runningTotal = runningTotal + NEW.delta WHERE itemId = NEW.itemId; "
+                + "END");
+    }
+
+    /**
+     * Works out the running totals from the snapshots and the events since, for when the column is first added.
+     *
+     * @param database the database
+     */
+    public static void fill( SupportSQLiteDatabase database ) {
+        database.execSQL("INSERT OR IGNORE INTO dose_snapshots (itemId, upToSecond, total, eventCount, runningTotal) "
+                + "SELECT DISTINCT itemId, 0, 0, 0, 0 FROM dose_events");
+        database.execSQL("UPDATE dose_snapshots SET runningTotal = total + "
+                + "IFNULL((SELECT SUM(e.delta) FROM dose_events e WHERE e.itemId = dose_snapshots.itemId), 0)");
+    }
+}
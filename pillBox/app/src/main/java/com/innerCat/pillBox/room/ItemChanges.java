@@ -0,0 +1,129 @@
+package com.innerCat.pillBox.room;
+
+import android.database.Cursor;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Logs the ids of the Items whose row or refill summary changed, so that MainActivity only loads
+ * again the pages of the Items that changed, instead of every page whenever the items table does.
+ * Like the table modification log of Room's own InvalidationTracker, the log is a TEMP table filled
+ * by TEMP triggers, which only exist on the connection that they were created on. Every write goes
+ * through the primary connection, which onOpen and every transaction run on.
+ */
+public class ItemChanges {
+
+    /**
+     * The change of an Item, with the sort keys it has now, if it still exists.
+     */
+    public static class Change {
+        private final int id;
+        private final boolean present;
+        private final int color;
+        private final long runOutDay;
+        private final long viewHolderPosition;
+
+        Change( int id, boolean present, int color, long runOutDay, long viewHolderPosition ) {
+            this.id = id;
+            this.present = present;
+            this.color = color;
+            this.runOutDay = runOutDay;
+            this.viewHolderPosition = viewHolderPosition;
+        }
+
+        /**
+         * Gets id.
+         *
+         * @return the id
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Whether the Item still exists, false if it was deleted.
+         *
+         * @return whether the item is present
+         */
+        public boolean isPresent() {
+            return present;
+        }
+
+        /**
+         * Gets color.
+         *
+         * @return the color
+         */
+        public int getColor() {
+            return color;
+        }
+
+        /**
+         * Gets run out day.
+         *
+         * @return the run out day
+         */
+        public long getRunOutDay() {
+            return runOutDay;
+        }
+
+        /**
+         * Gets view holder position.
+         *
+         * @return the view holder position
+         */
+        public long getViewHolderPosition() {
+            return viewHolderPosition;
+        }
+    }
+
+    /**
+     * Creates the log and the triggers that fill it, for when the database is opened.
+     *
+     * @param database the database
+     */
+    public static void createTriggers( SupportSQLiteDatabase database ) {
+        database.execSQL("CREATE TEMP TABLE IF NOT EXISTS `item_change_log` (`itemId` INTEGER PRIMARY KEY)");
+        database.execSQL("CREATE TEMP TRIGGER IF NOT EXISTS `item_change_log_after_item_insert` "
+                + "AFTER INSERT ON items BEGIN "
+                + "INSERT OR IGNORE INTO item_change_log (itemId) VALUES (NEW.id); END");
+        database.execSQL("CREATE TEMP TRIGGER IF NOT EXISTS `item_change_log_after_item_update` "
+                + "AFTER UPDATE ON items BEGIN "
+                + "INSERT OR IGNORE INTO item_change_log (itemId) VALUES (NEW.id); END");
+        database.execSQL("CREATE TEMP TRIGGER IF NOT EXISTS `item_change_log_after_item_delete` "
+                + "AFTER DELETE ON items BEGIN "
+                + "INSERT OR IGNORE INTO item_change_log (itemId) VALUES (OLD.id); END");
+        database.execSQL("CREATE TEMP TRIGGER IF NOT EXISTS `item_change_log_after_summary_insert` "
+                + "AFTER INSERT ON refill_summary BEGIN "
+                + "INSERT OR IGNORE INTO item_change_log (itemId) VALUES (NEW.itemId); END");
+        database.execSQL("CREATE TEMP TRIGGER IF NOT EXISTS `item_change_log_after_summary_update` "
+                + "AFTER UPDATE ON refill_summary BEGIN "
+                + "INSERT OR IGNORE INTO item_change_log (itemId) VALUES (NEW.itemId); END");
+        database.execSQL("CREATE TEMP TRIGGER IF NOT EXISTS `item_change_log_after_summary_delete` "
+                + "AFTER DELETE ON refill_summary BEGIN "
+                + "INSERT OR IGNORE INTO item_change_log (itemId) VALUES (OLD.itemId); END");
+    }
+
+    /**
+     * Takes the changes logged since the last time, with the sort keys of the Items as they are now.
+     * It must run in a transaction, so that it runs on the connection that the log is on.
+     *
+     * @param database the database
+     * @return the changes, in no particular order
+     */
+    static List<Change> take( SupportSQLiteDatabase database ) {
+        List<Change> changes = new ArrayList<>();
+        try (Cursor cursor = database.query("SELECT c.itemId, i.id, i.color, i.runOutDay, i.viewHolderPosition "
+                + "FROM item_change_log c LEFT JOIN items i ON i.id = c.itemId")) {
+            while (cursor.moveToNext()) {
+                changes.add(new Change(cursor.getInt(0), cursor.isNull(1) == false,
+                        cursor.getInt(2), cursor.getLong(3), cursor.getLong(4)));
+            }
+        }
+        database.execSQL("DELETE FROM item_change_log");
+        return changes;
+    }
+}
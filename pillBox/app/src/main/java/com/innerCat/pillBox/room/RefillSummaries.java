@@ -0,0 +1,201 @@
+package com.innerCat.pillBox.room;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Keeps the refill_summary table up to date with SQLite triggers, so that reading the
+ * soonest expiring refill or the totals of an Item never has to scan its refills.
+ * Room has no way to declare triggers, so they are created here when the database
+ * is created or migrated.
+ */
+public class RefillSummaries {
+
+    /**
+     * The local day, as an epoch day, worked out from the wall clock of SQLite. It is only read by the
+     * triggers that the migrations before current_day install, until MIGRATION_12_13 replaces them.
+     */
+    private static final String CLOCK_TODAY_SQL = "CAST(julianday('now', 'localtime', 'start of day') - 2440587.5 AS INTEGER)";
+
+    private static final String COLUMNS = "itemId, asOfDay, soonestRefillId, soonestExpiryDate, "
+            + "soonestAmount, futureTotal, undatedTotal, expiredTotal";
+
+    /**
+     * Gets the columns of a refill_summary row, worked out from the refills of an item.
+     *
+     * @param itemId the sql for the id of the item
+     * @param today  the sql for the epoch day to work the totals out for
+     * @return the sql of the columns, in the order of COLUMNS
+     */
+    private static String summaryOf( String itemId, String today ) {
+        String soonest = "FROM refills WHERE itemId = " + itemId + " AND expires is 1 AND expiryDate >= " + today
+                + " ORDER BY expiryDate ASC, id ASC LIMIT 1";
+        return itemId + ", "
+                + today + ", "
+                + "(SELECT id " + soonest + "), "
+                + "(SELECT expiryDate " + soonest + "), "
+                + "IFNULL((SELECT amount " + soonest + "), 0), "
+                + "IFNULL((SELECT SUM(amount) FROM refills WHERE itemId = " + itemId
+                + " AND expires is 1 AND expiryDate >= " + today + "), 0), "
+                + "IFNULL((SELECT SUM(amount) FROM refills WHERE itemId = " + itemId + " AND expires is 0), 0), "
+                + "IFNULL((SELECT SUM(amount) FROM refills WHERE itemId = " + itemId
+                + " AND expires is 1 AND expiryDate < " + today + "), 0)";
+    }
+
+    /**
+     * Gets the statement that adds a refill to, or takes it from, the totals of the summary of its item.
+     * A refill falls in the totals as of the asOfDay of the summary, as summaryOf works them out.
+     *
+     * @param refill the sql for the refill row, NEW or OLD
+     * @param sign   "+" to add it, "-" to take it
+     * @return the sql of the statement
+     */
+    private static String addToTotals( String refill, String sign ) {
+        String amount = " THEN " + refill + ".amount ELSE 0 END";
+        return "UPDATE refill_summary SET "
+                + "futureTotal = futureTotal " + sign + " CASE WHEN " + refill + ".expires is 1 AND "
+                + refill + ".expiryDate >= asOfDay" + amount + ", "
+                + "undatedTotal = undatedTotal " + sign + " CASE WHEN " + refill + ".expires is 0" + amount + ", "
+                + "expiredTotal = expiredTotal " + sign + " CASE WHEN " + refill + ".expires is 1 AND "
+                + refill + ".expiryDate < asOfDay" + amount + " "
+                + "WHERE itemId = " + refill + ".itemId";
+    }
+
+    /**
+     * Gets the statement that starts an empty summary, as of today, for the item of a refill,
+     * if the item exists and has no summary yet.
+     *
+     * @param refill the sql for the refill row, NEW
+     * @param today  the sql for the epoch day of today
+     * @return the sql of the statement
+     */
+    private static String startSummaryOf( String refill, String today ) {
+        return "INSERT OR IGNORE INTO refill_summary (" + COLUMNS + ") "
+                + "SELECT " + refill + ".itemId, " + today + ", NULL, NULL, 0, 0, 0, 0 "
+                + "WHERE EXISTS (SELECT 1 FROM items WHERE id = " + refill + ".itemId)";
+    }
+
+    /**
+     * Gets the statement that makes a refill the soonest of its item, if it is in the future and
+     * expires before the soonest so far, or on the same day with a lower id, as summaryOf orders them.
+     *
+     * @param refill the sql for the refill row, NEW
+     * @return the sql of the statement
+     */
+    private static String offerSoonest( String refill ) {
+        return "UPDATE refill_summary SET soonestRefillId = " + refill + ".id, "
+                + "soonestExpiryDate = " + refill + ".expiryDate, soonestAmount = " + refill + ".amount "
+                + "WHERE itemId = " + refill + ".itemId "
+                + "AND " + refill + ".expires is 1 AND " + refill + ".expiryDate >= asOfDay "
+                + "AND (soonestRefillId IS NULL OR " + refill + ".expiryDate < soonestExpiryDate "
+                + "OR (" + refill + ".expiryDate = soonestExpiryDate AND " + refill + ".id < soonestRefillId))";
+    }
+
+    /**
+     * Gets the statement that looks up the soonest refill of the item of a refill again, only if that
+     * refill was the soonest. It is a single step down the (itemId, expires, expiryDate) index.
+     *
+     * @param refill the sql for the refill row, OLD
+     * @return the sql of the statement
+     */
+    private static String replaceSoonest( String refill ) {
+        String soonest = "FROM refills WHERE itemId = " + refill + ".itemId AND expires is 1 "
+                + "AND expiryDate >= refill_summary.asOfDay ORDER BY expiryDate ASC, id ASC LIMIT 1";
+        return "UPDATE refill_summary SET "
+                + "soonestRefillId = (SELECT id " + soonest + "), "
+                + "soonestExpiryDate = (SELECT expiryDate " + soonest + "), "
+                + "soonestAmount = IFNULL((SELECT amount " + soonest + "), 0) "
+                + "WHERE itemId = " + refill + ".itemId AND soonestRefillId = " + refill + ".id";
+    }
+
+    /**
+     * Creates the triggers that keep refill_summary up to date, reading today from current_day.
+     * They add and take the amount of the changed refill from the totals, and only look up the
+     * soonest refill again when the refill that changed was the soonest, so that each changed row
+     * costs the same however many refills the item has.
+     *
+     * @param database the database
+     */
+    public static void createTriggers( SupportSQLiteDatabase database ) {
+        createTriggers(database, CurrentDays.TODAY_SQL);
+    }
+
+    /**
+     * Creates the triggers that keep refill_summary up to date, reading today from the wall clock of SQLite,
+     * for the migrations that run before the current_day table is added.
+     *
+     * @param database the database
+     */
+    public static void createClockTriggers( SupportSQLiteDatabase database ) {
+        createTriggers(database, CLOCK_TODAY_SQL);
+    }
+
+    /**
+     * Creates the triggers that keep refill_summary up to date.
+     *
+     * @param database the database
+     * @param today    the sql for the epoch day of today, that new summaries are worked out as of
+     */
+    private static void createTriggers( SupportSQLiteDatabase database, String today ) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `refill_summary_after_refill_insert` "
+                + "AFTER INSERT ON refills BEGIN "
+                + startSummaryOf("NEW", today) + "; "
+                + addToTotals("NEW", "+") + "; "
+                + offerSoonest("NEW") + "; "
+                + "END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `refill_summary_after_refill_update` "
+                + "AFTER UPDATE OF itemId, amount, expiryDate, expires ON refills BEGIN "
+                + addToTotals("OLD", "-") + "; "
+                + startSummaryOf("NEW", today) + "; "
+                + addToTotals("NEW", "+") + "; "
+                + replaceSoonest("OLD") + "; "
+                + offerSoonest("NEW") + "; "
+                + "END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `refill_summary_after_refill_delete` "
+                + "AFTER DELETE ON refills BEGIN "
+                + addToTotals("OLD", "-") + "; "
+                + replaceSoonest("OLD") + "; "
+                + "END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `refill_summary_after_item_delete` "
+                + "AFTER DELETE ON items BEGIN "
+                + "DELETE FROM refill_summary WHERE itemId = OLD.id; "
+                + "END");
+    }
+
+    /**
+     * Drops the refill triggers, so that they can be created again when they change.
+     *
+     * @param database the database
+     */
+    public static void dropTriggers( SupportSQLiteDatabase database ) {
+        database.execSQL("DROP TRIGGER IF EXISTS `refill_summary_after_refill_insert`");
+        database.execSQL("DROP TRIGGER IF EXISTS `refill_summary_after_refill_update`");
+        database.execSQL("DROP TRIGGER IF EXISTS `refill_summary_after_refill_delete`");
+    }
+
+    /**
+     * Works out the summaries of every item that has refills, for when the table is first created.
+     *
+     * @param database the database
+     * @param today    the epoch day of today
+     */
+    public static void fill( SupportSQLiteDatabase database, long today ) {
+        database.execSQL("INSERT OR REPLACE INTO refill_summary (" + COLUMNS + ") "
+                        + "SELECT " + summaryOf("items.id", "?1") + " FROM items "
+                        + "WHERE EXISTS (SELECT 1 FROM refills WHERE itemId = items.id)",
+                new Object[]{ today });
+    }
+
+    /**
+     * Rolls the summaries that were worked out before today forward to today, moving the
+     * refills that have since expired from the future total to the expired total.
+     *
+     * @param database the database
+     * @param today    the epoch day of today
+     */
+    public static void rollForward( SupportSQLiteDatabase database, long today ) {
+        database.execSQL("INSERT OR REPLACE INTO refill_summary (" + COLUMNS + ") "
+                        + "SELECT " + summaryOf("s.itemId", "?1") + " FROM refill_summary s "
+                        + "WHERE s.asOfDay < ?1",
+                new Object[]{ today });
+    }
+}
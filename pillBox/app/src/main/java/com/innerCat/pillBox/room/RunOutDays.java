@@ -0,0 +1,112 @@
+package com.innerCat.pillBox.room;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.innerCat.pillBox.objects.DoseEvent;
+import com.innerCat.pillBox.objects.Item;
+
+/**
+ * Keeps the runOutDay column of the items up to date with SQLite triggers, so that the home grid
+ * can be sorted and filtered by the day each Item runs out with an index instead of working it out per row.
+ * Auto decrementing Items run out on a day that follows in closed form from their stock and schedule.
+ * Other Items are projected from how many were taken over the last USAGE_DAYS days, so their day
+ * is worked out again for every Item in one statement at the start of each day.
+ */
+public class RunOutDays {
+
+    /**
+     * The number of days of taken doses that the usage of an Item is estimated from
+     */
+    public static final int USAGE_DAYS = 28;
+
+    /**
+     * Gets the run out day of the Item being updated.
+     * It is the same formula as Item.getAutoDecRunOutDay for auto decrementing Items.
+     *
+     * @param today       the sql for the epoch day of today
+     * @param sinceSecond the sql for the start of the usage window, in seconds since the epoch
+     * @return the sql of the run out day
+     */
+    private static String runOutDayOf( String today, String sinceSecond ) {
+        String taken = "(SELECT -SUM(e.delta) FROM dose_events e WHERE e.itemId = items.id "
+                + "AND e.epochSecond >= " + sinceSecond + " AND e.delta < 0 "
+                + "AND e.source IN (" + DoseEvent.SOURCE_APP + ", " + DoseEvent.SOURCE_WIDGET + "))";
+        return "CASE "
+                + "WHEN autoDecStartDate IS NOT NULL THEN "
+                + "CASE WHEN autoDecPerDay > 0 AND autoDecNDays > 0 "
+                + "THEN autoDecStartDate + ((max(rawStock, 0) + autoDecPerDay - 1) / autoDecPerDay) * autoDecNDays "
+                + "ELSE " + Item.RUN_OUT_NEVER + " END "
+                + "WHEN rawStock <= 0 THEN " + today + " "
+                + "ELSE IFNULL(" + today + " + (rawStock * " + USAGE_DAYS + ") / " + taken + ", " + Item.RUN_OUT_NEVER + ") "
+                + "END";
+    }
+
+    /**
+     * Gets the statement that works out the run out day of an item again.
+     *
+     * @param itemId the sql for the id of the item
+     * @return the sql of the statement
+     */
+    private static String refreshRunOutDayOf( String itemId ) {
+        return "UPDATE items SET runOutDay = " + runOutDayOf(CurrentDays.TODAY_SQL, CurrentDays.USAGE_SINCE_SQL) + " "
+                + "WHERE id = " + itemId;
+    }
+
+    /**
+     * Creates the triggers that keep the runOutDay of the items up to date, whenever an Item
+     * is added, its stock or auto decrement changes, or a dose of it is logged.
+     *
+     * @param database the database
+     */
+    public static void createTriggers( SupportSQLiteDatabase database ) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `run_out_day_after_item_insert` "
+                + "AFTER INSERT ON items BEGIN "
+                + refreshRunOutDayOf("NEW.id") + "; "
+                + "END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `run_out_day_after_item_update` "
+                + "AFTER UPDATE OF rawStock, autoDecStartDate, autoDecPerDay, autoDecNDays ON items BEGIN "
+                + refreshRunOutDayOf("NEW.id") + "; "
+                + "END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `run_out_day_after_dose_insert` "
+                + "AFTER INSERT ON dose_events BEGIN "
+                + refreshRunOutDayOf("NEW.itemId") + "; "
+                + "END");
+    }
+
+    /**
+     * Drops the triggers, so that they can be created again when they change.
+     *
+     * @param database the database
+     */
+    public static void dropTriggers( SupportSQLiteDatabase database ) {
+        database.execSQL("DROP TRIGGER IF EXISTS `run_out_day_after_item_insert`");
+        database.execSQL("DROP TRIGGER IF EXISTS `run_out_day_after_item_update`");
+        database.execSQL("DROP TRIGGER IF EXISTS `run_out_day_after_dose_insert`");
+    }
+
+    /**
+     * Works out the run out day of every item, for when the column is first added.
+     *
+     * @param database    the database
+     * @param today       the epoch day of today
+     * @param sinceSecond the start of the usage window, in seconds since the epoch
+     */
+    public static void fill( SupportSQLiteDatabase database, long today, long sinceSecond ) {
+        database.execSQL("UPDATE items SET runOutDay = " + runOutDayOf("?1", "?2"),
+                new Object[]{ today, sinceSecond });
+    }
+
+    /**
+     * Works out the run out day of every Item that isn't auto decremented, in one statement,
+     * as their projection moves with the day. The auto decrementing Items don't depend on the day.
+     *
+     * @param database    the database
+     * @param today       the epoch day of today
+     * @param sinceSecond the start of the usage window, in seconds since the epoch
+     */
+    public static void refresh( SupportSQLiteDatabase database, long today, long sinceSecond ) {
+        database.execSQL("UPDATE items SET runOutDay = " + runOutDayOf("?1", "?2") + " "
+                        + "WHERE autoDecStartDate IS NULL",
+                new Object[]{ today, sinceSecond });
+    }
+}
@@ -0,0 +1,112 @@
+package com.innerCat.pillBox.util;
+
+import android.content.Context;
+
+import androidx.core.content.ContextCompat;
+
+import com.innerCat.pillBox.R;
+import com.innerCat.pillBox.factories.ColorFactory;
+
+/**
+ * The colors that cards are bound with, resolved from the theme once instead of on every bind.
+ * The activities are recreated on a configuration change, so resolving the palette in onCreate
+ * resolves it again whenever the theme, e.g. night mode, changes.
+ */
+public final class ColorPalette {
+
+    private final int primaryColor;
+    private final int primaryDarkColor;
+    private final int textColor;
+    private final int colorOnCard;
+    private final int autoDecBgColor;
+    private final int autoDecBorderColor;
+
+    /**
+     * Instantiates a new Color palette.
+     *
+     * @param primaryColor       the primary color
+     * @param primaryDarkColor   the primary dark color
+     * @param textColor          the text color of the theme
+     * @param colorOnCard        the background color of a card
+     * @param autoDecBgColor     the background color of an auto decrementing card
+     * @param autoDecBorderColor the border color of an auto decrementing card
+     */
+    public ColorPalette( int primaryColor, int primaryDarkColor, int textColor,
+                         int colorOnCard, int autoDecBgColor, int autoDecBorderColor ) {
+        this.primaryColor = primaryColor;
+        this.primaryDarkColor = primaryDarkColor;
+        this.textColor = textColor;
+        this.colorOnCard = colorOnCard;
+        this.autoDecBgColor = autoDecBgColor;
+        this.autoDecBorderColor = autoDecBorderColor;
+    }
+
+    /**
+     * Resolves the palette from the theme of a context.
+     *
+     * @param context the themed context, e.g. the activity
+     * @return the palette
+     */
+    public static ColorPalette resolve( Context context ) {
+        return new ColorPalette(ContextCompat.getColor(context, R.color.primaryColor),
+                ContextCompat.getColor(context, R.color.primaryDarkColor),
+                ColorFactory.getDefaultTextColor(context),
+                ColorFactory.getAttrColor(context, R.attr.colorOnCard),
+                ColorFactory.getAttrColor(context, R.attr.autoDecBgColor),
+                ColorFactory.getAttrColor(context, R.attr.autoDecBorderColor));
+    }
+
+    /**
+     * Gets primary color.
+     *
+     * @return the primary color, that low stock and close expiries are shown in
+     */
+    public int getPrimaryColor() {
+        return primaryColor;
+    }
+
+    /**
+     * Gets primary dark color.
+     *
+     * @return the primary dark color
+     */
+    public int getPrimaryDarkColor() {
+        return primaryDarkColor;
+    }
+
+    /**
+     * Gets text color.
+     *
+     * @return the text color of the theme
+     */
+    public int getTextColor() {
+        return textColor;
+    }
+
+    /**
+     * Gets color on card.
+     *
+     * @return the background color of a card
+     */
+    public int getColorOnCard() {
+        return colorOnCard;
+    }
+
+    /**
+     * Gets auto dec bg color.
+     *
+     * @return the background color of an auto decrementing card
+     */
+    public int getAutoDecBgColor() {
+        return autoDecBgColor;
+    }
+
+    /**
+     * Gets auto dec border color.
+     *
+     * @return the border color of an auto decrementing card
+     */
+    public int getAutoDecBorderColor() {
+        return autoDecBorderColor;
+    }
+}
@@ -0,0 +1,113 @@
+package com.innerCat.pillBox.util;
+
+import com.innerCat.pillBox.objects.Item;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sparse ordering keys for Items, stored in their viewHolderPosition.
+ * Neighbouring items are ranked GAP apart, so an item can be moved by giving it a rank between
+ * its new neighbours without renumbering the rest of the list. The list is only rebalanced when
+ * there is no gap left between the neighbours.
+ */
+public class Ranks {
+
+    /**
+     * The gap left between the ranks of neighbouring items
+     */
+    public static final int GAP = 1 << 10;
+
+    /**
+     * Ranks the item at index between its neighbours, after it has been moved or inserted there.
+     * The other items in the list must already be in ascending order of rank.
+     *
+     * @param items the items, in display order
+     * @param index the index of the moved item
+     * @return the items whose ranks changed. This is just the moved item unless the list had to be rebalanced
+     */
+    public static List<Item> rankItemAt( List<Item> items, int index ) {
+        Item moved = items.get(index);
+        Item before = index > 0 ? items.get(index - 1) : null;
+        Item after = index < items.size() - 1 ? items.get(index + 1) : null;
+        if (rankBetween(moved, before, after)) {
+            return Collections.singletonList(moved);
+        }
+        return rebalance(items);
+    }
+
+    /**
+     * Ranks an item between two neighbours, if there is a gap between them.
+     *
+     * @param moved  the item to rank
+     * @param before the item before it, or null if it is first
+     * @param after  the item after it, or null if it is last
+     * @return whether the item was ranked. If not, the ranks need to be rebalanced
+     */
+    public static boolean rankBetween( Item moved, Item before, Item after ) {
+        long rank;
+        if (before != null && after != null) {
+            rank = before.getViewHolderPosition()
+                    + ((long) after.getViewHolderPosition() - before.getViewHolderPosition()) / 2;
+        } else if (before != null) {
+            rank = (long) before.getViewHolderPosition() + GAP;
+        } else if (after != null) {
+            rank = (long) after.getViewHolderPosition() - GAP;
+        } else {
+            rank = 0;
+        }
+
+        boolean fits = (before == null || rank > before.getViewHolderPosition())
+                && (after == null || rank < after.getViewHolderPosition())
+                && rank >= Integer.MIN_VALUE && rank <= Integer.MAX_VALUE;
+        if (fits) {
+            moved.setViewHolderPosition((int) rank);
+        }
+        return fits;
+    }
+
+    /**
+     * Whether there is a rank left for a new item before all the items. If not, the items
+     * have to be rebalanced before it is added.
+     *
+     * @param firstRank the rank of the first item, or null if there are no items
+     * @return whether there is a rank before the first item
+     */
+    public static boolean hasRankBefore( Integer firstRank ) {
+        return firstRank == null || firstRank > Integer.MIN_VALUE;
+    }
+
+    /**
+     * Gets the rank for a new item that is added before all the items.
+     * The rank is clamped at the lowest rank, so check hasRankBefore first.
+     *
+     * @param firstRank the rank of the first item, or null if there are no items
+     * @return the rank for the new item
+     */
+    public static int rankBefore( Integer firstRank ) {
+        if (firstRank == null) {
+            return 0;
+        }
+        return (int) Math.max(Integer.MIN_VALUE, (long) firstRank - GAP);
+    }
+
+    /**
+     * Ranks all the items GAP apart, in their current order.
+     *
+     * @param items the items, in display order
+     * @return the items whose ranks changed
+     */
+    public static List<Item> rebalance( List<Item> items ) {
+        List<Item> updated = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            int rank = i * GAP;
+            if (item.getViewHolderPosition() != rank) {
+                item.setViewHolderPosition(rank);
+                updated.add(item);
+            }
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,127 @@
+package com.innerCat.pillBox.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.innerCat.pillBox.R;
+import com.innerCat.pillBox.factories.SharedPreferencesFactory;
+
+/**
+ * The settings that change how items are shown, read once and kept for the whole process.
+ * The snapshot is immutable, and is only read again when a shared preference changes,
+ * so binding an item or a widget cell never reads the shared preferences.
+ */
+public final class SettingsSnapshot {
+
+    private static volatile SettingsSnapshot current = null;
+    //the shared preferences only hold weak references to their listeners, so it is kept here
+    private static SharedPreferences.OnSharedPreferenceChangeListener listener = null;
+
+    private final int stockThreshold;
+    private final int warningDayThreshold;
+    private final int redDayThreshold;
+    private final int runningOutDayThreshold;
+    private final boolean showTime;
+
+    /**
+     * Instantiates a new Settings snapshot.
+     *
+     * @param stockThreshold         the stock threshold
+     * @param warningDayThreshold    the warning day threshold
+     * @param redDayThreshold        the red day threshold
+     * @param runningOutDayThreshold the running out day threshold
+     * @param showTime               whether to show the time a pill was taken
+     */
+    public SettingsSnapshot( int stockThreshold, int warningDayThreshold, int redDayThreshold,
+                             int runningOutDayThreshold, boolean showTime ) {
+        this.stockThreshold = stockThreshold;
+        this.warningDayThreshold = warningDayThreshold;
+        this.redDayThreshold = redDayThreshold;
+        this.runningOutDayThreshold = runningOutDayThreshold;
+        this.showTime = showTime;
+    }
+
+    /**
+     * Gets the current settings. The first call reads them and starts listening for changes,
+     * after that it never reads the shared preferences.
+     *
+     * @param context the context
+     * @return the current settings
+     */
+    public static SettingsSnapshot get( Context context ) {
+        SettingsSnapshot snapshot = current;
+        if (snapshot == null) {
+            synchronized (SettingsSnapshot.class) {
+                if (current == null) {
+                    Context appContext = context.getApplicationContext();
+                    listener = ( sharedPreferences, key ) -> current = read(appContext);
+                    SharedPreferencesFactory.getSP(appContext).registerOnSharedPreferenceChangeListener(listener);
+                    current = read(appContext);
+                }
+                snapshot = current;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads the settings from the shared preferences.
+     *
+     * @param context the context
+     * @return the settings
+     */
+    public static SettingsSnapshot read( Context context ) {
+        boolean showTime = SharedPreferencesFactory.getSP(context)
+                .getBoolean(context.getString(R.string.sp_show_time), false);
+        return new SettingsSnapshot(Thresholds.getStockThreshold(context),
+                Thresholds.getWarningDayThreshold(context),
+                Thresholds.getRedDayThreshold(context),
+                Thresholds.getRunningOutDayThreshold(context),
+                showTime);
+    }
+
+    /**
+     * Gets stock threshold.
+     *
+     * @return the stock level at and below which the stock turns red
+     */
+    public int getStockThreshold() {
+        return stockThreshold;
+    }
+
+    /**
+     * Gets warning day threshold.
+     *
+     * @return the days until expiry at and below which the expiry is shown
+     */
+    public int getWarningDayThreshold() {
+        return warningDayThreshold;
+    }
+
+    /**
+     * Gets red day threshold.
+     *
+     * @return the days until expiry at and below which the expiry turns red
+     */
+    public int getRedDayThreshold() {
+        return redDayThreshold;
+    }
+
+    /**
+     * Gets running out day threshold.
+     *
+     * @return the days of stock left at and below which an item is running out soon
+     */
+    public int getRunningOutDayThreshold() {
+        return runningOutDayThreshold;
+    }
+
+    /**
+     * Gets show time.
+     *
+     * @return whether to show the time a pill was taken
+     */
+    public boolean getShowTime() {
+        return showTime;
+    }
+}
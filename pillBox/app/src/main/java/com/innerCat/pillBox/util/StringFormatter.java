@@ -1,54 +1,147 @@
 package com.innerCat.pillBox.util;
 
-import static java.time.temporal.ChronoUnit.DAYS;
-
-import android.content.Context;
-
-import com.innerCat.pillBox.R;
-import com.innerCat.pillBox.factories.SharedPreferencesFactory;
-import com.innerCat.pillBox.objects.Item;
 import com.innerCat.pillBox.objects.Refill;
 
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 
 public class StringFormatter {
 
     /**
-     * Gets last taken text.
+     * The pattern of the time a pill was taken, e.g "9:41am"
+     */
+    private static final String TIME_PATTERN = "h:mma";
+    /**
+     * The number of days ahead or ago that texts are kept for, further ones are made on every call
+     */
+    private static final int MAX_CACHED_DAYS = 366;
+    /**
+     * The refill amounts that expiry texts are kept for, bigger ones are made on every call
+     */
+    private static final int MAX_CACHED_AMOUNT = 256;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * The texts made so far on one day, so that binding the same text again doesn't allocate.
+     * The texts only depend on the day delta, not on the day itself, but they are dropped at midnight
+     * so that the lazily filled tables only ever hold the texts of a single day. They are dropped
+     * along with the time format when the locale changes, too.
+     * A text is immutable, so two threads filling the same slot at once only make it twice.
+     */
+    private static final class Texts {
+        private final long epochDay;
+        private final Locale locale;
+        private final DateTimeFormatter timeFormatter;
+        //[autoDec][days ago]
+        private final String[][] lastTaken = new String[2][MAX_CACHED_DAYS];
+        //[autoDec][today or yesterday][minute of the day], the rows are made when first needed
+        private final String[][][] lastTakenAt = new String[2][2][];
+        //[days till expiry][amount], the rows are made when first needed
+        private final String[][] expiry = new String[MAX_CACHED_DAYS][];
+
+        private Texts( long epochDay, Locale locale ) {
+            this.epochDay = epochDay;
+            this.locale = locale;
+            this.timeFormatter = DateTimeFormatter.ofPattern(TIME_PATTERN, locale);
+        }
+    }
+
+    private static volatile Texts texts = new Texts(Long.MIN_VALUE, Locale.getDefault(Locale.Category.FORMAT));
+
+    /**
+     * Gets the texts of a day in the current locale, starting new ones when the day or the locale has changed.
+     *
+     * @param today the epoch day of today
+     * @return the texts
+     */
+    private static Texts texts( long today ) {
+        Texts current = texts;
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        if (current.epochDay != today || current.locale.equals(locale) == false) {
+            current = new Texts(today, locale);
+            texts = current;
+        }
+        return current;
+    }
+
+    /**
+     * Gets last taken text. The texts are kept by day delta, auto decrement and minute,
+     * so after the first time it doesn't allocate.
+     *
+     * @param lastUsed       the day it was last taken, or null
+     * @param lastUsedTime   the time it was last taken, or null
+     * @param autoDec        whether it is auto decremented
+     * @param today          the epoch day of today
+     * @param shouldShowTime whether to show the time it was taken, if it was taken today or yesterday
+     * @return the last taken text
+     */
+    public static String getLastTakenText(LocalDate lastUsed, LocalTime lastUsedTime, boolean autoDec,
+                                          long today, boolean shouldShowTime) {
+        if (lastUsed == null) {
+            return "";
+        }
+        long daysBetween = today - lastUsed.toEpochDay();
+        Texts current = texts(today);
+        if (daysBetween < 0 || daysBetween >= MAX_CACHED_DAYS) {
+            return makeLastTakenText((int) daysBetween, lastUsedTime, autoDec, shouldShowTime, current.timeFormatter);
+        }
+        int autoDecIndex = autoDec ? 1 : 0;
+        int days = (int) daysBetween;
+        if (days <= 1 && shouldShowTime && lastUsedTime != null) {
+            String[] row = current.lastTakenAt[autoDecIndex][days];
+            if (row == null) {
+                row = new String[MINUTES_PER_DAY];
+                current.lastTakenAt[autoDecIndex][days] = row;
+            }
+            int minute = lastUsedTime.getHour() * 60 + lastUsedTime.getMinute();
+            String text = row[minute];
+            if (text == null) {
+                text = makeLastTakenText(days, lastUsedTime, autoDec, true, current.timeFormatter);
+                row[minute] = text;
+            }
+            return text;
+        }
+        String text = current.lastTaken[autoDecIndex][days];
+        if (text == null) {
+            text = makeLastTakenText(days, null, autoDec, false, current.timeFormatter);
+            current.lastTaken[autoDecIndex][days] = text;
+        }
+        return text;
+    }
+
+    /**
+     * Makes last taken text.
      *
-     * @param item the item
+     * @param daysBetween    the days since it was last taken
+     * @param lastUsedTime   the time it was last taken, or null
+     * @param autoDec        whether it is auto decremented
+     * @param shouldShowTime whether to show the time it was taken, if it was taken today or yesterday
+     * @param timeFormatter  the format of the time, in the current locale
+     * @return the last taken text
      */
-    public static String getLastTakenText(Context context, Item item) {
-        LocalDate lastUsed = item.getLastUsed();
-        if (lastUsed != null) {
-            int daysBetween = (int) DAYS.between(lastUsed, LocalDate.now());
-            StringBuilder sb = new StringBuilder();
-            if (item.isAutoDec()) {
-                sb.append("Last manually taken ");
-            } else {
-                sb.append("Last taken ");
+    private static String makeLastTakenText(int daysBetween, LocalTime lastUsedTime, boolean autoDec,
+                                            boolean shouldShowTime, DateTimeFormatter timeFormatter) {
+        StringBuilder sb = new StringBuilder();
+        if (autoDec) {
+            sb.append("Last manually taken ");
+        } else {
+            sb.append("Last taken ");
+        }
+        if (daysBetween <= 1) {
+            if (daysBetween == 0) {
+                sb.append("today");
+            } else if (daysBetween == 1) {
+                sb.append("yesterday");
             }
-            if (daysBetween <= 1) {
-                if (daysBetween == 0) {
-                    sb.append("today");
-                } else if (daysBetween == 1) {
-                    sb.append("yesterday");
-                }
-                boolean shouldShowTime = SharedPreferencesFactory.getSP(context)
-                        .getBoolean(context.getString(R.string.sp_show_time), false);
-                if (shouldShowTime && item.getLastUsedTime() != null) {
-                    sb.append(" at ").append(item.getLastUsedTime()
-                            .format(DateTimeFormatter.ofPattern("h:mma")).toLowerCase());
-                    System.out.println("WINNOW SB: " + sb.toString());
-                }
-            } else {
-                sb.append(daysBetween).append(" days ago");
+            if (shouldShowTime && lastUsedTime != null) {
+                sb.append(" at ").append(lastUsedTime.format(timeFormatter).toLowerCase());
             }
-            return sb.toString();
         } else {
-            return "";
+            sb.append(daysBetween).append(" days ago");
         }
+        return sb.toString();
     }
 
 
@@ -69,13 +162,50 @@ public class StringFormatter {
      * @return the expiry text
      */
     public static String getExpiryText(Refill refill) {
-        long daysTillExpiry = DAYS.between(LocalDate.now(), refill.getExpiryDate());
+        long daysTillExpiry = refill.getExpiryDate().toEpochDay() - Today.epochDay();
+        return getExpiryText(refill.getAmount(), daysTillExpiry);
+    }
+
+    /**
+     * Gets expiry text. The texts are kept by days and amount, so after the first time it doesn't allocate.
+     *
+     * @param amount         the amount expiring
+     * @param daysTillExpiry the days till it expires
+     * @return the expiry text
+     */
+    public static String getExpiryText(int amount, long daysTillExpiry) {
+        if (daysTillExpiry < 0 || daysTillExpiry >= MAX_CACHED_DAYS || amount < 0 || amount >= MAX_CACHED_AMOUNT) {
+            return makeExpiryText(amount, daysTillExpiry);
+        }
+        Texts current = texts(Today.epochDay());
+        int days = (int) daysTillExpiry;
+        String[] row = current.expiry[days];
+        if (row == null) {
+            row = new String[MAX_CACHED_AMOUNT];
+            current.expiry[days] = row;
+        }
+        String text = row[amount];
+        if (text == null) {
+            text = makeExpiryText(amount, daysTillExpiry);
+            row[amount] = text;
+        }
+        return text;
+    }
+
+    /**
+     * Makes expiry text.
+     *
+     * @param amount         the amount expiring
+     * @param daysTillExpiry the days till it expires
+     * @return the expiry text
+     */
+    private static String makeExpiryText(int amount, long daysTillExpiry) {
         if (daysTillExpiry == 0) {
-            return refill.getAmount() + " expiring today";
+            return amount + " expiring today";
         } else if (daysTillExpiry == 1) {
-            return refill.getAmount() + " expiring tomorrow";
+            return amount + " expiring tomorrow";
         } else {
-            return refill.getAmount() + " expiring in " + daysTillExpiry + " days";
+            return amount + " expiring in " + daysTillExpiry + " days";
         }
     }
 }
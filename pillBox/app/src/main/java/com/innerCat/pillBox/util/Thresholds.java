@@ -46,4 +46,17 @@ public class Thresholds {
                 .getString(context.getString(R.string.sp_red_day_threshold), null);
         return Converters.getIntFromStringSharedPreferences(context, redDayThresholdString, defaultRedDayThreshold);
     }
+
+    /**
+     * Gets running out day threshold.
+     *
+     * @param context the context
+     * @return the number of days of stock left when an item is running out soon
+     */
+    public static int getRunningOutDayThreshold(Context context) {
+        int defaultRunningOutDayThreshold = context.getResources().getInteger(R.integer.default_running_out_day_threshold);
+        String runningOutDayThresholdString = SharedPreferencesFactory.getSP(context)
+                .getString(context.getString(R.string.sp_running_out_day_threshold), null);
+        return Converters.getIntFromStringSharedPreferences(context, runningOutDayThresholdString, defaultRunningOutDayThreshold);
+    }
 }
@@ -0,0 +1,37 @@
+package com.innerCat.pillBox.util;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+
+/**
+ * Moves Today to the new time zone when the user changes it or travels, so that the cached day
+ * doesn't stay in the zone the app was started in.
+ */
+public class TimeZoneChangedReceiver extends BroadcastReceiver {
+
+    /**
+     * The extra with the id of the new time zone
+     */
+    private static final String EXTRA_TIME_ZONE = "time-zone";
+
+    @Override
+    public void onReceive( Context context, Intent intent ) {
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction()) == false) {
+            return;
+        }
+        //the default time zone of the process may not have been updated yet, so the zone of the broadcast is preferred
+        ZoneId zone = ZoneId.systemDefault();
+        String zoneId = intent.getStringExtra(EXTRA_TIME_ZONE);
+        if (zoneId != null) {
+            try {
+                zone = ZoneId.of(zoneId);
+            } catch (DateTimeException ignored) {
+            }
+        }
+        Today.onTimeZoneChanged(zone);
+    }
+}
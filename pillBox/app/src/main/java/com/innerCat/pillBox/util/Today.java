@@ -0,0 +1,142 @@
+package com.innerCat.pillBox.util;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The current day, read through a replaceable Clock and cached until midnight, or until the time zone changes.
+ * Reading the day is then a comparison against the cached bounds instead of working out
+ * a LocalDate from the time zone rules, which matters as it is read on every bind.
+ * Tests can set a fixed or offset Clock to move through days.
+ * The system clock is replaced by one in the new default time zone by onTimeZoneChanged.
+ */
+public class Today {
+
+    /**
+     * A day in a time zone, as an epoch day, with the bounds of the day in epoch milliseconds
+     */
+    private static final class Day {
+        private final ZoneId zone;
+        private final long epochDay;
+        private final long startMillis;
+        private final long endMillis;
+
+        private Day( ZoneId zone, long epochDay, long startMillis, long endMillis ) {
+            this.zone = zone;
+            this.epochDay = epochDay;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+    }
+
+    private static volatile Clock clock = Clock.system(ZoneId.systemDefault());
+    //whether the clock was set by a test, and so isn't replaced when the time zone changes
+    private static volatile boolean clockSet = false;
+    private static volatile Day cached = null;
+    //how many times the day has been worked out from the time zone rules
+    private static final AtomicInteger dayLookups = new AtomicInteger();
+
+    /**
+     * Gets the clock.
+     *
+     * @return the clock
+     */
+    public static Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Sets the clock, for tests. The cached day is worked out again on the next read.
+     *
+     * @param newClock the clock
+     */
+    public static void setClock( Clock newClock ) {
+        clock = newClock;
+        clockSet = true;
+        cached = null;
+    }
+
+    /**
+     * Sets the clock back to the system clock in the default time zone.
+     */
+    public static void resetClock() {
+        clock = Clock.system(ZoneId.systemDefault());
+        clockSet = false;
+        cached = null;
+    }
+
+    /**
+     * Follows a change of the time zone, unless a test has set the clock.
+     * The system clock keeps the zone it was made with, so it is replaced.
+     *
+     * @param zone the new time zone
+     */
+    public static void onTimeZoneChanged( ZoneId zone ) {
+        if (clockSet == false) {
+            clock = Clock.system(zone);
+            cached = null;
+        }
+    }
+
+    /**
+     * Gets how many times the day has been worked out from the time zone rules, rather than read from the cache.
+     *
+     * @return the number of lookups
+     */
+    public static int getDayLookups() {
+        return dayLookups.get();
+    }
+
+    /**
+     * Gets today as an epoch day.
+     *
+     * @return the epoch day of today
+     */
+    public static long epochDay() {
+        Clock current = clock;
+        Day day = cached;
+        long now = current.millis();
+        if (day == null || day.zone.equals(current.getZone()) == false
+                || now < day.startMillis || now >= day.endMillis) {
+            day = dayAt(current);
+            cached = day;
+        }
+        return day.epochDay;
+    }
+
+    /**
+     * Gets today.
+     *
+     * @return the date of today
+     */
+    public static LocalDate date() {
+        return LocalDate.ofEpochDay(epochDay());
+    }
+
+    /**
+     * Gets the time now.
+     *
+     * @return the time now
+     */
+    public static LocalTime time() {
+        return LocalTime.now(clock);
+    }
+
+    /**
+     * Works out the day a clock is in.
+     *
+     * @param clock the clock
+     * @return the day
+     */
+    private static Day dayAt( Clock clock ) {
+        dayLookups.incrementAndGet();
+        ZoneId zone = clock.getZone();
+        LocalDate date = LocalDate.now(clock);
+        long startMillis = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        long endMillis = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        return new Day(zone, date.toEpochDay(), startMillis, endMillis);
+    }
+}
@@ -12,10 +12,11 @@ import androidx.core.content.ContextCompat;
 
 import com.innerCat.pillBox.R;
 import com.innerCat.pillBox.factories.DatabaseFactory;
-import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.objects.WidgetItem;
 import com.innerCat.pillBox.room.Database;
+import com.innerCat.pillBox.util.SettingsSnapshot;
 import com.innerCat.pillBox.util.StringFormatter;
-import com.innerCat.pillBox.util.Thresholds;
+import com.innerCat.pillBox.util.Today;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -23,7 +24,29 @@ import java.util.List;
 
 public class DataProvider implements RemoteViewsService.RemoteViewsFactory {
 
-    List<Item> items = new ArrayList<>();
+    /**
+     * A widget cell, worked out in onDataSetChanged so that getViewAt only has to copy it into RemoteViews
+     */
+    private static final class Cell {
+        private final int id;
+        private final String name;
+        private final CharSequence stockText;
+        private final String lastTakenText;
+        private final int backgroundResource;
+        private final Intent fillInIntent;
+
+        private Cell( int id, String name, CharSequence stockText, String lastTakenText,
+                      int backgroundResource, Intent fillInIntent ) {
+            this.id = id;
+            this.name = name;
+            this.stockText = stockText;
+            this.lastTakenText = lastTakenText;
+            this.backgroundResource = backgroundResource;
+            this.fillInIntent = fillInIntent;
+        }
+    }
+
+    List<Cell> cells = new ArrayList<>();
     Database database;
     Context context;
 
@@ -33,15 +56,45 @@ public class DataProvider implements RemoteViewsService.RemoteViewsFactory {
 
     @Override
     public void onCreate() {
-        database = DatabaseFactory.create(context);
+        database = DatabaseFactory.getInstance(context);
     }
 
     /**
-     * When the dataset is changed
+     * When the dataset is changed. The widget items are loaded in a single narrow query, and the text of every cell is worked out here, on the widget's binder thread,
+     * so that getViewAt does no I/O.
      */
     @Override
     public void onDataSetChanged() {
-        items = database.getDao().getAllWidgetItems();
+        long today = Today.epochDay();
+        List<WidgetItem> items = database.getDao().getWidgetItems(today);
+
+        //the settings are the same for every cell
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        ForegroundColorSpan lowStockSpan = new ForegroundColorSpan(ContextCompat.getColor(context, R.color.primaryColor));
+
+        List<Cell> newCells = new ArrayList<>(items.size());
+        for (WidgetItem item : items) {
+            //set the stock, red if it is low
+            int stock = item.getStock();
+            CharSequence stockText = String.valueOf(stock);
+            if (stock < settings.getRedDayThreshold()) {
+                SpannableString redStockText = new SpannableString(stockText);
+                redStockText.setSpan(lowStockSpan, 0, redStockText.length(), 0);
+                stockText = redStockText;
+            }
+            String lastTakenText = StringFormatter.getLastTakenText(item.getLastUsed(), item.getLastUsedTime(),
+                    item.isAutoDec(), today, settings.getShowTime());
+            int backgroundResource = item.isAutoDec() ? R.drawable.autodec_rounded_corners : R.drawable.rounded_corners;
+
+            // Create an Intent to launch update the item by sending the id
+            Bundle extras = new Bundle();
+            extras.putInt("id", item.getId());
+            Intent intent = new Intent();
+            intent.putExtras(extras);
+
+            newCells.add(new Cell(item.getId(), item.getName(), stockText, lastTakenText, backgroundResource, intent));
+        }
+        cells = newCells;
     }
 
     @Override
@@ -51,42 +104,19 @@ public class DataProvider implements RemoteViewsService.RemoteViewsFactory {
 
     @Override
     public int getCount() {
-        return items.size();
+        return cells.size();
     }
 
     @Override
     public RemoteViews getViewAt(int position) {
         RemoteViews widgetGridViewHolder = new RemoteViews(context.getPackageName(),
                 R.layout.widget_grid_item);
-        Item thisItem = items.get(position);
-        widgetGridViewHolder.setTextViewText(R.id.widgetNameTV, thisItem.getName());
-
-        //set the stock
-        int stock = thisItem.getCalculatedStock();
-
-        if (stock < Thresholds.getRedDayThreshold(context)) {
-            SpannableString redStockText = new SpannableString(String.valueOf(stock));
-            redStockText.setSpan(new ForegroundColorSpan(ContextCompat.getColor(context, R.color.primaryColor)), 0, redStockText.length(), 0);
-            widgetGridViewHolder.setTextViewText(R.id.widgetStockTV, redStockText);
-        } else {
-            widgetGridViewHolder.setTextViewText(R.id.widgetStockTV, String.valueOf(stock));
-        }
-        widgetGridViewHolder.setTextViewText(R.id.widgetLastTakenTV, StringFormatter.getLastTakenText(context, thisItem));
-
-        //if autodec
-        if (thisItem.isAutoDec()) {
-            widgetGridViewHolder.setInt(R.id.widgetRelativeLayout, "setBackgroundResource", R.drawable.autodec_rounded_corners);
-        } else {
-            widgetGridViewHolder.setInt(R.id.widgetRelativeLayout, "setBackgroundResource", R.drawable.rounded_corners);
-        }
-
-        // Create an Intent to launch update the item by sending the id
-        Bundle extras = new Bundle();
-        extras.putInt("id", thisItem.getId());
-        Intent intent = new Intent();
-        intent.putExtras(extras);
-        widgetGridViewHolder.setOnClickFillInIntent(R.id.widgetRelativeLayout, intent);
-
+        Cell cell = cells.get(position);
+        widgetGridViewHolder.setTextViewText(R.id.widgetNameTV, cell.name);
+        widgetGridViewHolder.setTextViewText(R.id.widgetStockTV, cell.stockText);
+        widgetGridViewHolder.setTextViewText(R.id.widgetLastTakenTV, cell.lastTakenText);
+        widgetGridViewHolder.setInt(R.id.widgetRelativeLayout, "setBackgroundResource", cell.backgroundResource);
+        widgetGridViewHolder.setOnClickFillInIntent(R.id.widgetRelativeLayout, cell.fillInIntent);
         return widgetGridViewHolder;
     }
 
@@ -102,7 +132,7 @@ public class DataProvider implements RemoteViewsService.RemoteViewsFactory {
 
     @Override
     public long getItemId(int position) {
-        return position;
+        return cells.get(position).id;
     }
 
     @Override
@@ -7,7 +7,6 @@ import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
 import android.widget.RemoteViews;
@@ -17,13 +16,13 @@ import androidx.annotation.NonNull;
 import com.innerCat.pillBox.R;
 import com.innerCat.pillBox.activities.MainActivity;
 import com.innerCat.pillBox.factories.DatabaseFactory;
-import com.innerCat.pillBox.factories.SharedPreferencesFactory;
-import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.objects.DoseEvent;
+import com.innerCat.pillBox.room.Converters;
 import com.innerCat.pillBox.room.Database;
+import com.innerCat.pillBox.room.DatabaseScheduler;
+import com.innerCat.pillBox.util.Today;
 
 import java.util.Calendar;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 
 /**
@@ -107,38 +106,47 @@ public class HomeWidgetProvider extends AppWidgetProvider {
     public void onReceive(Context context, Intent intent) {
         switch (intent.getAction()) {
             case DECREMENT:
-
-                //Tell sharedPreferences to update on next app launch
-                SharedPreferences sharedPreferences = SharedPreferencesFactory.getSP(context);
-                SharedPreferences.Editor editor = sharedPreferences.edit();
-                editor.putBoolean("widgetUpdate", true);
-                editor.apply();
-
-                Database database = DatabaseFactory.create(context);
+                Database database = DatabaseFactory.getInstance(context);
 
                 //Passed info from WidgetService.java
                 int id = intent.getIntExtra("id", -1);
 
+                //keep the receiver alive until the write has finished
+                PendingResult pendingResult = goAsync();
+
                 //ROOM Threads
-                ExecutorService executor = Executors.newSingleThreadExecutor();
                 Handler handler = new Handler(Looper.getMainLooper());
-                executor.execute(() -> {
+                DatabaseScheduler.getInstance().write(() -> {
                     //Background work here
-                    Item item = database.getDao().getItem(id);
-                    item.decrementStock();
-                    database.getDao().update(item);
+                    database.getDao().takeOne(id, Today.date(), Today.time(), DoseEvent.SOURCE_WIDGET);
 
                     handler.post(() -> {
                         //UI Thread work here
                         //notify the widget that there is an update
                         HomeWidgetProvider.broadcastUpdate(context);
+                        pendingResult.finish();
                     });
                 });
                 break;
             case MIDNIGHT_UPDATE:
-                AppWidgetManager manager = AppWidgetManager.getInstance(context);
-                int[] ids = manager.getAppWidgetIds(new ComponentName(context, HomeWidgetProvider.class));
-                onUpdate(context, manager, ids);
+                //start the new day in the database, in case the app isn't open to do it
+                Database dayDatabase = DatabaseFactory.getInstance(context);
+                long today = Converters.todayEpochDay();
+                scheduleNextUpdate(context);
+
+                //keep the receiver alive until the day has started
+                PendingResult dayPendingResult = goAsync();
+
+                Handler dayHandler = new Handler(Looper.getMainLooper());
+                DatabaseScheduler.getInstance().write(() -> {
+                    dayDatabase.startNewDay(today);
+
+                    dayHandler.post(() -> {
+                        //redraw the widget with the new day's data
+                        HomeWidgetProvider.broadcastUpdate(context);
+                        dayPendingResult.finish();
+                    });
+                });
                 break;
         }
         //Show information
@@ -4,22 +4,41 @@ import com.innerCat.pillBox.room.Converters;
 
 import org.junit.Test;
 
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
 public class ConverterTests {
 
     @Test
     public void from_date_to_timestamp() {
-
+        LocalDate date = LocalDate.of(2021, 6, 1);
+        assertEquals(Long.valueOf(18779), Converters.dateToEpochDay(date));
+        assertEquals(date, Converters.fromEpochDay(Converters.dateToEpochDay(date)));
     }
 
     @Test
     public void null_from_date_to_timestamp() {
-        assertNull(Converters.dateToTimestamp(null));
+        assertNull(Converters.dateToEpochDay(null));
     }
 
     @Test
     public void null_from_timestamp_to_date() {
-        assertNull(Converters.fromTimestamp(null));
+        assertNull(Converters.fromEpochDay(null));
+    }
+
+    @Test
+    public void from_time_to_second_of_day() {
+        LocalTime time = LocalTime.of(13, 45, 12);
+        assertEquals(Integer.valueOf(49512), Converters.localTimeToSecondOfDay(time));
+        assertEquals(time, Converters.localTimeFromSecondOfDay(Converters.localTimeToSecondOfDay(time)));
+    }
+
+    @Test
+    public void null_from_time_to_second_of_day() {
+        assertNull(Converters.localTimeToSecondOfDay(null));
+        assertNull(Converters.localTimeFromSecondOfDay(null));
     }
 }
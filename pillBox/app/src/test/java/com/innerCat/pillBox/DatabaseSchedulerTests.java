@@ -0,0 +1,118 @@
+package com.innerCat.pillBox;
+
+import com.innerCat.pillBox.room.DatabaseScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DatabaseSchedulerTests {
+
+    @Test
+    public void writes_run_in_order() throws InterruptedException {
+        DatabaseScheduler scheduler = new DatabaseScheduler(2);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            int n = i;
+            scheduler.write(() -> {
+                order.add(n);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void ui_visible_reads_run_before_background_reads() throws InterruptedException {
+        DatabaseScheduler scheduler = new DatabaseScheduler(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        //occupy the only read thread so that the next reads are queued
+        scheduler.read(() -> {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        //the blocking read is only no longer pending once it has started
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.read(DatabaseScheduler.Priority.BACKGROUND, () -> {
+            order.add("background");
+            done.countDown();
+        });
+        scheduler.read(DatabaseScheduler.Priority.UI_VISIBLE, () -> {
+            order.add("visible");
+            done.countDown();
+        });
+        assertEquals(2, scheduler.getPendingReads());
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("visible", order.get(0));
+        assertEquals("background", order.get(1));
+        assertEquals(0, scheduler.getPendingReads());
+    }
+
+    @Test
+    public void untagged_and_room_reads_yield_to_ui_visible_reads() throws InterruptedException {
+        DatabaseScheduler scheduler = new DatabaseScheduler(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        //occupy the only read thread so that the next reads are queued
+        scheduler.read(DatabaseScheduler.Priority.UI_VISIBLE, () -> {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        //submitted first, but neither is tagged as one the UI is waiting on
+        scheduler.getQueryExecutor().execute(() -> {
+            order.add("room");
+            done.countDown();
+        });
+        scheduler.read(() -> {
+            order.add("untagged");
+            done.countDown();
+        });
+        scheduler.read(DatabaseScheduler.Priority.UI_VISIBLE, () -> {
+            order.add("visible");
+            done.countDown();
+        });
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("visible", order.get(0));
+        assertEquals("room", order.get(1));
+        assertEquals("untagged", order.get(2));
+    }
+
+    @Test
+    public void counts_completed_tasks() throws InterruptedException {
+        DatabaseScheduler scheduler = new DatabaseScheduler(2);
+        scheduler.write(() -> {
+        });
+        scheduler.read(() -> {
+        });
+        //the counters are updated just after the task itself has run, so wait for them rather than the tasks
+        assertTrue(scheduler.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.getCompletedTasks());
+        assertEquals(0, scheduler.getPendingWrites());
+        assertTrue(scheduler.getMaxLatencyNanos() >= scheduler.getAverageLatencyNanos());
+    }
+}
@@ -2,6 +2,7 @@ package com.innerCat.pillBox;
 
 import com.innerCat.pillBox.objects.ColorItem;
 import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.objects.Refill;
 
 import org.junit.Test;
 
@@ -125,4 +126,41 @@ public class ItemTests {
         b.setId(2);
         assertNotEquals(a, b);
     }
+
+    @Test
+    public void copy_is_independent() {
+        Item item = new Item("Test", 10, ColorItem.NO_COLOR, false);
+        item.setId(3);
+        item.setExpiringRefill(new Refill(3, 5, LocalDate.now().plusDays(2)));
+        Item copy = new Item(item);
+        assertEquals(item, copy);
+        copy.decrementStock();
+        copy.getExpiringRefill().setAmount(1);
+        assertEquals(10, item.getRawStock());
+        assertEquals(5, item.getExpiringRefill().getAmount());
+        assertEquals(9, copy.getRawStock());
+    }
+
+    @Test
+    public void auto_dec_run_out_day_is_the_first_day_without_stock() {
+        LocalDate start = LocalDate.of(2021, 1, 1);
+        for (int stock = 0; stock < 30; stock++) {
+            for (int perDay = 1; perDay < 4; perDay++) {
+                for (int nDays = 1; nDays < 4; nDays++) {
+                    Item item = new Item("Test", stock, ColorItem.NO_COLOR, false, start, perDay, nDays);
+                    long day = start.toEpochDay();
+                    while (item.getCalculatedStock(day) > 0) {
+                        day++;
+                    }
+                    assertEquals(day, item.getAutoDecRunOutDay());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void manual_item_has_no_auto_dec_run_out_day() {
+        Item item = new Item("Test", 10, ColorItem.NO_COLOR, false);
+        assertEquals(Item.RUN_OUT_NEVER, item.getAutoDecRunOutDay());
+    }
 }
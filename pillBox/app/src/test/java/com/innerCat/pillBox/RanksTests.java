@@ -0,0 +1,161 @@
+package com.innerCat.pillBox;
+
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.util.Ranks;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RanksTests {
+
+    /**
+     * Makes a list of items that have been ranked GAP apart.
+     *
+     * @param size the number of items
+     * @return the items
+     */
+    private List<Item> makeRankedItems( int size ) {
+        List<Item> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Item item = new Item("Item " + i);
+            item.setId(i);
+            items.add(item);
+        }
+        Ranks.rebalance(items);
+        return items;
+    }
+
+    /**
+     * Moves an item in the list, the same way as the ItemTouchHelper callback does.
+     */
+    private void move( List<Item> items, int fromPosition, int toPosition ) {
+        Item item = items.remove(fromPosition);
+        items.add(toPosition, item);
+    }
+
+    private void assertAscending( List<Item> items ) {
+        for (int i = 1; i < items.size(); i++) {
+            assertTrue(items.get(i - 1).getViewHolderPosition() < items.get(i).getViewHolderPosition());
+        }
+    }
+
+    @Test
+    public void move_writes_only_the_moved_item() {
+        List<Item> items = makeRankedItems(10);
+        move(items, 8, 2);
+        List<Item> updated = Ranks.rankItemAt(items, 2);
+        assertEquals(1, updated.size());
+        assertEquals(items.get(2), updated.get(0));
+        assertAscending(items);
+    }
+
+    @Test
+    public void move_to_either_end() {
+        List<Item> items = makeRankedItems(10);
+        move(items, 5, 0);
+        assertEquals(1, Ranks.rankItemAt(items, 0).size());
+        move(items, 3, 9);
+        assertEquals(1, Ranks.rankItemAt(items, 9).size());
+        assertAscending(items);
+    }
+
+    @Test
+    public void rebalances_when_the_gap_runs_out() {
+        List<Item> items = makeRankedItems(3);
+        //repeatedly halve the gap between the first two items
+        int moves = 0;
+        List<Item> updated;
+        do {
+            move(items, 2, 1);
+            updated = Ranks.rankItemAt(items, 1);
+            assertAscending(items);
+            moves++;
+        } while (updated.size() == 1);
+        assertTrue(moves > 5);
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(i * Ranks.GAP, items.get(i).getViewHolderPosition());
+        }
+    }
+
+    @Test
+    public void contiguous_positions_are_rebalanced_once() {
+        //positions saved before ranks were sparse
+        List<Item> items = makeRankedItems(10);
+        for (int i = 0; i < items.size(); i++) {
+            items.get(i).setViewHolderPosition(i);
+        }
+        move(items, 7, 3);
+        //the first item keeps its rank of 0
+        assertEquals(9, Ranks.rankItemAt(items, 3).size());
+        move(items, 1, 6);
+        assertEquals(1, Ranks.rankItemAt(items, 6).size());
+        assertAscending(items);
+    }
+
+    @Test
+    public void single_item() {
+        List<Item> items = makeRankedItems(1);
+        assertEquals(1, Ranks.rankItemAt(items, 0).size());
+        assertEquals(0, items.get(0).getViewHolderPosition());
+    }
+
+    @Test
+    public void new_item_is_ranked_before_the_first() {
+        assertEquals(-Ranks.GAP, Ranks.rankBefore(0));
+        assertEquals(0, Ranks.rankBefore(null));
+        assertEquals(Integer.MIN_VALUE, Ranks.rankBefore(Integer.MIN_VALUE + 1));
+    }
+
+    @Test
+    public void no_rank_is_left_before_the_lowest_rank() {
+        assertTrue(Ranks.hasRankBefore(null));
+        assertTrue(Ranks.hasRankBefore(Integer.MIN_VALUE + 1));
+        assertFalse(Ranks.hasRankBefore(Integer.MIN_VALUE));
+    }
+
+    /**
+     * The dense scheme that ranks replaced: renumber every item from the moved index to the end.
+     *
+     * @return the items written
+     */
+    private List<Item> denseUpdate( List<Item> allItems, int fromIndex ) {
+        List<Item> updated = new ArrayList<>();
+        for (int i = fromIndex; i < allItems.size(); i++) {
+            Item thisItem = allItems.get(i);
+            thisItem.setViewHolderPosition(allItems.indexOf(thisItem));
+            updated.add(thisItem);
+        }
+        return updated;
+    }
+
+    @Test
+    public void moving_in_10k_items_ranks_one_row() {
+        int size = 10_000;
+        int rounds = 5;
+
+        List<Item> dense = makeRankedItems(size);
+        int denseRows = 0;
+        for (int r = 0; r < rounds; r++) {
+            move(dense, size - 1, 0);
+            denseRows += denseUpdate(dense, 0).size();
+        }
+
+        List<Item> sparse = makeRankedItems(size);
+        int sparseRows = 0;
+        for (int r = 0; r < rounds; r++) {
+            move(sparse, size - 1, 0);
+            sparseRows += Ranks.rankItemAt(sparse, 0).size();
+        }
+
+        //renumbering every position rewrites every row, ranking with gaps rewrites only the moved one
+        assertEquals(size, denseRows / rounds);
+        assertEquals(1, sparseRows / rounds);
+        assertAscending(sparse);
+    }
+}
@@ -0,0 +1,129 @@
+package com.innerCat.pillBox;
+
+import com.innerCat.pillBox.util.StringFormatter;
+import com.innerCat.pillBox.util.Today;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StringFormatterTests {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/London");
+    private static final LocalDate TODAY = LocalDate.of(2021, 6, 1);
+
+    @After
+    public void reset_clock() {
+        Today.resetClock();
+    }
+
+    private static void setToday( LocalDate date ) {
+        Today.setClock(Clock.fixed(date.atTime(12, 0).atZone(ZONE).toInstant(), ZONE));
+    }
+
+    @Test
+    public void last_taken_text() {
+        long today = TODAY.toEpochDay();
+        LocalTime time = LocalTime.of(21, 5);
+        assertEquals("", StringFormatter.getLastTakenText(null, time, false, today, true));
+        assertEquals("Last taken today", StringFormatter.getLastTakenText(TODAY, time, false, today, false));
+        assertEquals("Last taken today at 9:05pm", StringFormatter.getLastTakenText(TODAY, time, false, today, true));
+        assertEquals("Last manually taken yesterday at 9:05pm",
+                StringFormatter.getLastTakenText(TODAY.minusDays(1), time, true, today, true));
+        assertEquals("Last taken yesterday", StringFormatter.getLastTakenText(TODAY.minusDays(1), null, false, today, true));
+        assertEquals("Last taken 5 days ago", StringFormatter.getLastTakenText(TODAY.minusDays(5), time, false, today, true));
+        assertEquals("Last taken 1000 days ago",
+                StringFormatter.getLastTakenText(TODAY.minusDays(1000), time, false, today, true));
+    }
+
+    @Test
+    public void expiry_text() {
+        setToday(TODAY);
+        assertEquals("3 expiring today", StringFormatter.getExpiryText(3, 0));
+        assertEquals("3 expiring tomorrow", StringFormatter.getExpiryText(3, 1));
+        assertEquals("30 expiring in 12 days", StringFormatter.getExpiryText(30, 12));
+        assertEquals("3000 expiring in 12 days", StringFormatter.getExpiryText(3000, 12));
+        assertEquals("3 expiring in -2 days", StringFormatter.getExpiryText(3, -2));
+    }
+
+    @Test
+    public void texts_are_kept_until_midnight() {
+        setToday(TODAY);
+        long today = TODAY.toEpochDay();
+        LocalTime time = LocalTime.of(9, 41);
+        String lastTaken = StringFormatter.getLastTakenText(TODAY, time, false, today, true);
+        String expiry = StringFormatter.getExpiryText(10, 3);
+        assertSame(lastTaken, StringFormatter.getLastTakenText(TODAY, time, false, today, true));
+        assertSame(expiry, StringFormatter.getExpiryText(10, 3));
+
+        setToday(TODAY.plusDays(1));
+        String nextDayExpiry = StringFormatter.getExpiryText(10, 3);
+        assertEquals(expiry, nextDayExpiry);
+        assertNotSame(expiry, nextDayExpiry);
+        String nextDayLastTaken = StringFormatter.getLastTakenText(TODAY, time, false, today + 1, true);
+        assertEquals("Last taken yesterday at 9:41am", nextDayLastTaken);
+    }
+
+    @Test
+    public void texts_follow_the_locale() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        long today = TODAY.toEpochDay();
+        LocalTime time = LocalTime.of(21, 5);
+        try {
+            Locale.setDefault(Locale.Category.FORMAT, Locale.US);
+            String us = StringFormatter.getLastTakenText(TODAY, time, false, today, true);
+            Locale.setDefault(Locale.Category.FORMAT, Locale.KOREA);
+            String korean = StringFormatter.getLastTakenText(TODAY, time, false, today, true);
+            assertEquals("Last taken today at "
+                    + time.format(DateTimeFormatter.ofPattern("h:mma", Locale.KOREA)).toLowerCase(), korean);
+            assertNotEquals(us, korean);
+        } finally {
+            Locale.setDefault(Locale.Category.FORMAT, locale);
+        }
+    }
+
+    @Test
+    public void rendering_kept_texts_does_not_allocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        setToday(TODAY);
+        long today = TODAY.toEpochDay();
+        int itemCount = 2000;
+        LocalDate[] lastUsed = new LocalDate[itemCount];
+        LocalTime[] lastUsedTime = new LocalTime[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            lastUsed[i] = TODAY.minusDays(i % 40);
+            lastUsedTime[i] = LocalTime.of(i % 24, (i * 7) % 60);
+        }
+        int rounds = 50;
+        long allocatedBytes = 0;
+        long lengths = 0;
+        //the first round fills the texts, the rest are measured
+        for (int round = 0; round <= rounds; round++) {
+            if (round == 1) {
+                allocatedBytes = threads.getThreadAllocatedBytes(threadId);
+            }
+            for (int i = 0; i < itemCount; i++) {
+                lengths += StringFormatter.getLastTakenText(lastUsed[i], lastUsedTime[i], i % 2 == 0, today, true).length();
+                lengths += StringFormatter.getExpiryText(i % 100, i % 30).length();
+            }
+        }
+        allocatedBytes = threads.getThreadAllocatedBytes(threadId) - allocatedBytes;
+        assertTrue(lengths > 0);
+        //allow for the measuring itself, a single text allocated per call would be megabytes
+        assertTrue(allocatedBytes < 16 * 1024);
+    }
+}
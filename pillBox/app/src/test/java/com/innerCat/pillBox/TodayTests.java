@@ -0,0 +1,135 @@
+package com.innerCat.pillBox;
+
+import com.innerCat.pillBox.objects.ColorItem;
+import com.innerCat.pillBox.objects.Item;
+import com.innerCat.pillBox.util.Today;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static java.time.temporal.ChronoUnit.DAYS;
+import static org.junit.Assert.assertEquals;
+
+public class TodayTests {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/London");
+    private static final LocalDate START = LocalDate.of(2021, 1, 1);
+
+    @After
+    public void reset_clock() {
+        Today.resetClock();
+    }
+
+    private static Clock clockAt( LocalDate date, int hour ) {
+        Instant instant = date.atTime(hour, 0).atZone(ZONE).toInstant();
+        return Clock.fixed(instant, ZONE);
+    }
+
+    /**
+     * A clock whose time and time zone can be changed without setting a new clock, as the system's can
+     */
+    private static class MovableClock extends Clock {
+        private Instant instant;
+        private ZoneId zone;
+
+        MovableClock( Instant instant, ZoneId zone ) {
+            this.instant = instant;
+            this.zone = zone;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone( ZoneId zone ) {
+            return new MovableClock(instant, zone);
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    @Test
+    public void today_follows_the_clock() {
+        Today.setClock(clockAt(START, 23));
+        assertEquals(START.toEpochDay(), Today.epochDay());
+        assertEquals(START, Today.date());
+
+        //just after midnight is the next day
+        Today.setClock(Clock.offset(clockAt(START, 23), Duration.ofMinutes(61)));
+        assertEquals(START.plusDays(1).toEpochDay(), Today.epochDay());
+    }
+
+    @Test
+    public void today_follows_a_change_of_time_zone() {
+        //11:00 in London is already 01:00 the next day in Kiritimati
+        MovableClock clock = new MovableClock(START.atTime(11, 0).atZone(ZONE).toInstant(), ZONE);
+        Today.setClock(clock);
+        assertEquals(START.toEpochDay(), Today.epochDay());
+        clock.zone = ZoneId.of("Pacific/Kiritimati");
+        assertEquals(START.plusDays(1).toEpochDay(), Today.epochDay());
+
+        //a clock set by a test keeps its zone
+        Today.onTimeZoneChanged(ZONE);
+        assertEquals(START.plusDays(1).toEpochDay(), Today.epochDay());
+
+        //the system clock is replaced by one in the new zone
+        Today.resetClock();
+        Today.onTimeZoneChanged(ZoneId.of("Pacific/Kiritimati"));
+        assertEquals(ZoneId.of("Pacific/Kiritimati"), Today.getClock().getZone());
+    }
+
+    @Test
+    public void today_is_right_across_daylight_saving() {
+        //the clocks go forward on the 28th of March 2021 and back on the 31st of October
+        for (LocalDate date = LocalDate.of(2021, 3, 26); date.isBefore(LocalDate.of(2021, 11, 2)); date = date.plusDays(1)) {
+            for (int hour = 0; hour < 24; hour += 3) {
+                Today.setClock(clockAt(date, hour));
+                assertEquals(date.toEpochDay(), Today.epochDay());
+            }
+        }
+    }
+
+    @Test
+    public void calculated_stock_matches_over_thousands_of_days() {
+        int[][] autoDecs = { { 1, 1 }, { 2, 1 }, { 1, 3 }, { 5, 7 } };
+        for (int[] autoDec : autoDecs) {
+            int perDay = autoDec[0];
+            int nDays = autoDec[1];
+            Item item = new Item("Test", 100000, ColorItem.NO_COLOR, false, START, perDay, nDays);
+            for (int day = 0; day < 5000; day++) {
+                LocalDate date = START.plusDays(day);
+                Today.setClock(clockAt(date, 12));
+                long expected = 100000 - perDay * (DAYS.between(START, date) / nDays);
+                assertEquals(expected, item.getCalculatedStock());
+                assertEquals(expected, item.getCalculatedStock(date.toEpochDay()));
+            }
+        }
+    }
+
+    @Test
+    public void today_is_cached_within_a_day() {
+        ZonedDateTime start = START.atStartOfDay(ZONE);
+        MovableClock clock = new MovableClock(start.toInstant(), ZONE);
+        Today.setClock(clock);
+        int lookups = Today.getDayLookups();
+        //every minute of three days
+        for (int minute = 0; minute < 3 * 24 * 60; minute++) {
+            clock.instant = start.plusMinutes(minute).toInstant();
+            assertEquals(START.plusDays(minute / (24 * 60)).toEpochDay(), Today.epochDay());
+        }
+        //the time zone rules are only consulted when the day changes
+        assertEquals(3, Today.getDayLookups() - lookups);
+    }
+}